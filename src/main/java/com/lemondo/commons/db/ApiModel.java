@@ -4,7 +4,11 @@ import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.lemondo.commons.db.exception.DataProcessingException;
@@ -18,7 +22,7 @@ import com.lemondo.commons.db.meta.ProcMetaData;
 import com.lemondo.commons.db.meta.TableMetaData;
 import com.lemondo.commons.db.processor.DataProcessor;
 
-public class ApiModel<T, L> implements Model<T, L> {
+public class ApiModel<T, L> implements CountingModel<T, L>, StreamingModel<T, L> {
 
 	private final Helper helper;
 
@@ -31,6 +35,9 @@ public class ApiModel<T, L> implements Model<T, L> {
 	private Procedure deleteApi;
 	private Procedure readApi;
 	private Procedure listApi;
+	private Procedure countApi;
+
+	private RowCache<T> rowCache;
 
 	public ApiModel(Helper helper, DataProcessor<T, L> processor) {
 		this.helper = helper;
@@ -44,6 +51,10 @@ public class ApiModel<T, L> implements Model<T, L> {
 		this.tableModel = new TableModel<T, L>(meta, helper, processor);
 	}
 
+	public Helper getHelper() {
+		return helper;
+	}
+
 	public void setInsertApi(ProcMetaData insertMetaData) {
 		this.insertApi = new Procedure(insertMetaData, helper);
 	}
@@ -64,13 +75,53 @@ public class ApiModel<T, L> implements Model<T, L> {
 		this.listApi = new Procedure(listMetaData, helper);
 	}
 
+	/**
+	 * Sets the function counting the records, called with the same arguments
+	 * as the list procedure. It is required to count the records of a model
+	 * with a list procedure.
+	 */
+	public void setCountApi(ProcMetaData countMetaData) {
+		this.countApi = new Procedure(countMetaData, helper);
+	}
+
+	public RowCache<T> getRowCache() {
+		return rowCache;
+	}
+
+	/**
+	 * Sets the cache of rows read by key, or <code>null</code> to read every
+	 * row from the database. Rows written through this model are invalidated,
+	 * keys are compared as given.
+	 * Mutable beans need a cache that copies them, see {@link RowCache}.
+	 */
+	public void setRowCache(RowCache<T> rowCache) {
+		RowCache.checkRows(rowCache, processor);
+		this.rowCache = rowCache;
+	}
+
+	private void invalidate(Object key) {
+		if (rowCache != null) {
+			rowCache.invalidate(key);
+		}
+	}
+
+	private void invalidateAll(Collection<?> keys) {
+		if (rowCache != null) {
+			for (Object key : keys) {
+				rowCache.invalidate(key);
+			}
+		}
+	}
+
 	@Override
 	public void create(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
 		if (insertApi != null) {
+			Session session = null;
 			try {
 				Map<String, Object> args = processor.bodyAsMap(body);
 				args.put("key", key);
-				insertApi.executeProcedure(args);
+				session = helper.openSession();
+				insertApi.executeProcedure(session, args);
 			} catch (SQLException e) {
 				if (Helper.isNotNullViolation(e)) {
 					throw new NotNullViolation("Mandatory field is omitted", e);
@@ -81,9 +132,16 @@ public class ApiModel<T, L> implements Model<T, L> {
 				} else {
 					throw new DatabaseOperationException("Error while DB operation", e);
 				}
+			} finally {
+				Helper.close(session);
+				invalidate(key);
 			}
 		} else if (tableModel != null) {
-			tableModel.create(key, body);
+			try {
+				tableModel.create(key, body);
+			} finally {
+				invalidate(key);
+			}
 		} else {
 			throw new IllegalStateException("ApiModel was not initialized properly");
 		}
@@ -92,9 +150,11 @@ public class ApiModel<T, L> implements Model<T, L> {
 	@Override
 	public Object create(T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
 		if (insertApi != null) {
+			Session session = null;
 			try {
 				Map<String, Object> args = processor.bodyAsMap(body);
-				return (String) insertApi.executeFunction(args);
+				session = helper.openSession();
+				return (String) insertApi.executeFunction(session, args);
 			} catch (SQLException e) {
 				if (Helper.isNotNullViolation(e)) {
 					throw new NotNullViolation("Mandatory field is omitted", e);
@@ -103,6 +163,8 @@ public class ApiModel<T, L> implements Model<T, L> {
 				} else {
 					throw new DatabaseOperationException("Error while DB operation", e);
 				}
+			} finally {
+				Helper.close(session);
 			}
 		} else if (tableModel != null) {
 			return tableModel.create(body);
@@ -111,13 +173,120 @@ public class ApiModel<T, L> implements Model<T, L> {
 		}
 	}
 
+	@Override
+	public List<Object> createAll(Collection<T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (insertApi != null) {
+			Session session = null;
+			try {
+				List<Object> generatedKeys = new ArrayList<Object>(bodies.size());
+				session = helper.openSession();
+				Procedure.Call call = insertApi.prepare(session);
+				for (T body : bodies) {
+					generatedKeys.add(call.executeFunction(processor.bodyAsMap(body)));
+				}
+				return generatedKeys;
+			} catch (SQLException e) {
+				if (Helper.isNotNullViolation(e)) {
+					throw new NotNullViolation("Mandatory field is omitted", e);
+				} else if (Helper.isForeignKeyViolation(e)) {
+					throw new ForeignKeyViolation("Parent record not found", e);
+				} else {
+					throw new DatabaseOperationException("Error while DB operation", e);
+				}
+			} finally {
+				Helper.close(session);
+			}
+		} else if (tableModel != null) {
+			return tableModel.createAll(bodies);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	@Override
+	public void createAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (insertApi != null) {
+			Session session = null;
+			try {
+				session = helper.openSession();
+				Procedure.Call call = insertApi.prepare(session);
+				for (Map.Entry<?, T> body : bodies.entrySet()) {
+					Map<String, Object> args = processor.bodyAsMap(body.getValue());
+					args.put("key", body.getKey());
+					call.addBatch(args);
+				}
+				call.executeBatch();
+			} catch (SQLException e) {
+				if (Helper.isNotNullViolation(e)) {
+					throw new NotNullViolation("Mandatory field is omitted", e);
+				} else if (Helper.isForeignKeyViolation(e)) {
+					throw new ForeignKeyViolation("Parent record not found", e);
+				} else if (Helper.isUniqueKeyViolation(e)) {
+					throw new UniqueKeyViolation("Record with given key already exists", e);
+				} else {
+					throw new DatabaseOperationException("Error while DB operation", e);
+				}
+			} finally {
+				Helper.close(session);
+				invalidateAll(bodies.keySet());
+			}
+		} else if (tableModel != null) {
+			try {
+				tableModel.createAll(bodies);
+			} finally {
+				invalidateAll(bodies.keySet());
+			}
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
 	@Override
 	public int update(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
 		if (updateApi != null) {
+			Session session = null;
 			try {
 				Map<String, Object> args = processor.bodyAsMap(body);
 				args.put("key", key);
-				return (Integer) updateApi.executeFunction(args);
+				session = helper.openSession();
+				return (Integer) updateApi.executeFunction(session, args);
+			} catch (SQLException e) {
+				if (Helper.isNotNullViolation(e)) {
+					throw new NotNullViolation("Mandatory field is omitted", e);
+				} else if (Helper.isForeignKeyViolation(e)) {
+					throw new ForeignKeyViolation("Foreign key violation", e);
+				} else {
+					throw new DatabaseOperationException("Error while DB operation", e);
+				}
+			} finally {
+				Helper.close(session);
+				invalidate(key);
+			}
+		} else if (tableModel != null) {
+			try {
+				return tableModel.update(key, body);
+			} finally {
+				invalidate(key);
+			}
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	@Override
+	public Map<Object, Integer> updateAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (updateApi != null) {
+			Session session = null;
+			try {
+				Map<Object, Integer> result = new LinkedHashMap<Object, Integer>();
+				session = helper.openSession();
+				Procedure.Call call = updateApi.prepare(session);
+				for (Map.Entry<?, T> body : bodies.entrySet()) {
+					Map<String, Object> args = processor.bodyAsMap(body.getValue());
+					args.put("key", body.getKey());
+					result.put(body.getKey(), (Integer) call.executeFunction(args));
+				}
+				return result;
 			} catch (SQLException e) {
 				if (Helper.isNotNullViolation(e)) {
 					throw new NotNullViolation("Mandatory field is omitted", e);
@@ -126,9 +295,65 @@ public class ApiModel<T, L> implements Model<T, L> {
 				} else {
 					throw new DatabaseOperationException("Error while DB operation", e);
 				}
+			} finally {
+				Helper.close(session);
+				invalidateAll(bodies.keySet());
+			}
+		} else if (tableModel != null) {
+			try {
+				return tableModel.updateAll(bodies);
+			} finally {
+				invalidateAll(bodies.keySet());
+			}
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	/**
+	 * Upserts the record. With insert or update procedures set, the record is
+	 * updated and, if not found, created, which is not atomic: a record created
+	 * concurrently in between is updated in a second attempt. The failed create
+	 * proves that the record exists, so if the second attempt affects no row
+	 * either, the result is {@link UpsertResult#UNKNOWN}.
+	 */
+	@Override
+	public UpsertResult upsert(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (insertApi != null || updateApi != null) {
+			if (update(key, body) > 0) {
+				return UpsertResult.UPDATED;
+			}
+			try {
+				create(key, body);
+				return UpsertResult.INSERTED;
+			} catch (UniqueKeyViolation e) {
+				return (update(key, body) > 0) ? UpsertResult.UPDATED : UpsertResult.UNKNOWN;
+			}
+		} else if (tableModel != null) {
+			try {
+				return tableModel.upsert(key, body);
+			} finally {
+				invalidate(key);
+			}
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	@Override
+	public Map<Object, UpsertResult> upsertAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (insertApi != null || updateApi != null) {
+			Map<Object, UpsertResult> result = new LinkedHashMap<Object, UpsertResult>();
+			for (Map.Entry<?, T> body : bodies.entrySet()) {
+				result.put(body.getKey(), upsert(body.getKey(), body.getValue()));
 			}
+			return result;
 		} else if (tableModel != null) {
-			return tableModel.update(key, body);
+			try {
+				return tableModel.upsertAll(bodies);
+			} finally {
+				invalidateAll(bodies.keySet());
+			}
 		} else {
 			throw new IllegalStateException("ApiModel was not initialized properly");
 		}
@@ -137,19 +362,63 @@ public class ApiModel<T, L> implements Model<T, L> {
 	@Override
 	public int delete(Object key) throws DatabaseOperationException {
 		if (deleteApi != null) {
+			Session session = null;
 			try {
 				Map<String, Object> args = new HashMap<String, Object>();
 				args.put("key", key);
-				return (Integer) deleteApi.executeFunction(args);
+				session = helper.openSession();
+				return (Integer) deleteApi.executeFunction(session, args);
+			} catch (SQLException e) {
+				if (Helper.isForeignKeyViolation(e)) {
+					throw new ForeignKeyViolation("Cannot delete, child record found", e);
+				} else {
+					throw new DatabaseOperationException("Error while DB operation", e);
+				}
+			} finally {
+				Helper.close(session);
+				invalidate(key);
+			}
+		} else if (tableModel != null) {
+			try {
+				return tableModel.delete(key);
+			} finally {
+				invalidate(key);
+			}
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	@Override
+	public int deleteAll(Collection<?> keys) throws DatabaseOperationException {
+		if (deleteApi != null) {
+			Session session = null;
+			try {
+				int count = 0;
+				Map<String, Object> args = new HashMap<String, Object>();
+				session = helper.openSession();
+				Procedure.Call call = deleteApi.prepare(session);
+				for (Object key : keys) {
+					args.put("key", key);
+					count += (Integer) call.executeFunction(args);
+				}
+				return count;
 			} catch (SQLException e) {
 				if (Helper.isForeignKeyViolation(e)) {
 					throw new ForeignKeyViolation("Cannot delete, child record found", e);
 				} else {
 					throw new DatabaseOperationException("Error while DB operation", e);
 				}
+			} finally {
+				Helper.close(session);
+				invalidateAll(keys);
 			}
 		} else if (tableModel != null) {
-			return tableModel.delete(key);
+			try {
+				return tableModel.deleteAll(keys);
+			} finally {
+				invalidateAll(keys);
+			}
 		} else {
 			throw new IllegalStateException("ApiModel was not initialized properly");
 		}
@@ -157,11 +426,29 @@ public class ApiModel<T, L> implements Model<T, L> {
 
 	@Override
 	public T read(Object key) throws NoDataFoundException, DataProcessingException, DatabaseOperationException {
+		if (rowCache == null) {
+			return readUncached(key);
+		}
+
+		T row = rowCache.get(key);
+		if (row == null) {
+			long stamp = rowCache.beginLoad();
+			long start = System.nanoTime();
+			row = readUncached(key);
+			rowCache.recordLoad(System.nanoTime() - start);
+			rowCache.put(key, row, stamp);
+		}
+		return row;
+	}
+
+	private T readUncached(Object key) throws NoDataFoundException, DataProcessingException, DatabaseOperationException {
 		if (readApi != null) {
+			Session session = null;
 			try {
 				Map<String, Object> args = new HashMap<String, Object>();
 				args.put("key", key);
-				ResultSet rs = readApi.executeQuery(args);
+				session = helper.openSession();
+				ResultSet rs = readApi.executeQuery(session, args);
 				if (rs.next()) {
 					ResultSetMetaData rsmd = rs.getMetaData();
 					return processor.readRow(rs, rsmd, rsmd.getColumnCount());
@@ -170,6 +457,8 @@ public class ApiModel<T, L> implements Model<T, L> {
 				}
 			} catch (SQLException e) {
 				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
 			}
 		} else if (tableModel != null) {
 			return tableModel.read(key);
@@ -178,17 +467,149 @@ public class ApiModel<T, L> implements Model<T, L> {
 		}
 	}
 
+	@Override
+	public Map<Object, T> readMany(Collection<?> keys) throws DataProcessingException, DatabaseOperationException {
+		if (rowCache == null) {
+			return readManyUncached(keys);
+		}
+
+		Map<Object, T> result = new LinkedHashMap<Object, T>();
+		List<Object> misses = new ArrayList<Object>();
+		for (Object key : keys) {
+			if (!result.containsKey(key)) {
+				T row = rowCache.get(key);
+				result.put(key, row);
+				if (row == null) {
+					misses.add(key);
+				}
+			}
+		}
+
+		if (!misses.isEmpty()) {
+			long stamp = rowCache.beginLoad();
+			long start = System.nanoTime();
+			Map<Object, T> loaded = readManyUncached(misses);
+			rowCache.recordLoad(System.nanoTime() - start);
+			for (Map.Entry<Object, T> row : loaded.entrySet()) {
+				result.put(row.getKey(), row.getValue());
+				rowCache.put(row.getKey(), row.getValue(), stamp);
+			}
+		}
+		return result;
+	}
+
+	private Map<Object, T> readManyUncached(Collection<?> keys) throws DataProcessingException, DatabaseOperationException {
+		if (readApi != null) {
+			Session session = null;
+			try {
+				Map<Object, T> result = new LinkedHashMap<Object, T>();
+				Map<String, Object> args = new HashMap<String, Object>();
+				session = helper.openSession();
+				Procedure.Call call = readApi.prepare(session);
+				for (Object key : keys) {
+					if (result.containsKey(key)) {
+						continue;
+					}
+					args.put("key", key);
+					ResultSet rs = call.executeQuery(args);
+					if (rs.next()) {
+						ResultSetMetaData rsmd = rs.getMetaData();
+						result.put(key, processor.readRow(rs, rsmd, rsmd.getColumnCount()));
+					} else {
+						result.put(key, null);
+					}
+					Helper.close(rs);
+				}
+				return result;
+			} catch (SQLException e) {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
+			}
+		} else if (tableModel != null) {
+			return tableModel.readMany(keys);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	/**
+	 * Reads the record with the given key, selecting only <code>id</code> and
+	 * the given fields. A read procedure cannot be projected, so if one is set
+	 * it returns the columns of its result set.
+	 */
+	public T read(Object key, Collection<String> fields) throws InvalidFieldException, NoDataFoundException, DataProcessingException, DatabaseOperationException {
+		if (readApi != null) {
+			return read(key);
+		} else if (tableModel != null) {
+			return tableModel.read(key, fields);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	/**
+	 * Counts the records through the count function if one is set. The table
+	 * cannot count the rows of a list procedure, so a model with a list
+	 * procedure must have a count function too.
+	 */
+	@Override
+	public long count(Map<String, Object> options) throws DatabaseOperationException {
+		if (countApi != null) {
+			Session session = null;
+			try {
+				session = helper.openSession();
+				return ((Number) countApi.executeFunction(session, options)).longValue();
+			} catch (SQLException e) {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
+			}
+		} else if (listApi != null) {
+			throw new IllegalStateException("ApiModel with a list procedure needs a count procedure to count");
+		} else if (tableModel != null) {
+			return tableModel.count(options);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
+	@Override
+	public boolean exists(Object key) throws DatabaseOperationException {
+		if (readApi != null) {
+			Session session = null;
+			try {
+				Map<String, Object> args = new HashMap<String, Object>();
+				args.put("key", key);
+				session = helper.openSession();
+				return readApi.executeQuery(session, args).next();
+			} catch (SQLException e) {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
+			}
+		} else if (tableModel != null) {
+			return tableModel.exists(key);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
 	@Override
 	public L list(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
 		if (listApi != null) {
+			Session session = null;
 			try {
-				ResultSet rs = listApi.executeQuery(options);
+				session = helper.openSession();
+				ResultSet rs = listApi.executeQuery(session, options);
 				ResultSetMetaData rsmd = rs.getMetaData();
 				int numColumns = rsmd.getColumnCount();
 
 				return processor.readAll(rs, rsmd, numColumns);
 			} catch (SQLException e) {
 				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
 			}
 		} else if (tableModel != null) {
 			return tableModel.list(options);
@@ -197,20 +618,46 @@ public class ApiModel<T, L> implements Model<T, L> {
 		}
 	}
 
+	@Override
+	public RowStream<T> stream(Map<String, Object> options) throws DatabaseOperationException {
+		if (listApi != null) {
+			Session session = null;
+			try {
+				session = helper.openSession();
+				ResultSet rs = listApi.executeQuery(session, options);
+				return new RowStream<T>(session, rs, processor);
+			} catch (SQLException e) {
+				Helper.close(session);
+				throw new DatabaseOperationException("Error while DB operation", e);
+			} catch (RuntimeException e) {
+				Helper.close(session);
+				throw e;
+			}
+		} else if (tableModel != null) {
+			return tableModel.stream(options);
+		} else {
+			throw new IllegalStateException("ApiModel was not initialized properly");
+		}
+	}
+
 	@Override
 	public void list(OutputStream out, Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
 		if (listApi != null) {
+			Session session = null;
 			try {
-				ResultSet rs = listApi.executeQuery(options);
+				session = helper.openSession();
+				ResultSet rs = listApi.executeQuery(session, options);
 				ResultSetMetaData rsmd = rs.getMetaData();
 				int numColumns = rsmd.getColumnCount();
 
 				processor.writeRows(out, rs, rsmd, numColumns);
 			} catch (SQLException e) {
 				throw new DatabaseOperationException("Error while DB operation", e);
+			} finally {
+				Helper.close(session);
 			}
 		} else if (tableModel != null) {
-			tableModel.list(options);
+			tableModel.list(out, options);
 		} else {
 			throw new IllegalStateException("ApiModel was not initialized properly");
 		}
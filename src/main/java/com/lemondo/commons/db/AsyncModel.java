@@ -0,0 +1,370 @@
+package com.lemondo.commons.db;
+
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade of a {@link Model}. Every call runs as a separate task
+ * on the executor and completes the returned future with the result, or
+ * exceptionally with the exception the model threw.
+ * <p>
+ * Every model operation runs in its own {@link Session}, so with a pooled
+ * {@link Helper} each task leases its own connection and concurrent tasks run
+ * in parallel up to the pool size. The tasks of {@link TableModel}s and
+ * {@link ApiModel}s whose helper shares a single connection run one at a time,
+ * in the order they were submitted, even if they belong to different async
+ * models. Such a task waits in a queue of the helper, without holding a
+ * thread, until the previous one has completed.
+ */
+public class AsyncModel<T, L> {
+
+	private static final int DEFAULT_POOL_SIZE = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+
+	private static final Map<Helper, SerialQueue> SERIAL_QUEUES = new WeakHashMap<Helper, SerialQueue>();
+
+	private static ExecutorService defaultExecutor;
+
+	private final Model<T, L> model;
+	private final Executor executor;
+	private final SerialQueue serialQueue;
+
+	public AsyncModel(Model<T, L> model, Executor executor) {
+		this.model = model;
+		this.executor = executor;
+
+		Helper helper = helperOf(model);
+		this.serialQueue = (helper != null && helper.getConnectionPool() == null) ? serialQueueOf(helper) : null;
+	}
+
+	/**
+	 * Creates an async model running every task on its own virtual thread
+	 * where the runtime supports virtual threads (Java 21 and later), and on a
+	 * shared pool of daemon threads otherwise, which is bounded to twice the
+	 * number of processors.
+	 */
+	public AsyncModel(Model<T, L> model) {
+		this(model, getDefaultExecutor());
+	}
+
+	public Model<T, L> getModel() {
+		return model;
+	}
+
+	/**
+	 * Returns the executor used by async models created without one.
+	 */
+	public static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = newVirtualThreadPerTaskExecutor();
+		}
+		if (defaultExecutor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "crud4j-async-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			defaultExecutor = pool;
+		}
+		return defaultExecutor;
+	}
+
+	private static SerialQueue serialQueueOf(Helper helper) {
+		synchronized (SERIAL_QUEUES) {
+			SerialQueue queue = SERIAL_QUEUES.get(helper);
+			if (queue == null) {
+				queue = new SerialQueue();
+				SERIAL_QUEUES.put(helper, queue);
+			}
+			return queue;
+		}
+	}
+
+	private static Helper helperOf(Model<?, ?> model) {
+		if (model instanceof TableModel) {
+			return ((TableModel<?, ?>) model).getHelper();
+		} else if (model instanceof ApiModel) {
+			return ((ApiModel<?, ?>) model).getHelper();
+		} else {
+			return null;
+		}
+	}
+
+	/*
+	 * Looked up reflectively, the library is compiled for older runtimes.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private <R> CompletableFuture<R> submit(final Callable<R> call) {
+		final CompletableFuture<R> future = new CompletableFuture<R>();
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(call.call());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		};
+
+		if (serialQueue != null) {
+			serialQueue.execute(executor, task, future);
+		} else {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				future.completeExceptionally(e);
+			}
+		}
+		return future;
+	}
+
+	/*
+	 * Runs the tasks of a single-connection helper one at a time, each on the
+	 * executor of the async model it was submitted to. A task is handed to its
+	 * executor only when the previous one has completed.
+	 */
+	private static final class SerialQueue {
+		private final Queue<Entry> entries = new ArrayDeque<Entry>();
+		private boolean running;
+
+		private static final class Entry {
+			private final Executor executor;
+			private final Runnable task;
+			private final CompletableFuture<?> future;
+
+			private Entry(Executor executor, Runnable task, CompletableFuture<?> future) {
+				this.executor = executor;
+				this.task = task;
+				this.future = future;
+			}
+		}
+
+		private void execute(Executor executor, Runnable task, CompletableFuture<?> future) {
+			synchronized (this) {
+				entries.add(new Entry(executor, task, future));
+				if (running) {
+					return;
+				}
+				running = true;
+			}
+			runNext();
+		}
+
+		private void runNext() {
+			while (true) {
+				final Entry entry;
+				synchronized (this) {
+					entry = entries.poll();
+					if (entry == null) {
+						running = false;
+						return;
+					}
+				}
+
+				try {
+					entry.executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								entry.task.run();
+							} finally {
+								runNext();
+							}
+						}
+					});
+					return;
+				} catch (RejectedExecutionException e) {
+					entry.future.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	public CompletableFuture<Void> create(final Object key, final T body) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				model.create(key, body);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Object> create(final T body) {
+		return submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return model.create(body);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Object>> createAll(final Collection<T> bodies) {
+		return submit(new Callable<List<Object>>() {
+			@Override
+			public List<Object> call() throws Exception {
+				return model.createAll(bodies);
+			}
+		});
+	}
+
+	public CompletableFuture<Void> createAll(final Map<?, T> bodies) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				model.createAll(bodies);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Integer> update(final Object key, final T body) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return model.update(key, body);
+			}
+		});
+	}
+
+	public CompletableFuture<Map<Object, Integer>> updateAll(final Map<?, T> bodies) {
+		return submit(new Callable<Map<Object, Integer>>() {
+			@Override
+			public Map<Object, Integer> call() throws Exception {
+				return model.updateAll(bodies);
+			}
+		});
+	}
+
+	public CompletableFuture<UpsertResult> upsert(final Object key, final T body) {
+		return submit(new Callable<UpsertResult>() {
+			@Override
+			public UpsertResult call() throws Exception {
+				return model.upsert(key, body);
+			}
+		});
+	}
+
+	public CompletableFuture<Map<Object, UpsertResult>> upsertAll(final Map<?, T> bodies) {
+		return submit(new Callable<Map<Object, UpsertResult>>() {
+			@Override
+			public Map<Object, UpsertResult> call() throws Exception {
+				return model.upsertAll(bodies);
+			}
+		});
+	}
+
+	public CompletableFuture<Integer> delete(final Object key) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return model.delete(key);
+			}
+		});
+	}
+
+	public CompletableFuture<Integer> deleteAll(final Collection<?> keys) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return model.deleteAll(keys);
+			}
+		});
+	}
+
+	public CompletableFuture<T> read(final Object key) {
+		return submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return model.read(key);
+			}
+		});
+	}
+
+	public CompletableFuture<Map<Object, T>> readMany(final Collection<?> keys) {
+		return submit(new Callable<Map<Object, T>>() {
+			@Override
+			public Map<Object, T> call() throws Exception {
+				return model.readMany(keys);
+			}
+		});
+	}
+
+	/**
+	 * Counts the records of a {@link CountingModel}. The future completes
+	 * exceptionally with an UnsupportedOperationException if the model cannot
+	 * count.
+	 */
+	public CompletableFuture<Long> count(final Map<String, Object> options) {
+		return submit(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				if (!(model instanceof CountingModel)) {
+					throw new UnsupportedOperationException(model.getClass().getName() + " cannot count");
+				}
+				return ((CountingModel<T, L>) model).count(options);
+			}
+		});
+	}
+
+	public CompletableFuture<Boolean> exists(final Object key) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return model.exists(key);
+			}
+		});
+	}
+
+	public CompletableFuture<L> list(final Map<String, Object> options) {
+		return submit(new Callable<L>() {
+			@Override
+			public L call() throws Exception {
+				return model.list(options);
+			}
+		});
+	}
+
+	public CompletableFuture<Void> list(final OutputStream out, final Map<String, Object> options) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				model.list(out, options);
+				return null;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,406 @@
+package com.lemondo.commons.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe pool of physical connections backing a pooled {@link Helper}.
+ * Every pooled connection has its own statement cache. Connections are leased
+ * for the duration of a {@link Session} and returned when it is closed.
+ */
+public class ConnectionPool {
+
+	interface ConnectionFactory {
+		Connection newConnection() throws SQLException;
+	}
+
+	private final ConnectionFactory factory;
+	private final PoolConfig config;
+	private final Helper helper;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	private final Deque<Entry> idle = new ArrayDeque<Entry>();
+	private final Map<Connection, Entry> leased = new IdentityHashMap<Connection, Entry>();
+	private int total;
+	private boolean closed;
+	private boolean filled;
+
+	private final Timer maintenanceTimer;
+
+	private final AtomicLong leaseCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong destroyedCount = new AtomicLong();
+
+	ConnectionPool(ConnectionFactory factory, PoolConfig config, Helper helper) {
+		if (config.getMinSize() > config.getMaxSize()) {
+			throw new IllegalArgumentException("Minimum pool size exceeds the maximum pool size");
+		}
+		this.factory = factory;
+		this.config = config;
+		this.helper = helper;
+
+		if (config.getIdleTimeoutMillis() > 0) {
+			long period = Math.max(1000, config.getIdleTimeoutMillis() / 2);
+			this.maintenanceTimer = new Timer("crud4j-pool-maintenance", true);
+			this.maintenanceTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					maintain();
+				}
+			}, period, period);
+		} else {
+			this.maintenanceTimer = null;
+		}
+	}
+
+	/**
+	 * Takes a connection from the pool, opening a new one if the pool is not
+	 * full, or waiting up to {@link PoolConfig#getMaxWaitMillis()} otherwise.
+	 * The first lease fills the pool to its minimum size, whether or not an
+	 * idle timeout keeps it filled afterwards.
+	 */
+	Entry lease() throws SQLException {
+		long start = System.nanoTime();
+		boolean fill;
+		lock.lock();
+		try {
+			fill = !filled;
+			filled = true;
+		} finally {
+			lock.unlock();
+		}
+		if (fill) {
+			fillToMinimum();
+		}
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+
+		while (true) {
+			Entry entry = null;
+			boolean create = false;
+
+			lock.lock();
+			try {
+				while (true) {
+					if (closed) {
+						throw new SQLException("Connection pool is closed");
+					} else if (!idle.isEmpty()) {
+						entry = idle.pollFirst();
+						break;
+					} else if (total < config.getMaxSize()) {
+						total++;
+						create = true;
+						break;
+					}
+
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						timeoutCount.incrementAndGet();
+						throw new SQLException("Timed out waiting for a pooled connection after " + config.getMaxWaitMillis() + " ms");
+					}
+					try {
+						available.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a pooled connection", e);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			if (create) {
+				entry = create();
+			} else if (!isValid(entry)) {
+				destroy(entry);
+				continue;
+			}
+
+			lock.lock();
+			try {
+				leased.put(entry.conn, entry);
+			} finally {
+				lock.unlock();
+			}
+
+			recordWait(System.nanoTime() - start);
+			return entry;
+		}
+	}
+
+	void release(Connection conn) {
+		Entry entry;
+		lock.lock();
+		try {
+			entry = leased.remove(conn);
+		} finally {
+			lock.unlock();
+		}
+		if (entry == null) {
+			return;
+		}
+
+		boolean healthy = reset(entry);
+
+		lock.lock();
+		try {
+			if (healthy && !closed) {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.addFirst(entry);
+				available.signal();
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		destroy(entry);
+	}
+
+	private Entry create() throws SQLException {
+		try {
+			Connection conn = factory.newConnection();
+			createdCount.incrementAndGet();
+			return new Entry(conn, helper.newStatementCache(conn));
+		} catch (SQLException e) {
+			lock.lock();
+			try {
+				total--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+			throw e;
+		}
+	}
+
+	private void destroy(Entry entry) {
+		if (entry.cache != null) {
+			entry.cache.close();
+		}
+		try {
+			if (!entry.conn.isClosed()) {
+				entry.conn.close();
+			}
+		} catch (SQLException e) {
+			System.err.println("WARNING: Error during finalization (possible memory leak): Cannot close Connection:");
+			e.printStackTrace(System.err);
+		}
+		destroyedCount.incrementAndGet();
+
+		lock.lock();
+		try {
+			total--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isValid(Entry entry) {
+		try {
+			if (entry.conn.isClosed()) {
+				return false;
+			}
+			return !config.isValidateOnBorrow() || entry.conn.isValid(config.getValidationTimeoutSeconds());
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Leaves no open transaction behind for the next borrower.
+	 */
+	private boolean reset(Entry entry) {
+		try {
+			if (entry.conn.isClosed()) {
+				return false;
+			}
+			if (!entry.conn.getAutoCommit()) {
+				entry.conn.rollback();
+				entry.conn.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void recordWait(long waitNanos) {
+		leaseCount.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+		long max = maxWaitNanos.get();
+		while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * Closes idle connections unused for longer than the idle timeout while the
+	 * pool stays above its minimum size.
+	 */
+	public void evictIdleConnections() {
+		if (config.getIdleTimeoutMillis() <= 0) {
+			return;
+		}
+
+		long threshold = System.currentTimeMillis() - config.getIdleTimeoutMillis();
+		List<Entry> evicted = new ArrayList<Entry>();
+		lock.lock();
+		try {
+			Iterator<Entry> it = idle.descendingIterator();
+			while (it.hasNext() && total - evicted.size() > config.getMinSize()) {
+				Entry entry = it.next();
+				if (entry.lastUsed < threshold) {
+					it.remove();
+					evicted.add(entry);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		for (Entry entry : evicted) {
+			destroy(entry);
+		}
+	}
+
+	private void fillToMinimum() {
+		while (true) {
+			lock.lock();
+			try {
+				if (closed || total >= config.getMinSize()) {
+					return;
+				}
+				total++;
+			} finally {
+				lock.unlock();
+			}
+
+			Entry entry;
+			try {
+				entry = create();
+			} catch (SQLException e) {
+				return;
+			}
+
+			lock.lock();
+			try {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.addLast(entry);
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void maintain() {
+		evictIdleConnections();
+		fillToMinimum();
+	}
+
+	void close() {
+		List<Entry> toClose;
+		lock.lock();
+		try {
+			closed = true;
+			toClose = new ArrayList<Entry>(idle);
+			idle.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		if (maintenanceTimer != null) {
+			maintenanceTimer.cancel();
+		}
+		for (Entry entry : toClose) {
+			destroy(entry);
+		}
+	}
+
+	public int getTotalCount() {
+		lock.lock();
+		try {
+			return total;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getActiveCount() {
+		lock.lock();
+		try {
+			return leased.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getLeaseCount() {
+		return leaseCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.get();
+	}
+
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	public double getAverageWaitMillis() {
+		long leases = leaseCount.get();
+		return (leases == 0) ? 0 : totalWaitNanos.get() / 1000000.0 / leases;
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	static final class Entry {
+		final Connection conn;
+		final StatementCache cache;
+		long lastUsed;
+
+		private Entry(Connection conn, StatementCache cache) {
+			this.conn = conn;
+			this.cache = cache;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.lemondo.commons.db;
+
+import java.util.Map;
+
+import com.lemondo.commons.db.exception.DatabaseOperationException;
+
+/**
+ * A {@link Model} that can count the records of a list without reading them.
+ */
+public interface CountingModel<T, L> extends Model<T, L> {
+
+	/**
+	 * Counts the records matching the filter options of a list, without
+	 * reading them. Sorting and paging options, i.e. <code>limit</code>,
+	 * <code>offset</code> and <code>after</code>, are ignored, so the count is
+	 * that of every page together.
+	 */
+	public long count(Map<String, Object> options) throws DatabaseOperationException;
+
+}
@@ -4,12 +4,15 @@ import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -51,8 +54,20 @@ public abstract class Helper {
 		return NOT_NULL_VIOLATION_CODES.contains(e.getErrorCode());
 	}
 
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+	private static final Pattern USE_AFFECTED_ROWS = Pattern.compile("[?&]useAffectedRows=true(&|$)", Pattern.CASE_INSENSITIVE);
+
 	private List<Statement> statementPool;
 
+	private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+	private boolean useAffectedRows;
+	private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+
+	private final SessionLock sessionLock = new SessionLock();
+	private StatementCache sessionStatements;
+	private StatementCache connectionStatements;
+
 	protected Connection conn;
 
 	protected Helper() {
@@ -76,7 +91,7 @@ public abstract class Helper {
 		}
 
 		@Override
-		public Connection getConnection() throws SQLException {
+		public synchronized Connection getConnection() throws SQLException {
 			return (this.conn == null) ? (this.conn = DriverManager.getConnection(uri, userName, password)) : this.conn;
 		}
 
@@ -97,11 +112,56 @@ public abstract class Helper {
 		}
 
 		@Override
-		public Connection getConnection() throws SQLException {
+		public synchronized Connection getConnection() throws SQLException {
 			return (this.conn == null) ? (this.conn = ds.getConnection()) : this.conn;
 		}
 	}
 
+	/*
+	 * Leases a pooled connection for every session. The connection returned by
+	 * getConnection() is leased once and kept for the session-less methods.
+	 */
+	private static class PooledHelper extends Helper {
+
+		private final ConnectionPool pool;
+
+		private PooledHelper(ConnectionPool.ConnectionFactory factory, PoolConfig config) {
+			super();
+			this.pool = new ConnectionPool(factory, config, this);
+		}
+
+		@Override
+		public synchronized Connection getConnection() throws SQLException {
+			return (this.conn == null) ? (this.conn = pool.lease().conn) : this.conn;
+		}
+
+		@Override
+		public ConnectionPool getConnectionPool() {
+			return pool;
+		}
+
+		@Override
+		public Session openSession() throws SQLException {
+			ConnectionPool.Entry entry = pool.lease();
+			return new Session(this, entry.conn, entry.cache);
+		}
+
+		@Override
+		protected void release(Session session) {
+			pool.release(session.getConnection());
+		}
+
+		@Override
+		public synchronized void cleanup() {
+			Connection legacy = this.conn;
+			super.cleanup();
+			if (legacy != null) {
+				pool.release(legacy);
+			}
+			pool.close();
+		}
+	}
+
 	public static Helper getInstance(DataSource ds) {
 		return new DataSourceHelper(ds);
 	}
@@ -111,30 +171,236 @@ public abstract class Helper {
 	}
 
 	public static Helper getInstance(String driverName, String uri, String userName, String password) throws ClassNotFoundException {
-		return new PlainJdbcHelper(driverName, uri, userName, password);
+		Helper helper = new PlainJdbcHelper(driverName, uri, userName, password);
+		helper.setUseAffectedRows(USE_AFFECTED_ROWS.matcher(uri).find());
+		return helper;
+	}
+
+	/**
+	 * Returns a helper that leases a connection from a pool created from the
+	 * given data source for every operation. Use this with a data source that
+	 * does not pool connections itself.
+	 */
+	public static Helper getInstance(final DataSource ds, PoolConfig poolConfig) {
+		return new PooledHelper(new ConnectionPool.ConnectionFactory() {
+			@Override
+			public Connection newConnection() throws SQLException {
+				return ds.getConnection();
+			}
+		}, poolConfig);
+	}
+
+	public static Helper getInstance(String dataSourceJndi, PoolConfig poolConfig) throws NamingException {
+		return getInstance((DataSource) new InitialContext().lookup(dataSourceJndi), poolConfig);
+	}
+
+	/**
+	 * Returns a helper that leases a connection from a pool of
+	 * <code>DriverManager</code> connections for every operation.
+	 */
+	public static Helper getInstance(String driverName, final String uri, final String userName, final String password, PoolConfig poolConfig)
+			throws ClassNotFoundException {
+		Class.forName(driverName);
+		Helper helper = new PooledHelper(new ConnectionPool.ConnectionFactory() {
+			@Override
+			public Connection newConnection() throws SQLException {
+				return DriverManager.getConnection(uri, userName, password);
+			}
+		}, poolConfig);
+		helper.setUseAffectedRows(USE_AFFECTED_ROWS.matcher(uri).find());
+		return helper;
 	}
 
 	public abstract Connection getConnection() throws SQLException;
 
+	/**
+	 * Returns the connection pool of a pooled helper, or <code>null</code> if
+	 * this helper uses a single connection.
+	 */
+	public ConnectionPool getConnectionPool() {
+		return null;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of prepared statements kept open per connection.
+	 * Zero disables statement caching. Takes effect for the next connection.
+	 * The statements prepared through {@link #prepareStatement(String)} and
+	 * {@link #prepareCall(String)} are cached separately from those of
+	 * sessions.
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException("Statement cache size must not be negative");
+		}
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	public boolean isUseAffectedRows() {
+		return useAffectedRows;
+	}
+
+	/**
+	 * Declares that the connections report the rows an update changed rather
+	 * than the rows it found, as Connector/J does with
+	 * <code>useAffectedRows=true</code>. Only then can upserts tell inserted
+	 * rows from unchanged ones, see {@link UpsertResult}. Helpers created from
+	 * a URL are set from the URL; others must be set explicitly.
+	 */
+	public void setUseAffectedRows(boolean useAffectedRows) {
+		this.useAffectedRows = useAffectedRows;
+	}
+
+	public long getStatementCacheHits() {
+		return statementCacheStats.hits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementCacheStats.misses.get();
+	}
+
+	public long getStatementCacheEvictions() {
+		return statementCacheStats.evictions.get();
+	}
+
+	StatementCache newStatementCache(Connection c) {
+		return (statementCacheSize > 0) ? new StatementCache(c, statementCacheSize, statementCacheStats) : null;
+	}
+
+	/**
+	 * Opens a session for a single operation. The caller must close it, which
+	 * releases all result sets and non-cached statements created through it.
+	 * <p>
+	 * The sessions of a helper with a single connection run one at a time: a
+	 * thread opening a session waits until the sessions of other threads are
+	 * closed. A thread may open sessions within its own, and these nested
+	 * sessions do not use the statement cache, whose statements may still be
+	 * in use by the enclosing session.
+	 */
+	public Session openSession() throws SQLException {
+		boolean outermost = sessionLock.lock();
+		Session session = null;
+		try {
+			Connection c = this.getConnection();
+			session = new Session(this, c, outermost ? sessionStatements(c) : null);
+			return session;
+		} finally {
+			if (session == null) {
+				sessionLock.unlock();
+			}
+		}
+	}
+
+	private synchronized StatementCache sessionStatements(Connection c) {
+		if (sessionStatements == null || sessionStatements.getConnection() != c) {
+			sessionStatements = newStatementCache(c);
+		}
+		return sessionStatements;
+	}
+
+	/**
+	 * Called when a session opened by this helper is closed.
+	 */
+	protected void release(Session session) {
+		sessionLock.unlock();
+	}
+
+	/*
+	 * Admits the sessions of one thread at a time. Unlike a ReentrantLock, it
+	 * may be released by another thread than the one that acquired it, since a
+	 * stream may be closed by the thread that reads it to the end.
+	 */
+	private static final class SessionLock {
+		private Thread owner;
+		private int holds;
+
+		/*
+		 * Returns whether the current thread did not hold the lock yet.
+		 */
+		private synchronized boolean lock() {
+			Thread current = Thread.currentThread();
+			boolean interrupted = false;
+			while (owner != null && owner != current) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				current.interrupt();
+			}
+			owner = current;
+			return ++holds == 1;
+		}
+
+		private synchronized void unlock() {
+			if (holds > 0 && --holds == 0) {
+				owner = null;
+				notifyAll();
+			}
+		}
+	}
+
 	public PreparedStatement prepareStatement(String sqlStatement) throws SQLException {
-		PreparedStatement stmnt = this.getConnection().prepareStatement(sqlStatement);
-		this.statementPool.add(stmnt);
-		return stmnt;
+		return prepareStatement(sqlStatement, Statement.NO_GENERATED_KEYS);
 	}
 
+	/**
+	 * Prepares a statement on the connection returned by
+	 * {@link #getConnection()}. The statement is taken from a cache shared by
+	 * all callers of this method, so callers preparing the same SQL must not
+	 * use it concurrently, and it is closed when evicted from the cache or by
+	 * {@link #cleanup()}. Operations should use a {@link Session} instead.
+	 */
 	public PreparedStatement prepareStatement(String sqlStatement, int autoGeneratedKeys) throws SQLException {
+		StatementCache cache = connectionStatements();
+		if (cache != null) {
+			return cache.prepareStatement(sqlStatement, autoGeneratedKeys);
+		}
+
 		PreparedStatement stmnt = this.getConnection().prepareStatement(sqlStatement, autoGeneratedKeys);
-		this.statementPool.add(stmnt);
+		track(stmnt);
 		return stmnt;
 	}
 
 	public CallableStatement prepareCall(String sqlStatement) throws SQLException {
+		StatementCache cache = connectionStatements();
+		if (cache != null) {
+			return cache.prepareCall(sqlStatement);
+		}
+
 		CallableStatement stmnt = this.getConnection().prepareCall(sqlStatement);
-		this.statementPool.add(stmnt);
+		track(stmnt);
 		return stmnt;
 	}
 
-	private void close(Statement stmnt) {
+	private synchronized StatementCache connectionStatements() throws SQLException {
+		Connection c = this.getConnection();
+		if (connectionStatements == null || connectionStatements.getConnection() != c) {
+			connectionStatements = newStatementCache(c);
+		}
+		return connectionStatements;
+	}
+
+	/*
+	 * Keeps an uncached statement until cleanup(), forgetting the statements
+	 * the callers have closed meanwhile.
+	 */
+	private synchronized void track(Statement stmnt) throws SQLException {
+		Iterator<Statement> it = this.statementPool.iterator();
+		while (it.hasNext()) {
+			if (it.next().isClosed()) {
+				it.remove();
+			}
+		}
+		this.statementPool.add(stmnt);
+	}
+
+	static void close(Statement stmnt) {
 		try {
 			if (stmnt != null && !stmnt.isClosed()) {
 				stmnt.close();
@@ -145,6 +411,23 @@ public abstract class Helper {
 		}
 	}
 
+	static void close(Session session) {
+		if (session != null) {
+			session.close();
+		}
+	}
+
+	static void close(ResultSet rs) {
+		try {
+			if (rs != null && !rs.isClosed()) {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			System.err.println("WARNING: Error during finalization (possible memory leak): Cannot close ResultSet:");
+			e.printStackTrace(System.err);
+		}
+	}
+
 	private void close(Connection conn) {
 		try {
 			if (conn != null && !conn.isClosed()) {
@@ -156,11 +439,21 @@ public abstract class Helper {
 		}
 	}
 
-	public void cleanup() {
+	public synchronized void cleanup() {
+		if (this.sessionStatements != null) {
+			this.sessionStatements.close();
+			this.sessionStatements = null;
+		}
+		if (this.connectionStatements != null) {
+			this.connectionStatements.close();
+			this.connectionStatements = null;
+		}
 		for (Statement stmnt : this.statementPool) {
 			close(stmnt);
 		}
+		this.statementPool.clear();
 		close(this.conn);
+		this.conn = null;
 	}
 
 }
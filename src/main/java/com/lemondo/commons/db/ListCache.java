@@ -0,0 +1,276 @@
+package com.lemondo.commons.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+
+/**
+ * In-process cache of list results, used by {@link TableModel} when set with
+ * {@link TableModel#setListCache(ListCache)}. Lists are keyed by their
+ * options, with filters compared regardless of the order of their fields. The
+ * cache is bounded by the estimated size of the cached lists, evicting the
+ * least recently used lists first, and lists may expire after a fixed time to
+ * live.
+ * <p>
+ * Every write through the model invalidates all cached lists. Writes made by
+ * other models, or directly in the database, are only picked up when the
+ * lists expire.
+ * <p>
+ * Lists written to an <code>OutputStream</code> are cached as the bytes
+ * written, so a hit only copies them to the stream. Other lists are copied
+ * like the rows of a {@link RowCache}.
+ */
+public class ListCache<L> {
+
+	/*
+	 * Options that only affect how rows are fetched, not which rows are listed.
+	 */
+	private static final List<String> FETCH_OPTIONS = Arrays.asList("stream", "fetchSize");
+
+	private final RowCache<Object> entries;
+
+	/**
+	 * @param maxBytes
+	 *            the total size of the cached lists, roughly in bytes
+	 * @param ttlMillis
+	 *            the time a list stays cached, or 0 to keep lists until evicted
+	 */
+	public ListCache(long maxBytes, long ttlMillis) {
+		this.entries = new RowCache<Object>(maxBytes, ttlMillis) {
+			@Override
+			protected Object copy(Object value) {
+				if (value instanceof Serialized) {
+					return value;
+				} else if (value instanceof List) {
+					List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+					for (Object row : (List<?>) value) {
+						copy.add(super.copy(row));
+					}
+					return copy;
+				} else if (value instanceof JSONArray) {
+					JSONArray array = (JSONArray) value;
+					JSONArray copy = new JSONArray();
+					for (int i = 0; i < array.length(); i++) {
+						copy.put(super.copy(array.opt(i)));
+					}
+					return copy;
+				} else {
+					return value;
+				}
+			}
+
+			@Override
+			protected long weigh(Object value) {
+				long result = 64;
+				if (value instanceof Serialized) {
+					result += ((Serialized) value).bytes.length;
+				} else if (value instanceof List) {
+					for (Object row : (List<?>) value) {
+						result += super.weigh(row);
+					}
+				} else if (value instanceof JSONArray) {
+					JSONArray array = (JSONArray) value;
+					for (int i = 0; i < array.length(); i++) {
+						result += super.weigh(array.opt(i));
+					}
+				}
+				return result;
+			}
+		};
+	}
+
+	public ListCache(long maxBytes) {
+		this(maxBytes, 0);
+	}
+
+	/*
+	 * Options with maps sorted by key and fetch options left out.
+	 */
+	static Object key(Map<String, Object> options, boolean serialized) {
+		TreeMap<String, Object> normalized = new TreeMap<String, Object>();
+		if (options != null) {
+			for (Map.Entry<String, Object> option : options.entrySet()) {
+				if (!FETCH_OPTIONS.contains(option.getKey())) {
+					normalized.put(option.getKey(), normalize(option.getValue()));
+				}
+			}
+		}
+		return Arrays.asList(serialized, normalized);
+	}
+
+	private static Object normalize(Object value) {
+		if (value instanceof Map) {
+			TreeMap<String, Object> normalized = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				normalized.put(String.valueOf(entry.getKey()), normalize(entry.getValue()));
+			}
+			return normalized;
+		} else if (value instanceof Collection) {
+			List<Object> normalized = new ArrayList<Object>(((Collection<?>) value).size());
+			for (Object element : (Collection<?>) value) {
+				normalized.add(normalize(element));
+			}
+			return normalized;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached list, or <code>null</code> if the list is
+	 * not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public L get(Map<String, Object> options) {
+		return (L) entries.get(key(options, false));
+	}
+
+	/**
+	 * Writes the cached bytes of a list into the stream. Returns
+	 * <code>false</code> if the list is not cached.
+	 */
+	public boolean replay(Map<String, Object> options, OutputStream out) throws IOException {
+		Serialized serialized = (Serialized) entries.get(key(options, true));
+		if (serialized == null) {
+			return false;
+		}
+
+		out.write(serialized.bytes);
+		if (serialized.closed) {
+			out.close();
+		} else {
+			out.flush();
+		}
+		return true;
+	}
+
+	/**
+	 * See {@link RowCache#beginLoad()}.
+	 */
+	public long beginLoad() {
+		return entries.beginLoad();
+	}
+
+	public void recordLoad(long nanos) {
+		entries.recordLoad(nanos);
+	}
+
+	public void put(Map<String, Object> options, L list, long stamp) {
+		entries.put(key(options, false), list, stamp);
+	}
+
+	/**
+	 * Returns a stream writing through to <code>out</code> that records the
+	 * bytes written, up to the size of the cache.
+	 */
+	Recording record(OutputStream out) {
+		return new Recording(out, entries.getMaxWeight());
+	}
+
+	void put(Map<String, Object> options, Recording recording, long stamp) {
+		if (recording.buffer != null) {
+			entries.put(key(options, true), new Serialized(recording.buffer.toByteArray(), recording.closed), stamp);
+		}
+	}
+
+	public void invalidateAll() {
+		entries.invalidateAll();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getWeight() {
+		return entries.getWeight();
+	}
+
+	public long getMaxWeight() {
+		return entries.getMaxWeight();
+	}
+
+	public long getHitCount() {
+		return entries.getHitCount();
+	}
+
+	public long getMissCount() {
+		return entries.getMissCount();
+	}
+
+	public double getHitRatio() {
+		return entries.getHitRatio();
+	}
+
+	public long getEvictionCount() {
+		return entries.getEvictionCount();
+	}
+
+	public long getLoadCount() {
+		return entries.getLoadCount();
+	}
+
+	public double getAverageLoadMillis() {
+		return entries.getAverageLoadMillis();
+	}
+
+	private static final class Serialized {
+		private final byte[] bytes;
+		private final boolean closed;
+
+		private Serialized(byte[] bytes, boolean closed) {
+			this.bytes = bytes;
+			this.closed = closed;
+		}
+	}
+
+	static final class Recording extends FilterOutputStream {
+		private final long limit;
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private boolean closed;
+
+		private Recording(OutputStream out, long limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (buffer != null) {
+				buffer.write(b);
+				checkLimit();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (buffer != null) {
+				buffer.write(b, off, len);
+				checkLimit();
+			}
+		}
+
+		private void checkLimit() {
+			if (buffer.size() > limit) {
+				buffer = null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
+}
@@ -1,25 +1,147 @@
 package com.lemondo.commons.db;
 
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.lemondo.commons.db.exception.DataProcessingException;
 import com.lemondo.commons.db.exception.DatabaseOperationException;
 import com.lemondo.commons.db.exception.InvalidFieldException;
 import com.lemondo.commons.db.exception.NoDataFoundException;
+import com.lemondo.commons.db.exception.UniqueKeyViolation;
 
+/**
+ * Operations on a set of records. Only the single-record operations and the
+ * lists must be implemented; the other operations default to repeating the
+ * single-record ones. Counting and streaming cannot be built from these, and
+ * are offered by the models implementing {@link CountingModel} and
+ * {@link StreamingModel}.
+ */
 public interface Model<T, L> {
 
 	public void create(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException;
 
 	public Object create(T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException;
 
+	/**
+	 * Creates all records in as few round-trips as possible and returns their
+	 * generated keys in input order.
+	 */
+	public default List<Object> createAll(Collection<T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		List<Object> keys = new ArrayList<Object>(bodies.size());
+		for (T body : bodies) {
+			keys.add(create(body));
+		}
+		return keys;
+	}
+
+	/**
+	 * Creates all records under the given keys in as few round-trips as possible.
+	 */
+	public default void createAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			create(body.getKey(), body.getValue());
+		}
+	}
+
 	public int update(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException;
 
+	/**
+	 * Updates every record of the map and returns the affected-row count per
+	 * key.
+	 */
+	public default Map<Object, Integer> updateAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		Map<Object, Integer> result = new LinkedHashMap<Object, Integer>();
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			result.put(body.getKey(), update(body.getKey(), body.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the record with the given key, or updates it if it exists, and
+	 * reports which of the two happened.
+	 * <p>
+	 * By default the record is updated and, if no row was affected, created,
+	 * which is not atomic. If the create fails since the record exists, either
+	 * created concurrently or left unchanged by the update, the update is
+	 * repeated, and {@link UpsertResult#UNKNOWN} is returned if it affects no
+	 * row again.
+	 */
+	public default UpsertResult upsert(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (update(key, body) > 0) {
+			return UpsertResult.UPDATED;
+		}
+		try {
+			create(key, body);
+			return UpsertResult.INSERTED;
+		} catch (UniqueKeyViolation e) {
+			return (update(key, body) > 0) ? UpsertResult.UPDATED : UpsertResult.UNKNOWN;
+		}
+	}
+
+	/**
+	 * Upserts every record of the map and returns the outcome per key.
+	 */
+	public default Map<Object, UpsertResult> upsertAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		Map<Object, UpsertResult> result = new LinkedHashMap<Object, UpsertResult>();
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			result.put(body.getKey(), upsert(body.getKey(), body.getValue()));
+		}
+		return result;
+	}
+
 	public int delete(Object key) throws DatabaseOperationException;
 
+	/**
+	 * Deletes all records with the given keys and returns the total number of
+	 * affected rows.
+	 */
+	public default int deleteAll(Collection<?> keys) throws DatabaseOperationException {
+		int count = 0;
+		for (Object key : keys) {
+			count += delete(key);
+		}
+		return count;
+	}
+
 	public T read(Object key) throws NoDataFoundException, DataProcessingException, DatabaseOperationException;
 
+	/**
+	 * Reads the records with the given keys in as few round-trips as possible.
+	 * The returned map holds the keys in input order, each mapped to its record
+	 * or to <code>null</code> if no record was found.
+	 */
+	public default Map<Object, T> readMany(Collection<?> keys) throws DataProcessingException, DatabaseOperationException {
+		Map<Object, T> result = new LinkedHashMap<Object, T>();
+		for (Object key : keys) {
+			try {
+				result.put(key, read(key));
+			} catch (NoDataFoundException e) {
+				result.put(key, null);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the record with the given key exists. By default the
+	 * record is read, and exists even if it cannot be processed.
+	 */
+	public default boolean exists(Object key) throws DatabaseOperationException {
+		try {
+			read(key);
+			return true;
+		} catch (NoDataFoundException e) {
+			return false;
+		} catch (DataProcessingException e) {
+			return true;
+		}
+	}
+
 	public L list(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException;
 
 	public void list(OutputStream out, Map<String, Object> options) throws DataProcessingException, DatabaseOperationException;
@@ -0,0 +1,93 @@
+package com.lemondo.commons.db;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A page of rows returned by {@link TableModel#listPage(java.util.Map)}
+ * together with the continuation token of the next page.
+ */
+public class Page<L> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final L items;
+	private final String next;
+
+	public Page(L items, String next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	public L getItems() {
+		return items;
+	}
+
+	/**
+	 * Returns the token to pass as the <code>after</code> option to get the
+	 * next page, or <code>null</code> if this is the last page.
+	 */
+	public String getNext() {
+		return next;
+	}
+
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	/*
+	 * A token is a sequence of length-prefixed values ("<length>:<value>", or
+	 * "-" for null) encoded in URL-safe Base64.
+	 */
+	static String encodeToken(Object[] values) {
+		StringBuilder token = new StringBuilder();
+		for (Object value : values) {
+			if (value == null) {
+				token.append("-");
+			} else {
+				String str = value.toString();
+				token.append(str.length()).append(":").append(str);
+			}
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(UTF8));
+	}
+
+	static List<String> decodeToken(String token) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(token), UTF8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+
+		List<String> values = new ArrayList<String>();
+		int pos = 0;
+		while (pos < decoded.length()) {
+			if (decoded.charAt(pos) == '-') {
+				values.add(null);
+				pos++;
+				continue;
+			}
+
+			int colon = decoded.indexOf(':', pos);
+			if (colon < 0) {
+				throw new IllegalArgumentException("Invalid continuation token");
+			}
+			int length;
+			try {
+				length = Integer.parseInt(decoded.substring(pos, colon));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid continuation token", e);
+			}
+			if (length < 0 || colon + 1 + length > decoded.length()) {
+				throw new IllegalArgumentException("Invalid continuation token");
+			}
+			values.add(decoded.substring(colon + 1, colon + 1 + length));
+			pos = colon + 1 + length;
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.lemondo.commons.db;
+
+/**
+ * Settings of the connection pool used by a pooled {@link Helper}.
+ */
+public class PoolConfig {
+
+	private int minSize = 1;
+	private int maxSize = 10;
+	private long maxWaitMillis = 30000;
+	private long idleTimeoutMillis = 600000;
+	private int validationTimeoutSeconds = 2;
+	private boolean validateOnBorrow = true;
+
+	public PoolConfig() {
+		super();
+	}
+
+	public PoolConfig(int minSize, int maxSize) {
+		super();
+		setMinSize(minSize);
+		setMaxSize(maxSize);
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public void setMinSize(int minSize) {
+		if (minSize < 0) {
+			throw new IllegalArgumentException("Minimum pool size must not be negative");
+		}
+		this.minSize = minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Maximum pool size must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Maximum time to wait for a free connection before the lease fails.
+	 */
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Time after which an unused connection above the minimum pool size is
+	 * closed. Zero or a negative value disables idle eviction.
+	 */
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	public boolean isValidateOnBorrow() {
+		return validateOnBorrow;
+	}
+
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+}
@@ -31,58 +31,137 @@ public class Procedure {
 		this.helper = helper;
 	}
 
-	private CallableStatement prepareCall(Map<String, Object> args) throws SQLException {
-		CallableStatement stmnt = helper.prepareCall(meta.genProcedureCall());
+	/**
+	 * Prepares a call of the procedure that can be executed repeatedly with
+	 * new arguments, e.g. once for every record of a bulk operation. Without a
+	 * session the statement is prepared by the helper.
+	 */
+	public Call prepare(Session session) throws SQLException {
+		String sql = meta.genProcedureCall();
+		return new Call(session, (session == null) ? helper.prepareCall(sql) : session.prepareCall(sql));
+	}
+
+	public Object executeFunction(Session session, Map<String, Object> args) throws SQLException {
+		return prepare(session).executeFunction(args);
+	}
 
-		int startInd = 1;
+	public Object executeFunction(Map<String, Object> args) throws SQLException {
+		return executeFunction(null, args);
+	}
 
-		if (returnType != null) {
-			stmnt.registerOutParameter(startInd++, returnType);
+	public void executeProcedure(Session session, Map<String, Object> args) throws SQLException {
+		prepare(session).executeProcedure(args);
+	}
+
+	public void executeProcedure(Map<String, Object> args) throws SQLException {
+		executeProcedure(null, args);
+	}
+
+	/**
+	 * Executes the procedure and returns its result set, which is released
+	 * when the given session is closed.
+	 */
+	public ResultSet executeQuery(Session session, Map<String, Object> args) throws SQLException {
+		return prepare(session).executeQuery(args);
+	}
+
+	public ResultSet executeQuery(Map<String, Object> args) throws SQLException {
+		return executeQuery(null, args);
+	}
+
+	/**
+	 * A prepared call of the procedure, bound anew for every execution.
+	 */
+	public class Call {
+
+		private final Session session;
+		private final CallableStatement stmnt;
+
+		private int batchSize;
+
+		private Call(Session session, CallableStatement stmnt) {
+			this.session = session;
+			this.stmnt = stmnt;
 		}
 
-		if (params != null) {
-			if (args == null) {
-				for (int i = 0; i < params.size(); i++) {
-					stmnt.setNull(startInd + i, params.get(i).getType());
-				}
-			} else {
-				for (int i = 0; i < params.size(); i++) {
-					Object val = args.get(params.get(i).getName());
-					if (val != null) {
-						stmnt.setObject(startInd + i, val, params.get(i).getType());
-					} else {
+		private void bind(Map<String, Object> args) throws SQLException {
+			int startInd = 1;
+
+			if (returnType != null) {
+				stmnt.registerOutParameter(startInd++, returnType);
+			}
+
+			if (params != null) {
+				if (args == null) {
+					for (int i = 0; i < params.size(); i++) {
 						stmnt.setNull(startInd + i, params.get(i).getType());
 					}
+				} else {
+					for (int i = 0; i < params.size(); i++) {
+						Object val = args.get(params.get(i).getName());
+						if (val != null) {
+							stmnt.setObject(startInd + i, val, params.get(i).getType());
+						} else {
+							stmnt.setNull(startInd + i, params.get(i).getType());
+						}
+					}
 				}
 			}
 		}
 
-		return stmnt;
-	}
+		public Object executeFunction(Map<String, Object> args) throws SQLException {
+			bind(args);
+			stmnt.execute();
+
+			if (returnType == null) {
+				return null;
+			} else if (returnType == Types.INTEGER) {
+				return stmnt.getInt(1);
+			} else if (returnType == Types.BIGINT) {
+				return stmnt.getLong(1);
+			} else if (returnType == Types.VARCHAR || returnType == Types.CHAR) {
+				return stmnt.getString(1);
+			} else {
+				return stmnt.getObject(1);
+			}
+		}
 
-	public Object executeFunction(Map<String, Object> args) throws SQLException {
-		CallableStatement stmnt = prepareCall(args);
-		stmnt.execute();
-
-		if (returnType == null) {
-			return null;
-		} else if (returnType == Types.INTEGER) {
-			return stmnt.getInt(1);
-		} else if (returnType == Types.BIGINT) {
-			return stmnt.getLong(1);
-		} else if (returnType == Types.VARCHAR || returnType == Types.CHAR) {
-			return stmnt.getString(1);
-		} else {
-			return stmnt.getObject(1);
+		public void executeProcedure(Map<String, Object> args) throws SQLException {
+			bind(args);
+			stmnt.execute();
 		}
-	}
-	
-	public void executeProcedure(Map<String, Object> args) throws SQLException {
-		prepareCall(args).execute();
-	}
 
-	public ResultSet executeQuery(Map<String, Object> args) throws SQLException {
-		return prepareCall(args).executeQuery();
+		/**
+		 * Executes the procedure and returns its result set, which is
+		 * released when the session of the call is closed.
+		 */
+		public ResultSet executeQuery(Map<String, Object> args) throws SQLException {
+			bind(args);
+			return (session == null) ? stmnt.executeQuery() : session.executeQuery(stmnt);
+		}
+
+		/**
+		 * Adds a call with the given arguments to the batch sent by
+		 * {@link #executeBatch()}. A batch cannot return values, so a
+		 * procedure with a return value is executed at once instead.
+		 */
+		public void addBatch(Map<String, Object> args) throws SQLException {
+			if (returnType != null) {
+				executeProcedure(args);
+				return;
+			}
+
+			bind(args);
+			stmnt.addBatch();
+			batchSize++;
+		}
+
+		public void executeBatch() throws SQLException {
+			if (batchSize > 0) {
+				batchSize = 0;
+				stmnt.executeBatch();
+			}
+		}
 	}
 
 }
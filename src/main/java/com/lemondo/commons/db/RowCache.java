@@ -0,0 +1,296 @@
+package com.lemondo.commons.db;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+import com.lemondo.commons.db.processor.BeanDataProcessor;
+import com.lemondo.commons.db.processor.DataProcessor;
+
+/**
+ * In-process cache of rows read by key, used by {@link TableModel} and
+ * {@link ApiModel} when set with <code>setRowCache</code>. The cache is bounded
+ * by the total weight of its rows, evicting the least recently used rows
+ * first, and rows may expire after a fixed time to live.
+ * <p>
+ * The model invalidates the keys it writes. Writes made by other models, or
+ * directly in the database, are only picked up when the rows expire.
+ * <p>
+ * Rows are copied when cached and when returned, so callers may modify them.
+ * {@link Map} and {@link JSONObject} rows are copied shallowly, rows of other
+ * types are assumed to be immutable unless {@link #copy(Object)} is
+ * overridden. Their weight is estimated by {@link #weigh(Object)}. Beans read
+ * by a {@link BeanDataProcessor} are mutable, so the models only accept a
+ * cache that copies them, like one returned by
+ * {@link #forBeans(BeanDataProcessor, long, long)}.
+ */
+public class RowCache<T> {
+
+	private final long maxWeight;
+	private final long ttlNanos;
+
+	private final LinkedHashMap<Object, Entry<T>> entries;
+	private long weight;
+	private long invalidations;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong totalLoadNanos = new AtomicLong();
+
+	/**
+	 * @param maxWeight
+	 *            the total weight of the cached rows, roughly in bytes
+	 * @param ttlMillis
+	 *            the time a row stays cached, or 0 to keep rows until evicted
+	 */
+	public RowCache(long maxWeight, long ttlMillis) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Cache weight must be positive");
+		} else if (ttlMillis < 0) {
+			throw new IllegalArgumentException("Time to live must not be negative");
+		}
+		this.maxWeight = maxWeight;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<Object, Entry<T>>(16, 0.75f, true);
+	}
+
+	public RowCache(long maxWeight) {
+		this(maxWeight, 0);
+	}
+
+	/**
+	 * Returns a cache that copies beans with
+	 * {@link BeanDataProcessor#copy(Object)}.
+	 */
+	public static <T> RowCache<T> forBeans(final BeanDataProcessor<T> processor, long maxWeight, long ttlMillis) {
+		return new RowCache<T>(maxWeight, ttlMillis) {
+			@Override
+			protected T copy(T row) {
+				try {
+					return processor.copy(row);
+				} catch (DataProcessingException e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			}
+		};
+	}
+
+	/*
+	 * Rejects a cache that would hand out the cached instances of mutable
+	 * beans. Subclasses are trusted to copy their rows.
+	 */
+	static void checkRows(RowCache<?> cache, DataProcessor<?, ?> processor) {
+		if (cache != null && cache.getClass() == RowCache.class && processor instanceof BeanDataProcessor && !((BeanDataProcessor<?>) processor).isRecord()) {
+			throw new IllegalArgumentException("Beans are mutable and need a row cache that copies them, see RowCache.forBeans");
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached row, or <code>null</code> if the key is not
+	 * cached.
+	 */
+	public T get(Object key) {
+		T row = null;
+		synchronized (entries) {
+			Entry<T> entry = entries.get(key);
+			if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.created > ttlNanos) {
+				remove(key);
+			} else if (entry != null) {
+				row = entry.row;
+			}
+		}
+
+		if (row == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return copy(row);
+	}
+
+	/**
+	 * Starts loading rows from the database. The returned stamp must be passed
+	 * to {@link #put(Object, Object, long)} to cache the loaded rows, which
+	 * are dropped if any key was invalidated in the meantime.
+	 */
+	public long beginLoad() {
+		synchronized (entries) {
+			return invalidations;
+		}
+	}
+
+	/**
+	 * Records the time spent loading rows that were not cached.
+	 */
+	public void recordLoad(long nanos) {
+		loadCount.incrementAndGet();
+		totalLoadNanos.addAndGet(nanos);
+	}
+
+	public void put(Object key, T row, long stamp) {
+		if (row == null) {
+			return;
+		}
+
+		T copy = copy(row);
+		long rowWeight = weigh(copy);
+		if (rowWeight > maxWeight) {
+			return;
+		}
+
+		synchronized (entries) {
+			if (stamp != invalidations) {
+				return;
+			}
+			remove(key);
+			entries.put(key, new Entry<T>(copy, rowWeight, System.nanoTime()));
+			weight += rowWeight;
+
+			Iterator<Entry<T>> it = entries.values().iterator();
+			while (weight > maxWeight && it.hasNext()) {
+				weight -= it.next().weight;
+				it.remove();
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	public void invalidate(Object key) {
+		synchronized (entries) {
+			invalidations++;
+			remove(key);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			invalidations++;
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	private void remove(Object key) {
+		Entry<T> entry = entries.remove(key);
+		if (entry != null) {
+			weight -= entry.weight;
+		}
+	}
+
+	/**
+	 * Returns a copy of a row that shares no mutable state with it.
+	 */
+	@SuppressWarnings("unchecked")
+	protected T copy(T row) {
+		if (row instanceof Map) {
+			return (T) new LinkedHashMap<Object, Object>((Map<?, ?>) row);
+		} else if (row instanceof JSONObject) {
+			JSONObject json = (JSONObject) row;
+			Map<String, Object> values = new HashMap<String, Object>();
+			Iterator<?> keys = json.keys();
+			while (keys.hasNext()) {
+				String key = (String) keys.next();
+				values.put(key, json.opt(key));
+			}
+			return (T) new JSONObject(values);
+		} else {
+			return row;
+		}
+	}
+
+	/**
+	 * Returns the estimated size of a row in bytes.
+	 */
+	protected long weigh(T row) {
+		long result = 64;
+		if (row instanceof Map) {
+			for (Map.Entry<?, ?> value : ((Map<?, ?>) row).entrySet()) {
+				result += 32 + weighValue(value.getKey()) + weighValue(value.getValue());
+			}
+		} else if (row instanceof JSONObject) {
+			JSONObject json = (JSONObject) row;
+			Iterator<?> keys = json.keys();
+			while (keys.hasNext()) {
+				Object key = keys.next();
+				result += 32 + weighValue(key) + weighValue(json.opt((String) key));
+			}
+		}
+		return result;
+	}
+
+	private static long weighValue(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof CharSequence) {
+			return 40 + 2L * ((CharSequence) value).length();
+		} else if (value instanceof byte[]) {
+			return 16 + ((byte[]) value).length;
+		} else {
+			return 24;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public double getHitRatio() {
+		long hits = hitCount.get();
+		long requests = hits + missCount.get();
+		return (requests == 0) ? 0 : (double) hits / requests;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	public double getAverageLoadMillis() {
+		long loads = loadCount.get();
+		return (loads == 0) ? 0 : totalLoadNanos.get() / 1000000.0 / loads;
+	}
+
+	private static final class Entry<T> {
+		private final T row;
+		private final long weight;
+		private final long created;
+
+		private Entry(T row, long weight, long created) {
+			this.row = row;
+			this.weight = weight;
+			this.created = created;
+		}
+	}
+
+}
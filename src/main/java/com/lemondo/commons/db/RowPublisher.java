@@ -0,0 +1,222 @@
+package com.lemondo.commons.db;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a list to subscribers with back-pressure. Rows are
+ * read through {@link StreamingModel#stream(Map)} on the given executor, in chunks
+ * driven by the subscriber's demand, so no thread blocks while the subscriber
+ * does not request rows. Cancelling a subscription aborts the running
+ * statement on the executor.
+ * <p>
+ * The nested interfaces follow the contract and method signatures of the
+ * Reactive Streams / <code>java.util.concurrent.Flow</code> interfaces, so
+ * adapting them takes a one-line delegate.
+ */
+public class RowPublisher<T> {
+
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	public interface Subscriber<T> {
+		public void onSubscribe(Subscription subscription);
+
+		public void onNext(T item);
+
+		public void onError(Throwable throwable);
+
+		public void onComplete();
+	}
+
+	public interface Subscription {
+		public void request(long n);
+
+		public void cancel();
+	}
+
+	private static ExecutorService defaultExecutor;
+
+	private final StreamingModel<T, ?> model;
+	private final Map<String, Object> options;
+	private final Executor executor;
+	private final int chunkSize;
+
+	public RowPublisher(StreamingModel<T, ?> model, Map<String, Object> options, Executor executor, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.model = model;
+		this.options = options;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+	}
+
+	public RowPublisher(StreamingModel<T, ?> model, Map<String, Object> options, Executor executor) {
+		this(model, options, executor, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a publisher running on a shared pool of daemon threads.
+	 */
+	public RowPublisher(StreamingModel<T, ?> model, Map<String, Object> options) {
+		this(model, options, getDefaultExecutor(), DEFAULT_CHUNK_SIZE);
+	}
+
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "crud4j-publisher-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber must not be null");
+		}
+		subscriber.onSubscribe(new RowSubscription(subscriber));
+	}
+
+	/*
+	 * All interaction with the row stream and all signals to the subscriber
+	 * happen in run(), which the work-in-progress counter keeps from running
+	 * concurrently.
+	 */
+	private class RowSubscription implements Subscription, Runnable {
+
+		private final Subscriber<? super T> subscriber;
+
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+		private volatile RowStream<T> rows;
+
+		private boolean done;
+
+		private RowSubscription(Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Requested number of rows must be positive, was " + n);
+			} else {
+				long current;
+				do {
+					current = demand.get();
+				} while (current != Long.MAX_VALUE && !demand.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			final RowStream<T> current = rows;
+			if (current != null) {
+				// Cancelling the statement may wait for the server, so it is
+				// kept off the subscriber's thread
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						current.cancel();
+					}
+				});
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			boolean more = false;
+			int missed = 1;
+			do {
+				more = drain();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+
+			if (more) {
+				// Yield the executor between chunks
+				schedule();
+			}
+		}
+
+		/*
+		 * Emits at most one chunk of rows. Returns whether more rows have been
+		 * requested.
+		 */
+		private boolean drain() {
+			if (done) {
+				return false;
+			} else if (cancelled) {
+				finish();
+				return false;
+			} else if (invalidRequest != null) {
+				finish();
+				subscriber.onError(invalidRequest);
+				return false;
+			}
+
+			long requested = demand.get();
+			if (requested == 0) {
+				return false;
+			}
+
+			try {
+				if (rows == null) {
+					rows = model.stream(options);
+				}
+
+				long emitted = 0;
+				while (emitted < requested && emitted < chunkSize && !cancelled) {
+					if (!rows.hasNext()) {
+						finish();
+						subscriber.onComplete();
+						return false;
+					}
+					subscriber.onNext(rows.next());
+					emitted++;
+				}
+
+				if (requested != Long.MAX_VALUE) {
+					requested = demand.addAndGet(-emitted);
+				}
+				return requested > 0 || cancelled;
+			} catch (Throwable e) {
+				finish();
+				subscriber.onError(e);
+				return false;
+			}
+		}
+
+		private void finish() {
+			done = true;
+			if (rows != null) {
+				rows.close();
+			}
+		}
+	}
+
+}
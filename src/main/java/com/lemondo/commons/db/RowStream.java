@@ -0,0 +1,110 @@
+package com.lemondo.commons.db;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+import com.lemondo.commons.db.exception.DatabaseOperationException;
+import com.lemondo.commons.db.exception.RowStreamException;
+import com.lemondo.commons.db.processor.DataProcessor;
+import com.lemondo.commons.db.processor.RowSchema;
+import com.lemondo.commons.db.processor.SchemaDataProcessor;
+import com.lemondo.commons.db.processor.SchemaProcessorAdapter;
+
+/**
+ * Lazy iterator over the rows of a list, returned by
+ * {@link StreamingModel#stream(java.util.Map)}. Rows are read from the result set on
+ * demand. The underlying session is released when the last row has been read
+ * or when the stream is closed, whichever happens first; callers that stop
+ * early must close the stream.
+ */
+public class RowStream<T> implements Iterator<T>, Closeable {
+
+	private final Session session;
+	private final ResultSet rs;
+	private final RowSchema schema;
+	private final SchemaDataProcessor<T, ?> processor;
+
+	private boolean fetched;
+	private boolean hasRow;
+
+	<L> RowStream(Session session, ResultSet rs, DataProcessor<T, L> processor) throws SQLException {
+		this.session = session;
+		this.rs = rs;
+		ResultSetMetaData rsmd = rs.getMetaData();
+		this.schema = new RowSchema(rsmd, rsmd.getColumnCount());
+		this.processor = SchemaProcessorAdapter.adapt(processor);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!fetched) {
+			if (session.isClosed()) {
+				hasRow = false;
+			} else {
+				try {
+					hasRow = rs.next();
+				} catch (SQLException e) {
+					close();
+					throw new RowStreamException(new DatabaseOperationException("Error while DB operation", e));
+				}
+			}
+			fetched = true;
+			if (!hasRow) {
+				close();
+			}
+		}
+		return hasRow;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+
+		try {
+			return processor.readRow(rs, schema);
+		} catch (SQLException e) {
+			close();
+			throw new RowStreamException(new DatabaseOperationException("Error while DB operation", e));
+		} catch (DataProcessingException e) {
+			close();
+			throw new RowStreamException(e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Rows cannot be removed through a RowStream");
+	}
+
+	/**
+	 * Aborts the statement producing the rows, so that closing a partially
+	 * read streaming result does not have to drain it. May be called from any
+	 * thread; the stream must still be closed afterwards.
+	 */
+	public void cancel() {
+		try {
+			Statement stmnt = rs.getStatement();
+			if (stmnt != null && !session.isClosed()) {
+				stmnt.cancel();
+			}
+		} catch (SQLException e) {
+			System.err.println("WARNING: Cannot cancel Statement:");
+			e.printStackTrace(System.err);
+		}
+	}
+
+	@Override
+	public void close() {
+		session.close();
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.lemondo.commons.db;
+
+import java.io.Closeable;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scope of a single database operation, obtained from
+ * {@link Helper#openSession()}. Every result set and every statement that is
+ * not kept by the statement cache is released when the session is closed.
+ */
+public class Session implements Closeable {
+
+	private final Helper helper;
+	private final Connection conn;
+	private final StatementCache statementCache;
+
+	private final List<Statement> statements;
+	private final List<ResultSet> resultSets;
+
+	private Boolean mySql;
+	private boolean closed;
+
+	Session(Helper helper, Connection conn, StatementCache statementCache) {
+		this.helper = helper;
+		this.conn = conn;
+		this.statementCache = statementCache;
+		this.statements = new ArrayList<Statement>();
+		this.resultSets = new ArrayList<ResultSet>();
+	}
+
+	public Connection getConnection() {
+		return conn;
+	}
+
+	public PreparedStatement prepareStatement(String sqlStatement) throws SQLException {
+		return prepareStatement(sqlStatement, Statement.NO_GENERATED_KEYS);
+	}
+
+	public PreparedStatement prepareStatement(String sqlStatement, int autoGeneratedKeys) throws SQLException {
+		if (statementCache != null) {
+			return statementCache.prepareStatement(sqlStatement, autoGeneratedKeys);
+		}
+
+		PreparedStatement stmnt = conn.prepareStatement(sqlStatement, autoGeneratedKeys);
+		statements.add(stmnt);
+		return stmnt;
+	}
+
+	public CallableStatement prepareCall(String sqlStatement) throws SQLException {
+		if (statementCache != null) {
+			return statementCache.prepareCall(sqlStatement);
+		}
+
+		CallableStatement stmnt = conn.prepareCall(sqlStatement);
+		statements.add(stmnt);
+		return stmnt;
+	}
+
+	/**
+	 * Prepares a forward-only, read-only statement whose result set is fetched
+	 * in chunks of <code>fetchSize</code> rows instead of being buffered by the
+	 * driver. <code>Integer.MIN_VALUE</code> makes MySQL Connector/J stream the
+	 * rows one by one. Streaming statements are never cached.
+	 */
+	public PreparedStatement prepareStreamingStatement(String sqlStatement, int fetchSize) throws SQLException {
+		PreparedStatement stmnt = conn.prepareStatement(sqlStatement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statements.add(stmnt);
+		stmnt.setFetchSize(fetchSize);
+		return stmnt;
+	}
+
+	/**
+	 * Returns whether the session's connection is a MySQL (or MariaDB)
+	 * connection.
+	 */
+	public boolean isMySql() throws SQLException {
+		if (mySql == null) {
+			String product = conn.getMetaData().getDatabaseProductName();
+			mySql = (product != null) && (product.startsWith("MySQL") || product.startsWith("MariaDB"));
+		}
+		return mySql;
+	}
+
+	/**
+	 * Registers a result set to be closed together with this session.
+	 */
+	public ResultSet register(ResultSet rs) {
+		if (rs != null) {
+			resultSets.add(rs);
+		}
+		return rs;
+	}
+
+	public ResultSet executeQuery(PreparedStatement stmnt) throws SQLException {
+		return register(stmnt.executeQuery());
+	}
+
+	public ResultSet getGeneratedKeys(Statement stmnt) throws SQLException {
+		return register(stmnt.getGeneratedKeys());
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		for (ResultSet rs : resultSets) {
+			Helper.close(rs);
+		}
+		resultSets.clear();
+		for (Statement stmnt : statements) {
+			Helper.close(stmnt);
+		}
+		statements.clear();
+
+		helper.release(this);
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.lemondo.commons.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements bound to a single connection. Statements
+ * are keyed by SQL text and generated-keys mode and are closed when evicted.
+ */
+class StatementCache {
+
+	private static final int CALL = -1;
+
+	private final Connection conn;
+	private final int maxSize;
+	private final Stats stats;
+
+	private final Map<Key, PreparedStatement> statements;
+
+	StatementCache(Connection conn, int maxSize, Stats stats) {
+		this.conn = conn;
+		this.maxSize = maxSize;
+		this.stats = stats;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true);
+	}
+
+	Connection getConnection() {
+		return conn;
+	}
+
+	synchronized PreparedStatement prepareStatement(String sqlStatement, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(sqlStatement, autoGeneratedKeys);
+		PreparedStatement stmnt = lookup(key);
+		if (stmnt == null) {
+			stmnt = conn.prepareStatement(sqlStatement, autoGeneratedKeys);
+			store(key, stmnt);
+		}
+		return stmnt;
+	}
+
+	synchronized CallableStatement prepareCall(String sqlStatement) throws SQLException {
+		Key key = new Key(sqlStatement, CALL);
+		CallableStatement stmnt = (CallableStatement) lookup(key);
+		if (stmnt == null) {
+			stmnt = conn.prepareCall(sqlStatement);
+			store(key, stmnt);
+		}
+		return stmnt;
+	}
+
+	synchronized int size() {
+		return statements.size();
+	}
+
+	private PreparedStatement lookup(Key key) throws SQLException {
+		PreparedStatement stmnt = statements.get(key);
+		if (stmnt != null && stmnt.isClosed()) {
+			statements.remove(key);
+			stmnt = null;
+		}
+
+		if (stmnt != null) {
+			stats.hits.incrementAndGet();
+			stmnt.clearParameters();
+		} else {
+			stats.misses.incrementAndGet();
+		}
+		return stmnt;
+	}
+
+	private void store(Key key, PreparedStatement stmnt) {
+		statements.put(key, stmnt);
+
+		Iterator<PreparedStatement> eldest = statements.values().iterator();
+		while (statements.size() > maxSize && eldest.hasNext()) {
+			PreparedStatement evicted = eldest.next();
+			eldest.remove();
+			stats.evictions.incrementAndGet();
+			Helper.close(evicted);
+		}
+	}
+
+	synchronized void close() {
+		for (PreparedStatement stmnt : statements.values()) {
+			Helper.close(stmnt);
+		}
+		statements.clear();
+	}
+
+	static class Stats {
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong evictions = new AtomicLong();
+	}
+
+	private static final class Key {
+		private final String sql;
+		private final int mode;
+
+		private Key(String sql, int mode) {
+			this.sql = sql;
+			this.mode = mode;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * sql.hashCode() + mode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return mode == other.mode && sql.equals(other.sql);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.lemondo.commons.db;
+
+import java.util.Map;
+
+import com.lemondo.commons.db.exception.DatabaseOperationException;
+
+/**
+ * A {@link Model} that can return the rows of a list one at a time, as
+ * required by {@link RowPublisher}.
+ */
+public interface StreamingModel<T, L> extends Model<T, L> {
+
+	/**
+	 * Returns the rows of a list lazily. The returned stream must be closed
+	 * unless it is read to the end.
+	 */
+	public RowStream<T> stream(Map<String, Object> options) throws DatabaseOperationException;
+
+}
@@ -1,12 +1,18 @@
 package com.lemondo.commons.db;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,72 +24,428 @@ import com.lemondo.commons.db.exception.InvalidFieldException;
 import com.lemondo.commons.db.exception.NoDataFoundException;
 import com.lemondo.commons.db.exception.NotNullViolation;
 import com.lemondo.commons.db.exception.UniqueKeyViolation;
+import com.lemondo.commons.db.meta.Aggregate;
 import com.lemondo.commons.db.meta.FilterCondition;
+import com.lemondo.commons.db.meta.SelectQuery;
+import com.lemondo.commons.db.meta.SortField;
+import com.lemondo.commons.db.meta.SqlTemplate;
 import com.lemondo.commons.db.meta.TableMetaData;
 import com.lemondo.commons.db.processor.DataProcessor;
+import com.lemondo.commons.db.processor.RowSchema;
+import com.lemondo.commons.db.processor.SchemaDataProcessor;
+import com.lemondo.commons.db.processor.SchemaProcessorAdapter;
 
-public class TableModel<T, L> implements Model<T, L> {
+public class TableModel<T, L> implements CountingModel<T, L>, StreamingModel<T, L> {
+
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_MAX_IN_LIST_SIZE = 1024;
+	public static final int DEFAULT_MAX_PACKET_SIZE = 1024 * 1024;
+	public static final int DEFAULT_STREAMING_FETCH_SIZE = 1000;
+
+	private static final int MAX_PLACEHOLDERS = 65535;
 
 	private final TableMetaData metaData;
 	private final Map<String, Integer> columnDef;
 
 	private final Helper helper;
 
-	private final DataProcessor<T, L> processor;
+	private final SchemaDataProcessor<T, L> processor;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int maxInListSize = DEFAULT_MAX_IN_LIST_SIZE;
+	private boolean multiRowInsert;
+	private int maxPacketSize = DEFAULT_MAX_PACKET_SIZE;
+	private boolean streaming;
+	private int fetchSize;
+
+	private RowCache<T> rowCache;
+	private ListCache<L> listCache;
 
 	public TableModel(TableMetaData meta, Helper helper, DataProcessor<T, L> processor) {
 		this.metaData = meta;
 		this.columnDef = (this.metaData == null) ? null : this.metaData.getColumnDef();
 		this.helper = helper;
-		this.processor = processor;
+		this.processor = SchemaProcessorAdapter.adapt(processor);
+	}
+
+	public Helper getHelper() {
+		return helper;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of rows sent to the database in one batch by the
+	 * <code>*All</code> operations.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getMaxInListSize() {
+		return maxInListSize;
+	}
+
+	/**
+	 * Sets the maximum number of keys matched by a single
+	 * <code>WHERE `id` IN (...)</code> statement, which also bounds the
+	 * <code>in</code> lists of filters.
+	 */
+	public void setMaxInListSize(int maxInListSize) {
+		if (maxInListSize < 1) {
+			throw new IllegalArgumentException("IN-list size must be positive");
+		}
+		this.maxInListSize = maxInListSize;
+	}
+
+	public boolean isMultiRowInsert() {
+		return multiRowInsert;
+	}
+
+	/**
+	 * When enabled, <code>createAll</code> sends rows as multi-row
+	 * <code>INSERT ... VALUES (...),(...)</code> statements instead of JDBC
+	 * batches. Statements are sized to stay within the packet budget set by
+	 * {@link #setMaxPacketSize(int)}.
+	 */
+	public void setMultiRowInsert(boolean multiRowInsert) {
+		this.multiRowInsert = multiRowInsert;
+	}
+
+	public int getMaxPacketSize() {
+		return maxPacketSize;
+	}
+
+	/**
+	 * Sets the size budget of a single multi-row INSERT statement in bytes. It
+	 * should not exceed the server's <code>max_allowed_packet</code>.
+	 */
+	public void setMaxPacketSize(int maxPacketSize) {
+		if (maxPacketSize < 1) {
+			throw new IllegalArgumentException("Packet size must be positive");
+		}
+		this.maxPacketSize = maxPacketSize;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * When enabled, lists fetch rows from the database while they are being
+	 * processed instead of having the driver buffer the whole result first.
+	 * Can be overridden per call with the <code>stream</code> option.
+	 * <p>
+	 * While a streamed result is being read, its connection cannot run other
+	 * statements.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows fetched per round-trip in streaming mode. Zero
+	 * (the default) streams row by row on MySQL and uses
+	 * {@value #DEFAULT_STREAMING_FETCH_SIZE} on other databases. On MySQL a
+	 * positive size requires cursor fetch (<code>useCursorFetch=true</code>)
+	 * to be enabled on the connection. Can be overridden per call with the
+	 * <code>fetchSize</code> option.
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 0) {
+			throw new IllegalArgumentException("Fetch size must not be negative");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	public RowCache<T> getRowCache() {
+		return rowCache;
+	}
+
+	/**
+	 * Sets the cache of rows read by key, or <code>null</code> to read every
+	 * row from the database. Rows written through this model are invalidated.
+	 * Mutable beans need a cache that copies them, see {@link RowCache}.
+	 */
+	public void setRowCache(RowCache<T> rowCache) {
+		RowCache.checkRows(rowCache, processor);
+		this.rowCache = rowCache;
+	}
+
+	public ListCache<L> getListCache() {
+		return listCache;
+	}
+
+	/**
+	 * Sets the cache of list results, or <code>null</code> to list every
+	 * result from the database. All cached lists are invalidated by every write
+	 * through this model.
+	 */
+	public void setListCache(ListCache<L> listCache) {
+		this.listCache = listCache;
+	}
+
+	private void invalidate(Object key) {
+		if (rowCache != null) {
+			rowCache.invalidate(normalizeKey(key));
+		}
+		invalidateLists();
+	}
+
+	private void invalidateAll(Collection<?> keys) {
+		if (rowCache != null) {
+			for (Object key : keys) {
+				rowCache.invalidate(normalizeKey(key));
+			}
+		}
+		invalidateLists();
+	}
+
+	private void invalidateLists() {
+		if (listCache != null) {
+			listCache.invalidateAll();
+		}
 	}
 
-	private PreparedStatement prepareInsertStmnt(Object key, Map<String, Object> body) throws InvalidFieldException, SQLException {
-		Set<String> columns = body.keySet();
+	/*
+	 * Returns the fetch size of a streaming select, or 0 if the select should
+	 * not be streamed.
+	 */
+	private int streamingFetchSize(Session session, Map<String, Object> options, boolean defaultStreaming) throws SQLException {
+		boolean stream = defaultStreaming;
+		int size = this.fetchSize;
+		if (options != null) {
+			Object streamRaw = options.get("stream");
+			if (streamRaw != null) {
+				if (!(streamRaw instanceof Boolean)) {
+					throw new IllegalArgumentException("\"stream\" attribute must be an instance of Boolean");
+				}
+				stream = (Boolean) streamRaw;
+			}
+			Long sizeRaw = extractLong(options, "fetchSize");
+			if (sizeRaw != null) {
+				size = sizeRaw.intValue();
+			}
+		}
+
+		if (!stream) {
+			return 0;
+		} else if (size > 0) {
+			return size;
+		} else {
+			return session.isMySql() ? Integer.MIN_VALUE : DEFAULT_STREAMING_FETCH_SIZE;
+		}
+	}
+
+	/*
+	 * Rounds an IN-list length up to a power of two (bounded by maxInListSize),
+	 * so that only a handful of distinct statements get prepared and cached.
+	 * The extra placeholders repeat the last key.
+	 */
+	private int inListSize(int keyCount) {
+		int size = Integer.highestOneBit(keyCount);
+		if (size < keyCount) {
+			size <<= 1;
+		}
+		return Math.min(size, maxInListSize);
+	}
+
+	private void bindKeyList(PreparedStatement stmnt, int startIndex, List<?> keys, int from, int to, int size) throws SQLException {
+		int pkType = metaData.getPkType().sqlType;
+		for (int i = 0; i < size; i++) {
+			stmnt.setObject(startIndex + i, keys.get(Math.min(from + i, to - 1)), pkType);
+		}
+	}
+
+	private PreparedStatement prepareInsertStmnt(Session session, Object key, Map<String, Object> body) throws InvalidFieldException, SQLException {
+		SqlTemplate template = metaData.insertTemplate(body.keySet(), (key == null));
 		int autoGenKeys = (key == null) ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
-		PreparedStatement stmnt = helper.prepareStatement(metaData.genInsertSql(columns, (key == null)), autoGenKeys);
+		PreparedStatement stmnt = session.prepareStatement(template.getSql(), autoGenKeys);
+
+		bindInsertParams(stmnt, template, key, body);
+
+		return stmnt;
+	}
 
+	private void bindInsertParams(PreparedStatement stmnt, SqlTemplate template, Object key, Map<String, Object> body) throws SQLException {
 		int i = 1;
 
 		if (key != null) {
 			stmnt.setObject(i++, key, metaData.getPkType().sqlType);
 		}
 
-		for (String col : columns) {
-			if (columnDef.containsKey(col)) {
-				stmnt.setObject(i++, body.get(col), columnDef.get(col));
-			} else {
-				throw new InvalidFieldException("Invalid field, " + col);
+		for (int c = 0; c < template.getColumnCount(); c++) {
+			stmnt.setObject(i++, body.get(template.getColumn(c)), template.getType(c));
+		}
+	}
+
+	/*
+	 * Groups row indexes by the insert statement their column set maps to,
+	 * keeping input order within each group.
+	 */
+	private Map<SqlTemplate, List<Integer>> groupByInsertShape(List<Map<String, Object>> rows, boolean autoGeneratedKey) throws InvalidFieldException {
+		Map<SqlTemplate, List<Integer>> groups = new LinkedHashMap<SqlTemplate, List<Integer>>();
+		for (int i = 0; i < rows.size(); i++) {
+			SqlTemplate template = metaData.insertTemplate(rows.get(i).keySet(), autoGeneratedKey);
+			List<Integer> group = groups.get(template);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(template, group);
 			}
+			group.add(i);
 		}
+		return groups;
+	}
 
-		return stmnt;
+	/*
+	 * Upper estimate of the number of bytes a value takes in the statement
+	 * sent to the server.
+	 */
+	private static int estimateSize(Object value) {
+		if (value == null) {
+			return 4;
+		} else if (value instanceof CharSequence) {
+			return ((CharSequence) value).length() * 3 + 2;
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length * 2 + 3;
+		} else {
+			return 32;
+		}
 	}
 
-	private PreparedStatement prepareInsertStmnt(Map<String, Object> body) throws InvalidFieldException, SQLException {
-		return prepareInsertStmnt(null, body);
+	/*
+	 * Inserts the rows with multi-row INSERT statements. Every statement holds a
+	 * power-of-two number of rows, as many as fit into maxPacketSize, which
+	 * bounds the number of distinct statements per column set.
+	 */
+	private Object[] executeMultiRowInserts(Session session, List<?> keys, List<Map<String, Object>> rows) throws InvalidFieldException, SQLException {
+		boolean autoGeneratedKey = (keys == null);
+		Object[] generatedKeys = autoGeneratedKey ? new Object[rows.size()] : null;
+		int autoGenKeys = autoGeneratedKey ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+
+		for (Map.Entry<SqlTemplate, List<Integer>> group : groupByInsertShape(rows, autoGeneratedKey).entrySet()) {
+			SqlTemplate rowTemplate = group.getKey();
+			List<Integer> indexes = group.getValue();
+			Set<String> columns = rows.get(indexes.get(0)).keySet();
+			int paramsPerRow = rowTemplate.getColumnCount() + (autoGeneratedKey ? 0 : 1);
+
+			int start = 0;
+			while (start < indexes.size()) {
+				long size = rowTemplate.getSql().length();
+				int count = 0;
+				while (start + count < indexes.size()) {
+					int row = indexes.get(start + count);
+					long rowSize = 3 + paramsPerRow + (autoGeneratedKey ? 0 : estimateSize(keys.get(row)));
+					for (int c = 0; c < rowTemplate.getColumnCount(); c++) {
+						rowSize += estimateSize(rows.get(row).get(rowTemplate.getColumn(c)));
+					}
+					if (count > 0 && (size + rowSize > maxPacketSize || (count + 1) * paramsPerRow > MAX_PLACEHOLDERS)) {
+						break;
+					}
+					size += rowSize;
+					count++;
+				}
+				count = Integer.highestOneBit(count);
+
+				SqlTemplate template = metaData.insertTemplate(columns, autoGeneratedKey, count);
+				PreparedStatement stmnt = session.prepareStatement(template.getSql(), autoGenKeys);
+				int i = 1;
+				for (int j = start; j < start + count; j++) {
+					int row = indexes.get(j);
+					if (!autoGeneratedKey) {
+						stmnt.setObject(i++, keys.get(row), metaData.getPkType().sqlType);
+					}
+					for (int c = 0; c < template.getColumnCount(); c++) {
+						stmnt.setObject(i++, rows.get(row).get(template.getColumn(c)), template.getType(c));
+					}
+				}
+				stmnt.executeUpdate();
+
+				if (autoGeneratedKey) {
+					ResultSet rs = session.getGeneratedKeys(stmnt);
+					for (int j = start; j < start + count && rs.next(); j++) {
+						generatedKeys[indexes.get(j)] = readKey(rs);
+					}
+					Helper.close(rs);
+				}
+
+				start += count;
+			}
+		}
+
+		return generatedKeys;
 	}
 
-	private PreparedStatement prepareUpdateStmnt(Object key, Map<String, Object> body) throws InvalidFieldException, SQLException {
-		Set<String> columns = body.keySet();
+	/*
+	 * Inserts the rows with JDBC batches of at most batchSize rows, or with
+	 * multi-row statements if enabled. Returns the generated keys in row order
+	 * if keys is null.
+	 */
+	private Object[] executeInsertBatches(Session session, List<?> keys, List<Map<String, Object>> rows) throws InvalidFieldException, SQLException {
+		if (multiRowInsert) {
+			return executeMultiRowInserts(session, keys, rows);
+		}
 
-		PreparedStatement stmnt = helper.prepareStatement(metaData.genUpdateSql(columns));
+		boolean autoGeneratedKey = (keys == null);
+		Object[] generatedKeys = autoGeneratedKey ? new Object[rows.size()] : null;
+		int autoGenKeys = autoGeneratedKey ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
 
-		int i = 1;
-		for (String col : columns) {
-			if (columnDef.containsKey(col)) {
-				stmnt.setObject(i++, body.get(col), columnDef.get(col));
-			} else {
-				throw new InvalidFieldException("Invalid field, " + col);
+		for (Map.Entry<SqlTemplate, List<Integer>> group : groupByInsertShape(rows, autoGeneratedKey).entrySet()) {
+			SqlTemplate template = group.getKey();
+			List<Integer> indexes = group.getValue();
+			PreparedStatement stmnt = session.prepareStatement(template.getSql(), autoGenKeys);
+
+			for (int start = 0; start < indexes.size(); start += batchSize) {
+				int end = Math.min(start + batchSize, indexes.size());
+				for (int j = start; j < end; j++) {
+					int row = indexes.get(j);
+					bindInsertParams(stmnt, template, autoGeneratedKey ? null : keys.get(row), rows.get(row));
+					stmnt.addBatch();
+				}
+				stmnt.executeBatch();
+
+				if (autoGeneratedKey) {
+					ResultSet rs = session.getGeneratedKeys(stmnt);
+					for (int j = start; j < end && rs.next(); j++) {
+						generatedKeys[indexes.get(j)] = readKey(rs);
+					}
+					Helper.close(rs);
+				}
 			}
 		}
+
+		return generatedKeys;
+	}
+
+	private PreparedStatement prepareInsertStmnt(Session session, Map<String, Object> body) throws InvalidFieldException, SQLException {
+		return prepareInsertStmnt(session, null, body);
+	}
+
+	private PreparedStatement prepareUpdateStmnt(Session session, Object key, Map<String, Object> body) throws InvalidFieldException, SQLException {
+		SqlTemplate template = metaData.updateTemplate(body.keySet());
+
+		PreparedStatement stmnt = session.prepareStatement(template.getSql());
+
+		int i = 1;
+		for (int c = 0; c < template.getColumnCount(); c++) {
+			stmnt.setObject(i++, body.get(template.getColumn(c)), template.getType(c));
+		}
 		stmnt.setObject(i, key, metaData.getPkType().sqlType);
 
 		return stmnt;
 	}
 
-	private PreparedStatement prepareDeleteStmnt(Object key) throws SQLException {
-		PreparedStatement stmnt = helper.prepareStatement(metaData.genDeleteSql());
+	private PreparedStatement prepareDeleteStmnt(Session session, Object key) throws SQLException {
+		PreparedStatement stmnt = session.prepareStatement(metaData.genDeleteSql());
 
 		stmnt.setObject(1, key, metaData.getPkType().sqlType);
 
@@ -97,19 +459,92 @@ public class TableModel<T, L> implements Model<T, L> {
 		} else if (!(filterRaw instanceof Map)) {
 			throw new IllegalArgumentException("\"filter\" attribute must be an instance of Map");
 		} else {
-			Set<FilterCondition> filter = new HashSet<FilterCondition>();
-
 			@SuppressWarnings("unchecked")
 			Map<String, Object> filterMap = (Map<String, Object>) filterRaw;
+			return parseFilter(filterMap);
+		}
+	}
 
-			Set<String> filterFields = filterMap.keySet();
-			for (String field : filterFields) {
-				if (columnDef.containsKey(field)) {
-					filter.add(new FilterCondition(field, "=", filterMap.get(field), columnDef.get(field)));
+	/*
+	 * A filter maps field names either to the value the field must be equal to,
+	 * or to a map of operators to operands, e.g. {"age": {">=": 18, "<": 65}}.
+	 * The operators are the comparisons, "between" (a list of two bounds),
+	 * "in" (a collection of values), "startsWith" (a string) and "null" (true
+	 * for IS NULL, false for IS NOT NULL). The "$or" key holds a list of
+	 * filters at least one of which must match. Unknown fields are ignored,
+	 * but an alternative without known fields is rejected, since it would
+	 * match every row.
+	 */
+	private Set<FilterCondition> parseFilter(Map<String, Object> filterMap) {
+		Set<FilterCondition> filter = new LinkedHashSet<FilterCondition>();
+
+		for (Map.Entry<String, Object> entry : filterMap.entrySet()) {
+			String field = entry.getKey();
+			Object value = entry.getValue();
+			if ("$or".equals(field)) {
+				filter.add(parseOrGroup(value));
+			} else if (columnDef.containsKey(field)) {
+				int type = columnDef.get(field);
+				if (value instanceof Map) {
+					for (Map.Entry<?, ?> condition : ((Map<?, ?>) value).entrySet()) {
+						filter.add(parseCondition(field, String.valueOf(condition.getKey()), condition.getValue(), type));
+					}
+				} else {
+					filter.add(new FilterCondition(field, "=", value, type));
 				}
 			}
+		}
+
+		return filter;
+	}
+
+	private FilterCondition parseOrGroup(Object groupRaw) {
+		if (!(groupRaw instanceof List)) {
+			throw new IllegalArgumentException("\"$or\" filter must be a List of filters");
+		}
+
+		List<Set<FilterCondition>> alternatives = new ArrayList<Set<FilterCondition>>();
+		for (Object alternative : (List<?>) groupRaw) {
+			if (!(alternative instanceof Map)) {
+				throw new IllegalArgumentException("\"$or\" filter must be a List of filters");
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, Object> alternativeMap = (Map<String, Object>) alternative;
+			Set<FilterCondition> parsed = parseFilter(alternativeMap);
+			if (parsed.isEmpty()) {
+				throw new IllegalArgumentException("\"$or\" filter alternative " + alternativeMap + " has no known fields");
+			}
+			alternatives.add(parsed);
+		}
+		return FilterCondition.or(alternatives);
+	}
 
-			return filter;
+	private FilterCondition parseCondition(String field, String operator, Object operand, int type) {
+		if ("between".equalsIgnoreCase(operator)) {
+			if (!(operand instanceof List) || ((List<?>) operand).size() != 2) {
+				throw new IllegalArgumentException("\"between\" filter of field `" + field + "` must be a List of two bounds");
+			}
+			List<?> bounds = (List<?>) operand;
+			return FilterCondition.between(field, bounds.get(0), bounds.get(1), type);
+		} else if ("in".equalsIgnoreCase(operator)) {
+			if (!(operand instanceof Collection)) {
+				throw new IllegalArgumentException("\"in\" filter of field `" + field + "` must be an instance of Collection");
+			} else if (((Collection<?>) operand).size() > maxInListSize) {
+				throw new IllegalArgumentException("\"in\" filter of field `" + field + "` exceeds " + maxInListSize + " values");
+			}
+			return FilterCondition.in(field, (Collection<?>) operand, type);
+		} else if ("startsWith".equalsIgnoreCase(operator)) {
+			if (!(operand instanceof String)) {
+				throw new IllegalArgumentException("\"startsWith\" filter of field `" + field + "` must be an instance of String");
+			}
+			return FilterCondition.startsWith(field, (String) operand, type);
+		} else if ("null".equalsIgnoreCase(operator)) {
+			if (!(operand instanceof Boolean)) {
+				throw new IllegalArgumentException("\"null\" filter of field `" + field + "` must be an instance of Boolean");
+			}
+			return ((Boolean) operand) ? FilterCondition.isNull(field) : FilterCondition.isNotNull(field);
+		} else {
+			return new FilterCondition(field, operator, operand, type);
 		}
 	}
 
@@ -126,17 +561,129 @@ public class TableModel<T, L> implements Model<T, L> {
 		}
 	}
 
-	private PreparedStatement prepareSelectStmnt(Object key, Map<String, Object> options) throws SQLException {
+	private Set<String> extractFields(Map<String, Object> options) {
+		Object fieldsRaw = options.get("fields");
+		if (fieldsRaw == null) {
+			return null;
+		} else if (!(fieldsRaw instanceof Collection)) {
+			throw new IllegalArgumentException("\"fields\" attribute must be an instance of Collection");
+		} else {
+			Set<String> fields = new LinkedHashSet<String>();
+			for (Object field : (Collection<?>) fieldsRaw) {
+				if (!(field instanceof String)) {
+					throw new IllegalArgumentException("\"fields\" attribute must contain field names");
+				}
+				fields.add((String) field);
+			}
+			return fields;
+		}
+	}
+
+	private List<String> extractGroupBy(Map<String, Object> options) {
+		Object groupByRaw = options.get("groupBy");
+		if (groupByRaw == null) {
+			return new ArrayList<String>();
+		} else if (!(groupByRaw instanceof List)) {
+			throw new IllegalArgumentException("\"groupBy\" attribute must be an instance of List");
+		} else {
+			List<String> groupBy = new ArrayList<String>();
+			for (Object field : (List<?>) groupByRaw) {
+				if (!(field instanceof String)) {
+					throw new IllegalArgumentException("\"groupBy\" attribute must contain field names");
+				}
+				groupBy.add((String) field);
+			}
+			return groupBy;
+		}
+	}
+
+	private List<Aggregate> extractAggregates(Map<String, Object> options) {
+		Object aggregatesRaw = options.get("aggregates");
+		if (!(aggregatesRaw instanceof Map)) {
+			throw new IllegalArgumentException("\"aggregates\" attribute must be an instance of Map");
+		}
+
+		List<Aggregate> aggregates = new ArrayList<Aggregate>();
+		for (Map.Entry<?, ?> aggregate : ((Map<?, ?>) aggregatesRaw).entrySet()) {
+			if (!(aggregate.getValue() instanceof String)) {
+				throw new IllegalArgumentException("\"aggregates\" attribute must map aliases to aggregates");
+			}
+			aggregates.add(Aggregate.parse(String.valueOf(aggregate.getKey()), (String) aggregate.getValue()));
+		}
+		return aggregates;
+	}
+
+	private Long extractLong(Map<String, Object> options, String option) {
+		Object raw = options.get(option);
+		if (raw == null) {
+			return null;
+		} else if (!(raw instanceof Number) || ((Number) raw).longValue() < 0) {
+			throw new IllegalArgumentException("\"" + option + "\" attribute must be a non-negative number");
+		} else {
+			return ((Number) raw).longValue();
+		}
+	}
+
+	private String extractAfter(Map<String, Object> options) {
+		Object raw = options.get("after");
+		if (raw == null) {
+			return null;
+		} else if (!(raw instanceof String)) {
+			throw new IllegalArgumentException("\"after\" attribute must be a continuation token");
+		} else {
+			return (String) raw;
+		}
+	}
+
+	private PreparedStatement prepareSelectStmnt(Session session, Map<String, Object> options) throws SQLException {
+		return prepareSelectStmnt(session, options, this.streaming);
+	}
+
+	private PreparedStatement prepareSelectStmnt(Session session, Map<String, Object> options, boolean defaultStreaming) throws SQLException {
+		Set<String> fields = (options == null) ? null : extractFields(options);
+		return prepareListStmnt(session, options, fields, false, defaultStreaming);
+	}
+
+	/*
+	 * Prepares the select of a list, whose options are rejected with an
+	 * IllegalArgumentException if they are invalid, including unknown fields.
+	 */
+	private PreparedStatement prepareListStmnt(Session session, Map<String, Object> options, Set<String> fields, boolean keysetOrder, boolean defaultStreaming)
+			throws SQLException {
+		try {
+			return prepareSelectStmnt(session, null, options, fields, keysetOrder, defaultStreaming);
+		} catch (InvalidFieldException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	private PreparedStatement prepareSelectStmnt(Session session, Object key, Map<String, Object> options, Set<String> fields, boolean keysetOrder,
+			boolean defaultStreaming) throws InvalidFieldException, SQLException {
 		Set<FilterCondition> filter = null;
 		List<String> sortFields = null;
+		Long limit = null;
+		Long offset = null;
+		String after = null;
 		if (options != null) {
 			filter = extractFilterFields(options);
 			sortFields = extractSortFields(options);
+			limit = extractLong(options, "limit");
+			offset = extractLong(options, "offset");
+			after = extractAfter(options);
 		}
 
 		boolean allRows = key == null;
 
-		PreparedStatement stmnt = helper.prepareStatement(metaData.genSelectSql(allRows, filter, sortFields));
+		SelectQuery query = new SelectQuery(allRows, filter, sortFields);
+		query.setFields(fields);
+		query.setSeek(after != null);
+		query.setKeysetOrder(keysetOrder);
+		query.setLimited(limit != null || offset != null);
+		query.setOffset(offset != null);
+
+		String sql = metaData.genSelectSql(query);
+		int streamingFetchSize = allRows ? streamingFetchSize(session, options, defaultStreaming) : 0;
+		PreparedStatement stmnt = (streamingFetchSize != 0) ? session.prepareStreamingStatement(sql, streamingFetchSize) : session.prepareStatement(sql);
 
 		int i = 1;
 		if (!allRows) {
@@ -145,18 +692,30 @@ public class TableModel<T, L> implements Model<T, L> {
 
 		if (filter != null) {
 			for (FilterCondition condition : filter) {
-				stmnt.setObject(i++, condition.getValue(), condition.getType());
+				i = condition.bind(stmnt, i);
+			}
+		}
+
+		if (allRows && after != null) {
+			i = metaData.bindSeek(stmnt, i, metaData.keysetFields(sortFields), Page.decodeToken(after));
+		}
+
+		if (allRows && (limit != null || offset != null)) {
+			stmnt.setLong(i++, (limit != null) ? limit : Long.MAX_VALUE);
+			if (offset != null) {
+				stmnt.setLong(i++, offset);
 			}
 		}
-		// TODO Add paging here
 
 		return stmnt;
 	}
 
 	@Override
 	public void create(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		Session session = null;
 		try {
-			prepareInsertStmnt(key, processor.bodyAsMap(body)).executeUpdate();
+			session = helper.openSession();
+			prepareInsertStmnt(session, key, processor.bodyAsMap(body)).executeUpdate();
 		} catch (SQLException e) {
 			if (Helper.isNotNullViolation(e)) {
 				throw new NotNullViolation("Mandatory field is omitted", e);
@@ -167,29 +726,23 @@ public class TableModel<T, L> implements Model<T, L> {
 			} else {
 				throw new DatabaseOperationException("Error while DB operation", e);
 			}
+		} finally {
+			Helper.close(session);
+			invalidate(key);
 		}
 	}
 
 	@Override
 	public Object create(T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
 		Object generatedKey = null;
+		Session session = null;
 		try {
-			PreparedStatement stmnt = prepareInsertStmnt(processor.bodyAsMap(body));
+			session = helper.openSession();
+			PreparedStatement stmnt = prepareInsertStmnt(session, processor.bodyAsMap(body));
 			stmnt.executeUpdate();
-			ResultSet rs = stmnt.getGeneratedKeys();
+			ResultSet rs = session.getGeneratedKeys(stmnt);
 			if (rs.next()) {
-				PrimarykeyType pkType = metaData.getPkType();
-				switch (pkType) {
-				case VARCHAR:
-					generatedKey = rs.getString(1);
-					break;
-				case INTEGER:
-					generatedKey = rs.getInt(1);
-					break;
-				case LONG:
-					generatedKey = rs.getLong(1);
-					break;
-				}
+				generatedKey = readKey(rs);
 			}
 		} catch (SQLException e) {
 			if (Helper.isNotNullViolation(e)) {
@@ -199,14 +752,170 @@ public class TableModel<T, L> implements Model<T, L> {
 			} else {
 				throw new DatabaseOperationException("Error while DB operation", e);
 			}
+		} finally {
+			Helper.close(session);
+			invalidateLists();
 		}
 		return generatedKey;
 	}
 
+	/*
+	 * Converts a key to the type read from the database by readKey, so that
+	 * keys given in another form (e.g. numeric keys as strings) match.
+	 */
+	private Object normalizeKey(Object key) {
+		if (key == null) {
+			return null;
+		}
+
+		try {
+			switch (metaData.getPkType()) {
+			case VARCHAR:
+				return key.toString();
+			case INTEGER:
+				return (key instanceof Number) ? ((Number) key).intValue() : Integer.valueOf(key.toString().trim());
+			case LONG:
+				return (key instanceof Number) ? ((Number) key).longValue() : Long.valueOf(key.toString().trim());
+			default:
+				return key;
+			}
+		} catch (NumberFormatException e) {
+			return key;
+		}
+	}
+
+	private Object readKey(ResultSet rs) throws SQLException {
+		switch (metaData.getPkType()) {
+		case VARCHAR:
+			return rs.getString(1);
+		case INTEGER:
+			return rs.getInt(1);
+		case LONG:
+			return rs.getLong(1);
+		default:
+			return rs.getObject(1);
+		}
+	}
+
+	@Override
+	public List<Object> createAll(Collection<T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(bodies.size());
+		for (T body : bodies) {
+			rows.add(processor.bodyAsMap(body));
+		}
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			return Arrays.asList(executeInsertBatches(session, null, rows));
+		} catch (SQLException e) {
+			if (Helper.isNotNullViolation(e)) {
+				throw new NotNullViolation("Mandatory field is omitted", e);
+			} else if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Parent record not found", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidateLists();
+		}
+	}
+
+	@Override
+	public void createAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		List<Object> keys = new ArrayList<Object>(bodies.size());
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(bodies.size());
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			keys.add(body.getKey());
+			rows.add(processor.bodyAsMap(body.getValue()));
+		}
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			executeInsertBatches(session, keys, rows);
+		} catch (SQLException e) {
+			if (Helper.isNotNullViolation(e)) {
+				throw new NotNullViolation("Mandatory field is omitted", e);
+			} else if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Parent record not found", e);
+			} else if (Helper.isUniqueKeyViolation(e)) {
+				throw new UniqueKeyViolation("Record with given key already exists", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidateAll(bodies.keySet());
+		}
+	}
+
 	@Override
 	public int update(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		Session session = null;
+		try {
+			session = helper.openSession();
+			return prepareUpdateStmnt(session, key, processor.bodyAsMap(body)).executeUpdate();
+		} catch (SQLException e) {
+			if (Helper.isNotNullViolation(e)) {
+				throw new NotNullViolation("Mandatory field is omitted", e);
+			} else if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Foreign key violation", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidate(key);
+		}
+	}
+
+	@Override
+	public Map<Object, Integer> updateAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		List<Object> keys = new ArrayList<Object>(bodies.size());
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(bodies.size());
+		Map<SqlTemplate, List<Integer>> groups = new LinkedHashMap<SqlTemplate, List<Integer>>();
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			Map<String, Object> row = processor.bodyAsMap(body.getValue());
+			SqlTemplate template = metaData.updateTemplate(row.keySet());
+			List<Integer> group = groups.get(template);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(template, group);
+			}
+			group.add(rows.size());
+			keys.add(body.getKey());
+			rows.add(row);
+		}
+
+		int[] counts = new int[rows.size()];
+		Session session = null;
 		try {
-			return prepareUpdateStmnt(key, processor.bodyAsMap(body)).executeUpdate();
+			session = helper.openSession();
+			for (Map.Entry<SqlTemplate, List<Integer>> group : groups.entrySet()) {
+				SqlTemplate template = group.getKey();
+				List<Integer> indexes = group.getValue();
+				PreparedStatement stmnt = session.prepareStatement(template.getSql());
+
+				for (int start = 0; start < indexes.size(); start += batchSize) {
+					int end = Math.min(start + batchSize, indexes.size());
+					for (int j = start; j < end; j++) {
+						int row = indexes.get(j);
+						int i = 1;
+						for (int c = 0; c < template.getColumnCount(); c++) {
+							stmnt.setObject(i++, rows.get(row).get(template.getColumn(c)), template.getType(c));
+						}
+						stmnt.setObject(i, keys.get(row), metaData.getPkType().sqlType);
+						stmnt.addBatch();
+					}
+
+					int[] batchCounts = stmnt.executeBatch();
+					for (int j = start; j < end; j++) {
+						counts[indexes.get(j)] = batchCounts[j - start];
+					}
+				}
+			}
 		} catch (SQLException e) {
 			if (Helper.isNotNullViolation(e)) {
 				throw new NotNullViolation("Mandatory field is omitted", e);
@@ -215,26 +924,212 @@ public class TableModel<T, L> implements Model<T, L> {
 			} else {
 				throw new DatabaseOperationException("Error while DB operation", e);
 			}
+		} finally {
+			Helper.close(session);
+			invalidateAll(keys);
+		}
+
+		Map<Object, Integer> result = new LinkedHashMap<Object, Integer>();
+		for (int i = 0; i < keys.size(); i++) {
+			result.put(keys.get(i), counts[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the record, or updates the given fields if a record with the key
+	 * exists, in a single statement. Requires MySQL.
+	 */
+	@Override
+	public UpsertResult upsert(Object key, T body) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		if (key == null) {
+			throw new IllegalArgumentException("Upsert requires a key");
+		}
+
+		Session session = null;
+		try {
+			Map<String, Object> row = processor.bodyAsMap(body);
+			SqlTemplate template = metaData.upsertTemplate(row.keySet());
+			session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(template.getSql());
+			bindInsertParams(stmnt, template, key, row);
+			return UpsertResult.fromUpdateCount(stmnt.executeUpdate(), helper.isUseAffectedRows());
+		} catch (SQLException e) {
+			if (Helper.isNotNullViolation(e)) {
+				throw new NotNullViolation("Mandatory field is omitted", e);
+			} else if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Parent record not found", e);
+			} else if (Helper.isUniqueKeyViolation(e)) {
+				throw new UniqueKeyViolation("Record with given unique field already exists", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidate(key);
 		}
 	}
 
+	/**
+	 * Upserts every record of the map with JDBC batches of at most
+	 * {@link #getBatchSize()} records. Requires MySQL.
+	 */
+	@Override
+	public Map<Object, UpsertResult> upsertAll(Map<?, T> bodies) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		List<Object> keys = new ArrayList<Object>(bodies.size());
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(bodies.size());
+		Map<SqlTemplate, List<Integer>> groups = new LinkedHashMap<SqlTemplate, List<Integer>>();
+		for (Map.Entry<?, T> body : bodies.entrySet()) {
+			if (body.getKey() == null) {
+				throw new IllegalArgumentException("Upsert requires a key");
+			}
+			Map<String, Object> row = processor.bodyAsMap(body.getValue());
+			SqlTemplate template = metaData.upsertTemplate(row.keySet());
+			List<Integer> group = groups.get(template);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(template, group);
+			}
+			group.add(rows.size());
+			keys.add(body.getKey());
+			rows.add(row);
+		}
+
+		UpsertResult[] results = new UpsertResult[rows.size()];
+		Session session = null;
+		try {
+			session = helper.openSession();
+			for (Map.Entry<SqlTemplate, List<Integer>> group : groups.entrySet()) {
+				SqlTemplate template = group.getKey();
+				List<Integer> indexes = group.getValue();
+				PreparedStatement stmnt = session.prepareStatement(template.getSql());
+
+				for (int start = 0; start < indexes.size(); start += batchSize) {
+					int end = Math.min(start + batchSize, indexes.size());
+					for (int j = start; j < end; j++) {
+						int row = indexes.get(j);
+						bindInsertParams(stmnt, template, keys.get(row), rows.get(row));
+						stmnt.addBatch();
+					}
+
+					int[] batchCounts = stmnt.executeBatch();
+					for (int j = start; j < end; j++) {
+						results[indexes.get(j)] = UpsertResult.fromUpdateCount(batchCounts[j - start], helper.isUseAffectedRows());
+					}
+				}
+			}
+		} catch (SQLException e) {
+			if (Helper.isNotNullViolation(e)) {
+				throw new NotNullViolation("Mandatory field is omitted", e);
+			} else if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Parent record not found", e);
+			} else if (Helper.isUniqueKeyViolation(e)) {
+				throw new UniqueKeyViolation("Record with given unique field already exists", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidateAll(keys);
+		}
+
+		Map<Object, UpsertResult> result = new LinkedHashMap<Object, UpsertResult>();
+		for (int i = 0; i < keys.size(); i++) {
+			result.put(keys.get(i), results[i]);
+		}
+		return result;
+	}
+
 	@Override
 	public int delete(Object key) throws DatabaseOperationException {
+		Session session = null;
 		try {
-			return prepareDeleteStmnt(key).executeUpdate();
+			session = helper.openSession();
+			return prepareDeleteStmnt(session, key).executeUpdate();
 		} catch (SQLException e) {
 			if (Helper.isForeignKeyViolation(e)) {
 				throw new ForeignKeyViolation("Cannot delete, child record found", e);
 			} else {
 				throw new DatabaseOperationException("Error while DB operation", e);
 			}
+		} finally {
+			Helper.close(session);
+			invalidate(key);
+		}
+	}
+
+	@Override
+	public int deleteAll(Collection<?> keys) throws DatabaseOperationException {
+		if (keys.isEmpty()) {
+			return 0;
+		}
+
+		List<?> keyList = new ArrayList<Object>(keys);
+		Session session = null;
+		try {
+			session = helper.openSession();
+			int count = 0;
+			for (int start = 0; start < keyList.size(); start += maxInListSize) {
+				int end = Math.min(start + maxInListSize, keyList.size());
+				int size = inListSize(end - start);
+				PreparedStatement stmnt = session.prepareStatement(metaData.genDeleteSql(size));
+				bindKeyList(stmnt, 1, keyList, start, end, size);
+				count += stmnt.executeUpdate();
+			}
+			return count;
+		} catch (SQLException e) {
+			if (Helper.isForeignKeyViolation(e)) {
+				throw new ForeignKeyViolation("Cannot delete, child record found", e);
+			} else {
+				throw new DatabaseOperationException("Error while DB operation", e);
+			}
+		} finally {
+			Helper.close(session);
+			invalidateAll(keyList);
 		}
 	}
 
 	@Override
 	public T read(Object key) throws NoDataFoundException, DataProcessingException, DatabaseOperationException {
+		if (rowCache == null) {
+			return readAllFields(key);
+		}
+
+		Object id = normalizeKey(key);
+		T row = rowCache.get(id);
+		if (row == null) {
+			long stamp = rowCache.beginLoad();
+			long start = System.nanoTime();
+			row = readAllFields(key);
+			rowCache.recordLoad(System.nanoTime() - start);
+			rowCache.put(id, row, stamp);
+		}
+		return row;
+	}
+
+	/*
+	 * Reads without a projection, which cannot name unknown fields.
+	 */
+	private T readAllFields(Object key) throws NoDataFoundException, DataProcessingException, DatabaseOperationException {
 		try {
-			ResultSet rs = prepareSelectStmnt(key, null).executeQuery();
+			return read(key, null);
+		} catch (InvalidFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the record with the given key, selecting only <code>id</code> and
+	 * the given fields, or every field if <code>fields</code> is
+	 * <code>null</code>.
+	 */
+	public T read(Object key, Collection<String> fields) throws InvalidFieldException, NoDataFoundException, DataProcessingException, DatabaseOperationException {
+		Set<String> projection = (fields == null) ? null : new LinkedHashSet<String>(fields);
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			ResultSet rs = session.executeQuery(prepareSelectStmnt(session, key, null, projection, false, this.streaming));
 
 			if (rs.next()) {
 				ResultSetMetaData rsmd = rs.getMetaData();
@@ -244,13 +1139,230 @@ public class TableModel<T, L> implements Model<T, L> {
 			}
 		} catch (SQLException e) {
 			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+	}
+
+	@Override
+	public Map<Object, T> readMany(Collection<?> keys) throws DataProcessingException, DatabaseOperationException {
+		if (rowCache == null) {
+			return readManyAllFields(keys);
+		}
+
+		Map<Object, T> result = new LinkedHashMap<Object, T>();
+		List<Object> misses = new ArrayList<Object>();
+		for (Object key : keys) {
+			if (!result.containsKey(key)) {
+				T row = rowCache.get(normalizeKey(key));
+				result.put(key, row);
+				if (row == null) {
+					misses.add(key);
+				}
+			}
+		}
+
+		if (!misses.isEmpty()) {
+			long stamp = rowCache.beginLoad();
+			long start = System.nanoTime();
+			Map<Object, T> loaded = readManyAllFields(misses);
+			rowCache.recordLoad(System.nanoTime() - start);
+			for (Map.Entry<Object, T> row : loaded.entrySet()) {
+				result.put(row.getKey(), row.getValue());
+				rowCache.put(normalizeKey(row.getKey()), row.getValue(), stamp);
+			}
+		}
+		return result;
+	}
+
+	private Map<Object, T> readManyAllFields(Collection<?> keys) throws DataProcessingException, DatabaseOperationException {
+		try {
+			return readMany(keys, null);
+		} catch (InvalidFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the records with the given keys like {@link #readMany(Collection)},
+	 * selecting only <code>id</code> and the given fields, or every field if
+	 * <code>fields</code> is <code>null</code>.
+	 */
+	public Map<Object, T> readMany(Collection<?> keys, Collection<String> fields) throws InvalidFieldException, DataProcessingException, DatabaseOperationException {
+		Map<Object, T> result = new LinkedHashMap<Object, T>();
+		Map<Object, List<Object>> keysById = new HashMap<Object, List<Object>>();
+		List<Object> ids = new ArrayList<Object>();
+		for (Object key : keys) {
+			if (result.containsKey(key)) {
+				continue;
+			}
+			result.put(key, null);
+
+			Object id = normalizeKey(key);
+			List<Object> sameId = keysById.get(id);
+			if (sameId == null) {
+				sameId = new ArrayList<Object>(1);
+				keysById.put(id, sameId);
+				ids.add(id);
+			}
+			sameId.add(key);
+		}
+		if (ids.isEmpty()) {
+			return result;
+		}
+
+		SelectQuery query = new SelectQuery(false, null, null);
+		query.setFields((fields == null) ? null : new LinkedHashSet<String>(fields));
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			for (int start = 0; start < ids.size(); start += maxInListSize) {
+				int end = Math.min(start + maxInListSize, ids.size());
+				int size = inListSize(end - start);
+				query.setKeyCount(size);
+				PreparedStatement stmnt = session.prepareStatement(metaData.genSelectSql(query));
+				bindKeyList(stmnt, 1, ids, start, end, size);
+
+				ResultSet rs = session.executeQuery(stmnt);
+				ResultSetMetaData rsmd = rs.getMetaData();
+				RowSchema schema = new RowSchema(rsmd, rsmd.getColumnCount());
+				while (rs.next()) {
+					List<Object> sameId = keysById.get(readKey(rs));
+					T row = processor.readRow(rs, schema);
+					if (sameId != null) {
+						for (Object key : sameId) {
+							result.put(key, row);
+						}
+					}
+				}
+				Helper.close(rs);
+			}
+		} catch (SQLException e) {
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts the rows matching the <code>filter</code> option. Sorting and
+	 * paging options are ignored.
+	 */
+	@Override
+	public long count(Map<String, Object> options) throws DatabaseOperationException {
+		Set<FilterCondition> filter = (options == null) ? null : extractFilterFields(options);
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(metaData.genCountSql(filter));
+			if (filter != null) {
+				int i = 1;
+				for (FilterCondition condition : filter) {
+					i = condition.bind(stmnt, i);
+				}
+			}
+
+			ResultSet rs = session.executeQuery(stmnt);
+			rs.next();
+			return rs.getLong(1);
+		} catch (SQLException e) {
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+	}
+
+	/**
+	 * Aggregates rows in the database and returns a row per group, read by the
+	 * processor. The <code>aggregates</code> option maps result aliases to
+	 * aggregates like <code>SUM(column)</code> or <code>COUNT(*)</code>, with
+	 * COUNT, SUM, MIN, MAX and AVG as functions. Rows matching the
+	 * <code>filter</code> option are grouped by the fields of the
+	 * <code>groupBy</code> list option, if given, and groups may be sorted by
+	 * group-by fields and aliases with the <code>order</code> option.
+	 */
+	public L aggregate(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		List<String> groupBy = extractGroupBy(options);
+		List<Aggregate> aggregates = extractAggregates(options);
+		Set<FilterCondition> filter = extractFilterFields(options);
+
+		List<SortField> order = null;
+		List<String> sortFields = extractSortFields(options);
+		if (sortFields != null) {
+			order = new ArrayList<SortField>();
+			for (String field : sortFields) {
+				SortField sortField = SortField.parse(field);
+				if (sortField == null) {
+					throw new IllegalArgumentException("Cannot sort aggregates by field " + field);
+				}
+				order.add(sortField);
+			}
+		}
+
+		String sql = metaData.genAggregateSql(groupBy, aggregates, filter, order);
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(sql);
+			if (filter != null) {
+				int i = 1;
+				for (FilterCondition condition : filter) {
+					i = condition.bind(stmnt, i);
+				}
+			}
+
+			ResultSet rs = session.executeQuery(stmnt);
+			ResultSetMetaData rsmd = rs.getMetaData();
+			return processor.readAll(rs, new RowSchema(rsmd, rsmd.getColumnCount()));
+		} catch (SQLException e) {
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+	}
+
+	@Override
+	public boolean exists(Object key) throws DatabaseOperationException {
+		Session session = null;
+		try {
+			session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(metaData.genExistsSql());
+			stmnt.setObject(1, key, metaData.getPkType().sqlType);
+			return session.executeQuery(stmnt).next();
+		} catch (SQLException e) {
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
 		}
 	}
 
 	@Override
 	public L list(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		if (listCache == null) {
+			return listUncached(options);
+		}
+
+		L list = listCache.get(options);
+		if (list == null) {
+			long stamp = listCache.beginLoad();
+			long start = System.nanoTime();
+			list = listUncached(options);
+			listCache.recordLoad(System.nanoTime() - start);
+			listCache.put(options, list, stamp);
+		}
+		return list;
+	}
+
+	private L listUncached(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		Session session = null;
 		try {
-			ResultSet rs = prepareSelectStmnt(null, options).executeQuery();
+			session = helper.openSession();
+			ResultSet rs = session.executeQuery(prepareSelectStmnt(session, options));
 
 			ResultSetMetaData rsmd = rs.getMetaData();
 			int numColumns = rsmd.getColumnCount();
@@ -258,13 +1370,148 @@ public class TableModel<T, L> implements Model<T, L> {
 			return processor.readAll(rs, rsmd, numColumns);
 		} catch (SQLException e) {
 			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+	}
+
+	/**
+	 * Returns the rows of a list lazily. With a pooled helper, the rows are
+	 * streamed from the database as well unless the <code>stream</code> option
+	 * says otherwise, and the returned stream holds its own connection until
+	 * closed.
+	 * <p>
+	 * A helper with a single connection shares it between all callers, and a
+	 * streamed result blocks the connection until it is read to the end or
+	 * closed. With such a helper the rows are therefore buffered by the driver
+	 * unless streaming is enabled by {@link #setStreaming(boolean)} or the
+	 * <code>stream</code> option. Either way, the stream holds the session of
+	 * such a helper, and other threads wait for it to be read to the end or
+	 * closed before running their operations.
+	 */
+	@Override
+	public RowStream<T> stream(Map<String, Object> options) throws DatabaseOperationException {
+		Session session = null;
+		try {
+			session = helper.openSession();
+			boolean defaultStreaming = this.streaming || helper.getConnectionPool() != null;
+			ResultSet rs = session.executeQuery(prepareSelectStmnt(session, options, defaultStreaming));
+			return new RowStream<T>(session, rs, processor);
+		} catch (SQLException e) {
+			Helper.close(session);
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} catch (RuntimeException e) {
+			Helper.close(session);
+			throw e;
+		}
+	}
+
+	/**
+	 * Lists one page of rows. Besides the options of {@link #list(Map)}, which
+	 * include <code>limit</code>, <code>offset</code> and <code>after</code>,
+	 * the returned page carries the continuation token to pass as
+	 * <code>after</code> for the next page when the page is full. Keyset paging
+	 * requires the <code>order</code> fields to be plain column names, and
+	 * appends <code>id</code> to them to make the order total; every page,
+	 * including the first, is ordered by these fields. The order fields are
+	 * selected even if left out of the <code>fields</code> option, and may
+	 * hold NULL values, which are ordered first.
+	 */
+	public Page<L> listPage(Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		Long limit = extractLong(options, "limit");
+		List<SortField> keyset = metaData.keysetFields(extractSortFields(options));
+
+		if (options.get("offset") != null && options.get("after") != null) {
+			throw new IllegalArgumentException("\"offset\" cannot be combined with \"after\"");
+		}
+
+		Set<String> fields = extractFields(options);
+		if (fields != null) {
+			for (SortField field : keyset) {
+				fields.add(field.getColumnName());
+			}
+		}
+
+		Session session = null;
+		try {
+			session = helper.openSession();
+			ResultSet rs = session.executeQuery(prepareListStmnt(session, options, fields, true, this.streaming));
+
+			KeysetRecorder recorder = new KeysetRecorder(rs, keyset);
+			ResultSetMetaData rsmd = rs.getMetaData();
+			L items = processor.readAll(recorder, new RowSchema(rsmd, rsmd.getColumnCount()));
+
+			String next = null;
+			if (limit != null && limit > 0 && recorder.rowCount == limit) {
+				next = Page.encodeToken(recorder.lastRow);
+			}
+			return new Page<L>(items, next);
+		} catch (SQLException e) {
+			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
+		}
+	}
+
+	/*
+	 * Remembers the keyset values of the last row a result set was moved to,
+	 * reading them by the column indexes looked up once.
+	 */
+	private static class KeysetRecorder extends DelegatingResultSet {
+		private final int[] columns;
+		private final Object[] lastRow;
+		private long rowCount;
+
+		private KeysetRecorder(ResultSet rs, List<SortField> keyset) throws SQLException {
+			super(rs);
+			this.columns = new int[keyset.size()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = rs.findColumn(keyset.get(i).getColumnName());
+			}
+			this.lastRow = new Object[keyset.size()];
+		}
+
+		@Override
+		public boolean next() throws SQLException {
+			boolean moved = super.next();
+			if (moved) {
+				rowCount++;
+				for (int i = 0; i < columns.length; i++) {
+					lastRow[i] = getObject(columns[i]);
+				}
+			}
+			return moved;
 		}
 	}
 
 	@Override
 	public void list(OutputStream out, Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		if (listCache == null) {
+			listUncached(out, options);
+			return;
+		}
+
+		try {
+			if (listCache.replay(options, out)) {
+				return;
+			}
+		} catch (IOException e) {
+			throw new DataProcessingException("Cannot write into the OutputStream", e);
+		}
+
+		long stamp = listCache.beginLoad();
+		long start = System.nanoTime();
+		ListCache.Recording recording = listCache.record(out);
+		listUncached(recording, options);
+		listCache.recordLoad(System.nanoTime() - start);
+		listCache.put(options, recording, stamp);
+	}
+
+	private void listUncached(OutputStream out, Map<String, Object> options) throws DataProcessingException, DatabaseOperationException {
+		Session session = null;
 		try {
-			ResultSet rs = prepareSelectStmnt(null, options).executeQuery();
+			session = helper.openSession();
+			ResultSet rs = session.executeQuery(prepareSelectStmnt(session, options));
 
 			ResultSetMetaData rsmd = rs.getMetaData();
 			int numColumns = rsmd.getColumnCount();
@@ -272,6 +1519,8 @@ public class TableModel<T, L> implements Model<T, L> {
 			processor.writeRows(out, rs, rsmd, numColumns);
 		} catch (SQLException e) {
 			throw new DatabaseOperationException("Error while DB operation", e);
+		} finally {
+			Helper.close(session);
 		}
 	}
 
@@ -0,0 +1,48 @@
+package com.lemondo.commons.db;
+
+import java.sql.Statement;
+
+/**
+ * Outcome of an upsert of a single record, derived from the row count MySQL
+ * reports for <code>INSERT ... ON DUPLICATE KEY UPDATE</code>.
+ * <p>
+ * By default Connector/J reports found rows, so an existing row left
+ * unchanged counts 1, like an inserted row. Both are then reported as
+ * {@link #UNKNOWN}. Only connections that report affected rows
+ * (<code>useAffectedRows=true</code>, see
+ * {@link Helper#setUseAffectedRows(boolean)}) tell {@link #INSERTED} from
+ * {@link #UNCHANGED}.
+ */
+public enum UpsertResult {
+
+	INSERTED,
+	UPDATED,
+	UNCHANGED,
+	/**
+	 * The driver did not report the row count, e.g.
+	 * {@link Statement#SUCCESS_NO_INFO} for rewritten batches, the count of a
+	 * connection reporting found rows does not tell an inserted row from an
+	 * unchanged one, or the record exists but an update that is not a single
+	 * statement affected no row.
+	 */
+	UNKNOWN;
+
+	/**
+	 * @param affectedRows
+	 *            whether the connection reports affected rather than found
+	 *            rows
+	 */
+	public static UpsertResult fromUpdateCount(int count, boolean affectedRows) {
+		switch (count) {
+		case 0:
+			return affectedRows ? UNCHANGED : UNKNOWN;
+		case 1:
+			return affectedRows ? INSERTED : UNKNOWN;
+		case 2:
+			return UPDATED;
+		default:
+			return UNKNOWN;
+		}
+	}
+
+}
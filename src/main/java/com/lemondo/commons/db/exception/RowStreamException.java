@@ -0,0 +1,27 @@
+package com.lemondo.commons.db.exception;
+
+/**
+ * Unchecked wrapper of a {@link DatabaseOperationException} or
+ * {@link DataProcessingException} raised while iterating a
+ * {@link com.lemondo.commons.db.RowStream}.
+ */
+public class RowStreamException extends RuntimeException {
+	private static final long serialVersionUID = -2740619855167365210L;
+
+	public RowStreamException() {
+		super();
+	}
+
+	public RowStreamException(String arg0) {
+		super(arg0);
+	}
+
+	public RowStreamException(Throwable arg0) {
+		super(arg0);
+	}
+
+	public RowStreamException(String arg0, Throwable arg1) {
+		super(arg0, arg1);
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.lemondo.commons.db.meta;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An aggregate function of a column, selected under an alias by
+ * {@link TableMetaData#genAggregateSql(List, List, java.util.Set, List)}.
+ */
+public class Aggregate {
+
+	public static final List<String> FUNCTIONS = Arrays.asList("COUNT", "SUM", "MIN", "MAX", "AVG");
+
+	private static final Pattern ALIAS = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private static final Pattern EXPRESSION = Pattern.compile("\\s*([A-Za-z]+)\\s*\\(\\s*(\\*|`?[A-Za-z0-9_]+`?)\\s*\\)\\s*");
+
+	private final String function;
+	private final String columnName;
+	private final String alias;
+
+	/**
+	 * @param columnName
+	 *            the aggregated column, or <code>null</code> to count rows
+	 */
+	public Aggregate(String function, String columnName, String alias) {
+		String upperFunction = function.toUpperCase(Locale.ROOT);
+		if (!FUNCTIONS.contains(upperFunction)) {
+			throw new IllegalArgumentException("Unsupported aggregate function " + function);
+		} else if (columnName == null && !"COUNT".equals(upperFunction)) {
+			throw new IllegalArgumentException(function + " requires a column");
+		} else if (!ALIAS.matcher(alias).matches()) {
+			throw new IllegalArgumentException("Invalid aggregate alias " + alias);
+		}
+		this.function = upperFunction;
+		this.columnName = columnName;
+		this.alias = alias;
+	}
+
+	/**
+	 * Parses aggregates in the form accepted by the <code>aggregates</code>
+	 * option, <code>FUNCTION(column)</code> or <code>COUNT(*)</code>, with the
+	 * column name optionally quoted in backticks.
+	 */
+	public static Aggregate parse(String alias, String expression) {
+		Matcher matcher = EXPRESSION.matcher(expression);
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Invalid aggregate " + expression);
+		}
+
+		String column = matcher.group(2);
+		if ("*".equals(column)) {
+			column = null;
+		} else if (column.startsWith("`") && column.endsWith("`") && column.length() > 2) {
+			column = column.substring(1, column.length() - 1);
+		} else if (column.indexOf('`') >= 0) {
+			throw new IllegalArgumentException("Invalid aggregate " + expression);
+		}
+
+		return new Aggregate(matcher.group(1), column, alias);
+	}
+
+	public String getFunction() {
+		return function;
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+
+	public String getAlias() {
+		return alias;
+	}
+
+}
@@ -1,18 +1,134 @@
 package com.lemondo.commons.db.meta;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A condition of the WHERE clause generated by {@link TableMetaData}. Besides
+ * plain comparisons, conditions can be ranges, IN-lists, prefix matches, null
+ * checks and OR groups of conditions. Values are always bound as parameters.
+ */
 public class FilterCondition {
+
+	public static final String BETWEEN = "BETWEEN";
+	public static final String IN = "IN";
+	public static final String LIKE = "LIKE";
+	public static final String IS_NULL = "IS NULL";
+	public static final String IS_NOT_NULL = "IS NOT NULL";
+	public static final String OR = "OR";
+
+	/**
+	 * Escape character of the patterns of prefix conditions.
+	 */
+	public static final char LIKE_ESCAPE = '!';
+
+	private static final List<String> COMPARISONS = Arrays.asList("=", "<>", "!=", "<", "<=", ">", ">=");
+
 	private final String columnName;
 	private final String operator;
 	private final Object value;
 	private final int type;
 
+	private final Object[] params;
+	private final List<Collection<FilterCondition>> alternatives;
+
+	/**
+	 * Creates a comparison of a column with a value. The operator must be one
+	 * of <code>=</code>, <code>&lt;&gt;</code>, <code>!=</code>,
+	 * <code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code> or
+	 * <code>&gt;=</code>.
+	 */
 	public FilterCondition(String columnName, String operator, Object value, int type) {
+		this(columnName, operator, value, type, new Object[] { value }, null);
+		if (!COMPARISONS.contains(operator)) {
+			throw new IllegalArgumentException("Unsupported filter operator " + operator);
+		}
+	}
+
+	private FilterCondition(String columnName, String operator, Object value, int type, Object[] params, List<Collection<FilterCondition>> alternatives) {
 		this.columnName = columnName;
 		this.operator = operator;
 		this.value = value;
 		this.type = type;
+		this.params = params;
+		this.alternatives = alternatives;
+	}
+
+	public static FilterCondition between(String columnName, Object from, Object to, int type) {
+		return new FilterCondition(columnName, BETWEEN, Arrays.asList(from, to), type, new Object[] { from, to }, null);
+	}
+
+	/**
+	 * Creates an IN-list condition. The number of placeholders is rounded up to
+	 * a power of two by repeating the last value, so that only a handful of
+	 * distinct statements get prepared for lists of any length. An empty list
+	 * matches no rows.
+	 */
+	public static FilterCondition in(String columnName, Collection<?> values, int type) {
+		Object[] params;
+		if (values.isEmpty()) {
+			params = new Object[0];
+		} else {
+			int size = Integer.highestOneBit(values.size());
+			if (size < values.size()) {
+				size <<= 1;
+			}
+			params = values.toArray(new Object[size]);
+			Arrays.fill(params, values.size(), size, params[values.size() - 1]);
+		}
+		return new FilterCondition(columnName, IN, new ArrayList<Object>(values), type, params, null);
+	}
+
+	/**
+	 * Creates a condition matching the values starting with the given prefix.
+	 * Wildcards in the prefix are matched literally.
+	 */
+	public static FilterCondition startsWith(String columnName, String prefix, int type) {
+		StringBuilder pattern = new StringBuilder(prefix.length() + 2);
+		for (int i = 0; i < prefix.length(); i++) {
+			char c = prefix.charAt(i);
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+				pattern.append(LIKE_ESCAPE);
+			}
+			pattern.append(c);
+		}
+		pattern.append('%');
+		return new FilterCondition(columnName, LIKE, prefix, type, new Object[] { pattern.toString() }, null);
 	}
 
+	public static FilterCondition isNull(String columnName) {
+		return new FilterCondition(columnName, IS_NULL, null, Types.NULL, new Object[0], null);
+	}
+
+	public static FilterCondition isNotNull(String columnName) {
+		return new FilterCondition(columnName, IS_NOT_NULL, null, Types.NULL, new Object[0], null);
+	}
+
+	/**
+	 * Creates a condition matching the rows that match all conditions of at
+	 * least one of the alternatives. An empty alternative would match every
+	 * row and is rejected.
+	 */
+	public static FilterCondition or(List<? extends Collection<FilterCondition>> alternatives) {
+		List<Collection<FilterCondition>> copy = new ArrayList<Collection<FilterCondition>>(alternatives.size());
+		for (Collection<FilterCondition> alternative : alternatives) {
+			if (alternative.isEmpty()) {
+				throw new IllegalArgumentException("Alternatives of an OR condition must not be empty");
+			}
+			copy.add(Collections.unmodifiableList(new ArrayList<FilterCondition>(alternative)));
+		}
+		return new FilterCondition(null, OR, null, Types.NULL, null, Collections.unmodifiableList(copy));
+	}
+
+	/**
+	 * Returns the name of the column, or <code>null</code> for OR groups.
+	 */
 	public String getColumnName() {
 		return columnName;
 	}
@@ -29,4 +145,59 @@ public class FilterCondition {
 		return type;
 	}
 
+	/**
+	 * Returns the alternatives of an OR group, or <code>null</code> for other
+	 * conditions.
+	 */
+	public List<Collection<FilterCondition>> getAlternatives() {
+		return alternatives;
+	}
+
+	/**
+	 * Returns the number of parameters of the condition itself, not counting
+	 * those of OR alternatives.
+	 */
+	public int getParameterCount() {
+		return (params == null) ? 0 : params.length;
+	}
+
+	/**
+	 * Binds the parameters of the condition starting at <code>index</code>, in
+	 * the order {@link TableMetaData} renders them, and returns the index of
+	 * the next parameter.
+	 */
+	public int bind(PreparedStatement stmnt, int index) throws SQLException {
+		if (alternatives != null) {
+			for (Collection<FilterCondition> alternative : alternatives) {
+				for (FilterCondition condition : alternative) {
+					index = condition.bind(stmnt, index);
+				}
+			}
+		} else {
+			for (Object param : params) {
+				stmnt.setObject(index++, param, type);
+			}
+		}
+		return index;
+	}
+
+	/*
+	 * Everything the rendered SQL depends on.
+	 */
+	void appendShape(List<Object> shape) {
+		shape.add(columnName);
+		shape.add(operator);
+		if (alternatives != null) {
+			shape.add(alternatives.size());
+			for (Collection<FilterCondition> alternative : alternatives) {
+				shape.add(alternative.size());
+				for (FilterCondition condition : alternative) {
+					condition.appendShape(shape);
+				}
+			}
+		} else {
+			shape.add(params.length);
+		}
+	}
+
 }
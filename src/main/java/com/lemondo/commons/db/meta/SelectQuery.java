@@ -0,0 +1,150 @@
+package com.lemondo.commons.db.meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shape of a SELECT statement generated by {@link TableMetaData}. Parameters
+ * of the generated statement are bound in this order: the keys (unless all
+ * rows are selected), the filter values, the keyset values, the limit and the
+ * offset.
+ */
+public class SelectQuery {
+
+	private boolean allRows = true;
+	private int keyCount = 1;
+	private Set<String> fields;
+	private Set<FilterCondition> filter;
+	private List<String> sortFields;
+	private boolean seek;
+	private boolean keysetOrder;
+	private boolean limited;
+	private boolean offset;
+
+	public SelectQuery() {
+		super();
+	}
+
+	public SelectQuery(boolean allRows, Set<FilterCondition> filter, List<String> sortFields) {
+		super();
+		this.allRows = allRows;
+		this.filter = filter;
+		this.sortFields = sortFields;
+	}
+
+	public boolean isAllRows() {
+		return allRows;
+	}
+
+	public void setAllRows(boolean allRows) {
+		this.allRows = allRows;
+	}
+
+	/**
+	 * Number of keys the selected rows are matched against unless all rows are
+	 * selected. More than one key is matched with an IN-list.
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	public void setKeyCount(int keyCount) {
+		if (keyCount < 1) {
+			throw new IllegalArgumentException("At least one key is required");
+		}
+		this.keyCount = keyCount;
+	}
+
+	/**
+	 * Columns to select besides <code>id</code>, or <code>null</code> to select
+	 * every column.
+	 */
+	public Set<String> getFields() {
+		return fields;
+	}
+
+	public void setFields(Set<String> fields) {
+		this.fields = fields;
+	}
+
+	public Set<FilterCondition> getFilter() {
+		return filter;
+	}
+
+	public void setFilter(Set<FilterCondition> filter) {
+		this.filter = filter;
+	}
+
+	public List<String> getSortFields() {
+		return sortFields;
+	}
+
+	public void setSortFields(List<String> sortFields) {
+		this.sortFields = sortFields;
+	}
+
+	/**
+	 * Whether rows are selected after a keyset position. The keyset consists of
+	 * the sort fields followed by <code>id</code>, see
+	 * {@link TableMetaData#keysetFields(List)}.
+	 */
+	public boolean isSeek() {
+		return seek;
+	}
+
+	public void setSeek(boolean seek) {
+		this.seek = seek;
+	}
+
+	/**
+	 * Whether rows are ordered by the full keyset even without a keyset
+	 * position, so that the first page of a keyset-paged list has the same
+	 * total order as the following ones. Implied by {@link #isSeek()}.
+	 */
+	public boolean isKeysetOrder() {
+		return keysetOrder || seek;
+	}
+
+	public void setKeysetOrder(boolean keysetOrder) {
+		this.keysetOrder = keysetOrder;
+	}
+
+	public boolean isLimited() {
+		return limited;
+	}
+
+	public void setLimited(boolean limited) {
+		this.limited = limited;
+	}
+
+	public boolean isOffset() {
+		return offset;
+	}
+
+	public void setOffset(boolean offset) {
+		this.offset = offset;
+	}
+
+	Object shape() {
+		List<Object> shape = new ArrayList<Object>();
+		shape.add(allRows);
+		shape.add(allRows ? 0 : keyCount);
+		shape.add(seek);
+		shape.add(isKeysetOrder());
+		shape.add(limited);
+		shape.add(offset);
+		if (filter != null) {
+			for (FilterCondition condition : filter) {
+				condition.appendShape(shape);
+			}
+		}
+		// Separates the filter part from the sort part of the shape
+		shape.add(null);
+		if (allRows && sortFields != null) {
+			shape.addAll(sortFields);
+		}
+		return shape;
+	}
+
+}
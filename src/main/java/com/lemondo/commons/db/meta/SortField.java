@@ -0,0 +1,56 @@
+package com.lemondo.commons.db.meta;
+
+/**
+ * A column of an ORDER BY clause together with its direction.
+ */
+public class SortField {
+
+	private final String columnName;
+	private final boolean descending;
+
+	public SortField(String columnName, boolean descending) {
+		this.columnName = columnName;
+		this.descending = descending;
+	}
+
+	/**
+	 * Parses sort fields in the form accepted by the <code>order</code> list
+	 * option, <code>column [ASC|DESC]</code>, with the column name optionally
+	 * quoted in backticks. Returns <code>null</code> if the field is not in
+	 * that form.
+	 */
+	public static SortField parse(String field) {
+		String[] parts = field.trim().split("\\s+");
+		if (parts.length == 0 || parts.length > 2) {
+			return null;
+		}
+
+		boolean descending = false;
+		if (parts.length == 2) {
+			if ("DESC".equalsIgnoreCase(parts[1])) {
+				descending = true;
+			} else if (!"ASC".equalsIgnoreCase(parts[1])) {
+				return null;
+			}
+		}
+
+		String column = parts[0];
+		if (column.length() > 2 && column.startsWith("`") && column.endsWith("`")) {
+			column = column.substring(1, column.length() - 1);
+		}
+		if (column.isEmpty() || column.indexOf('`') >= 0) {
+			return null;
+		}
+
+		return new SortField(column, descending);
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+}
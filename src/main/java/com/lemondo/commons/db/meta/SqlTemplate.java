@@ -0,0 +1,40 @@
+package com.lemondo.commons.db.meta;
+
+/**
+ * Immutable SQL string generated by {@link TableMetaData} together with the
+ * columns whose values must be bound, in parameter order.
+ */
+public class SqlTemplate {
+
+	private final String sql;
+	private final String[] columns;
+	private final int[] types;
+
+	public SqlTemplate(String sql, String[] columns, int[] types) {
+		this.sql = sql;
+		this.columns = columns.clone();
+		this.types = types.clone();
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public String getColumn(int i) {
+		return columns[i];
+	}
+
+	public int getType(int i) {
+		return types[i];
+	}
+
+	@Override
+	public String toString() {
+		return sql;
+	}
+
+}
@@ -1,37 +1,229 @@
 package com.lemondo.commons.db.meta;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.lemondo.commons.db.PrimarykeyType;
 import com.lemondo.commons.db.exception.InvalidFieldException;
 
 public class TableMetaData {
 
+	public static final int DEFAULT_SQL_CACHE_SIZE = 256;
+
+	private static final int INSERT = 1;
+	private static final int INSERT_AUTO_KEY = 2;
+	private static final int UPDATE = 3;
+	private static final int SELECT_ONE = 4;
+	private static final int SELECT_ALL = 5;
+	private static final int DELETE_IN = 6;
+	private static final int UPSERT = 7;
+	private static final int COUNT = 8;
+	private static final int AGGREGATE = 9;
+
+	private static final String[] NO_COLUMNS = new String[0];
+	private static final int[] NO_TYPES = new int[0];
+
 	private String tableName;
 	private Map<String, Integer> columnDef;
 	private PrimarykeyType pkType;
 	private boolean deactivatedFlag;
 
+	/*
+	 * Canonical column order, taken from the iteration order of the column
+	 * definition given to the constructor. Column sets are keyed by a bitmask
+	 * over these ordinals.
+	 */
+	private final String[] columnNames;
+	private final int[] columnTypes;
+	private final Map<String, Integer> columnOrdinals;
+	private final int maskWords;
+
+	private final String deleteSql;
+	private final String existsSql;
+
+	private final Map<ShapeKey, SqlTemplate> sqlCache;
+	private volatile int sqlCacheSize = DEFAULT_SQL_CACHE_SIZE;
+	private final AtomicLong sqlCacheHits = new AtomicLong();
+	private final AtomicLong sqlCacheMisses = new AtomicLong();
+
 	public TableMetaData(String tableName, Map<String, Integer> columnDef, PrimarykeyType pkType, boolean deactivatedFlag) {
 		super();
 		this.tableName = tableName;
 		this.columnDef = new HashMap<String, Integer>(columnDef);
 		this.pkType = pkType;
 		this.deactivatedFlag = deactivatedFlag;
+
+		this.columnNames = new String[columnDef.size()];
+		this.columnTypes = new int[columnDef.size()];
+		this.columnOrdinals = new HashMap<String, Integer>();
+		int i = 0;
+		for (Map.Entry<String, Integer> column : columnDef.entrySet()) {
+			this.columnNames[i] = column.getKey();
+			this.columnTypes[i] = column.getValue();
+			this.columnOrdinals.put(column.getKey(), i);
+			i++;
+		}
+		this.maskWords = (columnNames.length + 63) >>> 6;
+
+		if (deactivatedFlag) {
+			this.deleteSql = "UPDATE " + tableName + " SET `deactivated`=1 WHERE `deactivated`=0 AND `id`=?";
+		} else {
+			this.deleteSql = "DELETE FROM " + tableName + " WHERE `id`=?";
+		}
+		this.existsSql = "SELECT 1 FROM " + tableName + " WHERE " + (deactivatedFlag ? "`deactivated`=0 AND " : "") + "`id`=? LIMIT 1";
+
+		this.sqlCache = new LinkedHashMap<ShapeKey, SqlTemplate>(16, 0.75f, true) {
+			private static final long serialVersionUID = -4316893458236021447L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ShapeKey, SqlTemplate> eldest) {
+				return size() > sqlCacheSize;
+			}
+		};
 	}
 
 	public Map<String, Integer> getColumnDef() {
 		return new HashMap<String, Integer>(this.columnDef);
 	}
 
+	public boolean containsColumn(String column) {
+		return columnOrdinals.containsKey(column);
+	}
+
+	public int getColumnType(String column) throws InvalidFieldException {
+		Integer ordinal = columnOrdinals.get(column);
+		if (ordinal == null) {
+			throw new InvalidFieldException("Table `" + tableName + "` does not contain field `" + column + "`");
+		}
+		return columnTypes[ordinal];
+	}
+
 	public PrimarykeyType getPkType() {
 		return this.pkType;
 	}
 
-	public String genInsertSql(Set<String> columns, boolean autoGeneratedKey) throws InvalidFieldException {
+	public int getSqlCacheSize() {
+		return sqlCacheSize;
+	}
+
+	public void setSqlCacheSize(int sqlCacheSize) {
+		if (sqlCacheSize < 0) {
+			throw new IllegalArgumentException("SQL cache size must not be negative");
+		}
+		this.sqlCacheSize = sqlCacheSize;
+		synchronized (sqlCache) {
+			Map<ShapeKey, SqlTemplate> retained = new LinkedHashMap<ShapeKey, SqlTemplate>(sqlCache);
+			sqlCache.clear();
+			sqlCache.putAll(retained);
+		}
+	}
+
+	public long getSqlCacheHits() {
+		return sqlCacheHits.get();
+	}
+
+	public long getSqlCacheMisses() {
+		return sqlCacheMisses.get();
+	}
+
+	public void clearSqlCache() {
+		synchronized (sqlCache) {
+			sqlCache.clear();
+		}
+	}
+
+	private SqlTemplate cached(ShapeKey key) {
+		SqlTemplate template;
+		synchronized (sqlCache) {
+			template = sqlCache.get(key);
+		}
+		if (template != null) {
+			sqlCacheHits.incrementAndGet();
+		} else {
+			sqlCacheMisses.incrementAndGet();
+		}
+		return template;
+	}
+
+	private SqlTemplate cache(ShapeKey key, SqlTemplate template) {
+		synchronized (sqlCache) {
+			sqlCache.put(key, template);
+		}
+		return template;
+	}
+
+	private long[] columnMask(Set<String> columns) throws InvalidFieldException {
+		long[] mask = new long[maskWords];
+		for (String col : columns) {
+			Integer ordinal = columnOrdinals.get(col);
+			if (ordinal == null) {
+				throw new InvalidFieldException("Table `" + tableName + "` does not contain field `" + col + "`");
+			}
+			mask[ordinal >>> 6] |= 1L << ordinal;
+		}
+		return mask;
+	}
+
+	private static boolean isSet(long[] mask, int ordinal) {
+		return (mask[ordinal >>> 6] & (1L << ordinal)) != 0;
+	}
+
+	private static int countColumns(long[] mask) {
+		int count = 0;
+		for (long word : mask) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private SqlTemplate newTemplate(String sql, long[] mask) {
+		String[] columns = new String[countColumns(mask)];
+		int[] types = new int[columns.length];
+		int j = 0;
+		for (int i = 0; i < columnNames.length; i++) {
+			if (isSet(mask, i)) {
+				columns[j] = columnNames[i];
+				types[j] = columnTypes[i];
+				j++;
+			}
+		}
+		return new SqlTemplate(sql, columns, types);
+	}
+
+	/**
+	 * Returns the INSERT statement for the given column set. The columns of the
+	 * returned template are in the order their values must be bound, following
+	 * the <code>id</code> parameter when the key is not auto generated.
+	 */
+	public SqlTemplate insertTemplate(Set<String> columns, boolean autoGeneratedKey) throws InvalidFieldException {
+		return insertTemplate(columns, autoGeneratedKey, 1);
+	}
+
+	/**
+	 * Returns a multi-row INSERT statement with <code>rowCount</code> value
+	 * lists. The columns of the returned template describe a single row and are
+	 * bound once per row, in row order.
+	 */
+	public SqlTemplate insertTemplate(Set<String> columns, boolean autoGeneratedKey, int rowCount) throws InvalidFieldException {
+		if (rowCount < 1) {
+			throw new IllegalArgumentException("At least one row is required");
+		}
+
+		ShapeKey key = new ShapeKey(autoGeneratedKey ? INSERT_AUTO_KEY : INSERT, columnMask(columns), rowCount);
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template;
+		}
+
 		StringBuilder insertClause = new StringBuilder("INSERT INTO ").append(tableName);
 		StringBuilder valuesClause = new StringBuilder(" VALUES");
 
@@ -44,59 +236,188 @@ public class TableMetaData {
 			prefix = " (";
 		}
 
-		for (String col : columns) {
-			if (columnDef.containsKey(col)) {
-				insertClause.append(prefix).append("`").append(col).append("`");
+		for (int i = 0; i < columnNames.length; i++) {
+			if (isSet(key.mask, i)) {
+				insertClause.append(prefix).append("`").append(columnNames[i]).append("`");
 				valuesClause.append(prefix).append("?");
 				prefix = ",";
-			} else {
-				throw new InvalidFieldException("Table `" + tableName + "` does not contain field `" + col + "`");
 			}
 		}
+		valuesClause.append(")");
 
-		return insertClause.append(")").append(valuesClause).append(")").toString();
+		if (rowCount > 1) {
+			String rowValues = valuesClause.substring(" VALUES ".length());
+			for (int i = 1; i < rowCount; i++) {
+				valuesClause.append(",").append(rowValues);
+			}
+		}
+
+		String sql = insertClause.append(")").append(valuesClause).toString();
+		return cache(key, newTemplate(sql, key.mask));
 	}
 
-	public String genUpdateSql(Set<String> columns) throws InvalidFieldException {
+	public String genInsertSql(Set<String> columns, boolean autoGeneratedKey) throws InvalidFieldException {
+		return insertTemplate(columns, autoGeneratedKey).getSql();
+	}
+
+	/**
+	 * Returns the UPDATE statement for the given column set. The columns of the
+	 * returned template are bound first, followed by the <code>id</code>
+	 * parameter.
+	 */
+	public SqlTemplate updateTemplate(Set<String> columns) throws InvalidFieldException {
+		ShapeKey key = new ShapeKey(UPDATE, columnMask(columns), null);
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template;
+		}
+
 		StringBuilder updateSql = new StringBuilder("UPDATE ").append(tableName).append(" SET");
 
 		String prefix = " `";
-		for (String col : columns) {
-			if (columnDef.containsKey(col)) {
-				updateSql.append(prefix).append(col).append("`=?");
+		for (int i = 0; i < columnNames.length; i++) {
+			if (isSet(key.mask, i)) {
+				updateSql.append(prefix).append(columnNames[i]).append("`=?");
 				prefix = ",`";
-			} else {
-				throw new InvalidFieldException("Table `" + tableName + "` does not contain field `" + col + "`");
 			}
 		}
 
-		return updateSql.append(" WHERE `id`=?").append(deactivatedFlag ? " AND `deactivated`=0" : "").toString();
+		String sql = updateSql.append(" WHERE `id`=?").append(deactivatedFlag ? " AND `deactivated`=0" : "").toString();
+		return cache(key, newTemplate(sql, key.mask));
+	}
+
+	public String genUpdateSql(Set<String> columns) throws InvalidFieldException {
+		return updateTemplate(columns).getSql();
+	}
+
+	/**
+	 * Returns the MySQL <code>INSERT ... ON DUPLICATE KEY UPDATE</code>
+	 * statement for the given column set, updating the given columns of an
+	 * existing row. A deactivated row with the same key is activated again.
+	 * The <code>id</code> parameter is bound first, followed by the columns of
+	 * the returned template.
+	 */
+	public SqlTemplate upsertTemplate(Set<String> columns) throws InvalidFieldException {
+		ShapeKey key = new ShapeKey(UPSERT, columnMask(columns), null);
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template;
+		}
+
+		StringBuilder insertClause = new StringBuilder("INSERT INTO ").append(tableName).append(" (`id`");
+		StringBuilder valuesClause = new StringBuilder(" VALUES (?");
+		StringBuilder updateClause = new StringBuilder(" ON DUPLICATE KEY UPDATE ");
+
+		String prefix = "";
+		for (int i = 0; i < columnNames.length; i++) {
+			if (isSet(key.mask, i)) {
+				insertClause.append(",`").append(columnNames[i]).append("`");
+				valuesClause.append(",?");
+				updateClause.append(prefix).append("`").append(columnNames[i]).append("`=VALUES(`").append(columnNames[i]).append("`)");
+				prefix = ",";
+			}
+		}
+		if (deactivatedFlag) {
+			updateClause.append(prefix).append("`deactivated`=0");
+		} else if (prefix.isEmpty()) {
+			updateClause.append("`id`=`id`");
+		}
+
+		String sql = insertClause.append(")").append(valuesClause).append(")").append(updateClause).toString();
+		return cache(key, newTemplate(sql, key.mask));
+	}
+
+	public String genUpsertSql(Set<String> columns) throws InvalidFieldException {
+		return upsertTemplate(columns).getSql();
 	}
 
 	public String genDeleteSql() {
+		return deleteSql;
+	}
+
+	/**
+	 * Generates a DELETE (or deactivating UPDATE) statement matching
+	 * <code>keyCount</code> keys with an IN-list.
+	 */
+	public String genDeleteSql(int keyCount) {
+		if (keyCount < 1) {
+			throw new IllegalArgumentException("At least one key is required");
+		}
+
+		ShapeKey key = new ShapeKey(DELETE_IN, null, keyCount);
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template.getSql();
+		}
+
 		StringBuilder deleteSql = new StringBuilder();
 
 		if (deactivatedFlag) {
-			deleteSql.append("UPDATE ").append(tableName).append(" SET `deactivated`=1 WHERE `deactivated`=0 AND `id`=?");
+			deleteSql.append("UPDATE ").append(tableName).append(" SET `deactivated`=1 WHERE `deactivated`=0 AND `id` IN ");
 		} else {
-			deleteSql.append("DELETE FROM ").append(tableName).append(" WHERE `id`=?");
+			deleteSql.append("DELETE FROM ").append(tableName).append(" WHERE `id` IN ");
 		}
+		appendPlaceholderList(deleteSql, keyCount);
 
-		return deleteSql.toString();
+		return cache(key, new SqlTemplate(deleteSql.toString(), NO_COLUMNS, NO_TYPES)).getSql();
 	}
 
-	private String genFilterString(Set<FilterCondition> filter) {
+	static StringBuilder appendPlaceholderList(StringBuilder sql, int count) {
+		sql.append("(?");
+		for (int i = 1; i < count; i++) {
+			sql.append(",?");
+		}
+		return sql.append(")");
+	}
+
+	private String genFilterString(Collection<FilterCondition> filter) {
 		StringBuilder result = new StringBuilder();
 
 		String prefix = "";
 		for (FilterCondition condition : filter) {
-			result.append(prefix).append("`").append(condition.getColumnName()).append("`").append(condition.getOperator()).append("?");
+			result.append(prefix);
+			appendCondition(result, condition);
 			prefix = " AND ";
 		}
 
 		return result.toString();
 	}
 
+	private void appendCondition(StringBuilder result, FilterCondition condition) {
+		String operator = condition.getOperator();
+
+		if (FilterCondition.OR.equals(operator)) {
+			result.append("(");
+			String prefix = "";
+			for (Collection<FilterCondition> alternative : condition.getAlternatives()) {
+				result.append(prefix).append("(").append(genFilterString(alternative)).append(")");
+				prefix = " OR ";
+			}
+			if (condition.getAlternatives().isEmpty()) {
+				result.append("0=1");
+			}
+			result.append(")");
+			return;
+		}
+
+		String column = "`" + condition.getColumnName() + "`";
+		if (FilterCondition.IN.equals(operator)) {
+			if (condition.getParameterCount() == 0) {
+				result.append("0=1");
+			} else {
+				appendPlaceholderList(result.append(column).append(" IN "), condition.getParameterCount());
+			}
+		} else if (FilterCondition.BETWEEN.equals(operator)) {
+			result.append(column).append(" BETWEEN ? AND ?");
+		} else if (FilterCondition.LIKE.equals(operator)) {
+			result.append(column).append(" LIKE ? ESCAPE '").append(FilterCondition.LIKE_ESCAPE).append("'");
+		} else if (FilterCondition.IS_NULL.equals(operator) || FilterCondition.IS_NOT_NULL.equals(operator)) {
+			result.append(column).append(" ").append(operator);
+		} else {
+			result.append(column).append(operator).append("?");
+		}
+	}
+
 	private String genOrderByString(List<String> sortFields) {
 		if (sortFields == null) {
 			return null;
@@ -113,34 +434,371 @@ public class TableMetaData {
 		}
 	}
 
-	public String genSelectSql(boolean allRows, Set<FilterCondition> filter, List<String> sortFields) {
-		StringBuilder selectSql = new StringBuilder("SELECT `id`");
+	/**
+	 * Returns the fields a keyset position consists of: the sort fields
+	 * followed by <code>id</code> as a tie-breaker unless already sorted by it.
+	 * Every sort field must be a plain column name with an optional direction.
+	 */
+	public List<SortField> keysetFields(List<String> sortFields) {
+		List<SortField> result = new ArrayList<SortField>();
+		boolean hasId = false;
+		if (sortFields != null) {
+			for (String field : sortFields) {
+				SortField sortField = SortField.parse(field);
+				if (sortField == null || !("id".equals(sortField.getColumnName()) || columnOrdinals.containsKey(sortField.getColumnName()))) {
+					throw new IllegalArgumentException("Cannot page by sort field " + field);
+				}
+				hasId = hasId || "id".equals(sortField.getColumnName());
+				result.add(sortField);
+			}
+		}
+		if (!hasId) {
+			result.add(new SortField("id", false));
+		}
+		return result;
+	}
 
-		Set<String> columns = columnDef.keySet();
-		for (String column : columns) {
-			selectSql.append(",`").append(column).append("`");
+	/**
+	 * Returns the SQL type of a keyset field.
+	 */
+	public int getKeysetType(SortField field) {
+		if ("id".equals(field.getColumnName())) {
+			return pkType.sqlType;
 		}
+		Integer ordinal = columnOrdinals.get(field.getColumnName());
+		if (ordinal == null) {
+			throw new IllegalArgumentException("Cannot page by sort field " + field.getColumnName());
+		}
+		return columnTypes[ordinal];
+	}
 
-		selectSql.append(" FROM ").append(tableName);
+	/*
+	 * Renders (a>?) OR (a<=>? AND b>?) OR ..., flipping the comparison for
+	 * descending fields. Columns other than id may be NULL, which MySQL sorts
+	 * before any value, so their comparisons also match the non-NULL values
+	 * following a NULL position, or the NULLs following a value in descending
+	 * order, and their equality is NULL-safe. See bindSeek for the order of
+	 * the parameters.
+	 */
+	private String genSeekString(List<SortField> keyset) {
+		StringBuilder result = new StringBuilder("(");
+
+		for (int i = 0; i < keyset.size(); i++) {
+			result.append(i == 0 ? "(" : " OR (");
+			for (int j = 0; j < i; j++) {
+				String column = keyset.get(j).getColumnName();
+				result.append("`").append(column).append("id".equals(column) ? "`=? AND " : "`<=>? AND ");
+			}
+			SortField field = keyset.get(i);
+			String column = field.getColumnName();
+			if ("id".equals(column)) {
+				result.append("`id`").append(field.isDescending() ? "<?" : ">?");
+			} else if (field.isDescending()) {
+				result.append("(`").append(column).append("`<? OR (? IS NOT NULL AND `").append(column).append("` IS NULL))");
+			} else {
+				result.append("(`").append(column).append("`>? OR (? IS NULL AND `").append(column).append("` IS NOT NULL))");
+			}
+			result.append(")");
+		}
+
+		return result.append(")").toString();
+	}
+
+	/**
+	 * Binds the keyset position of a seek query generated for the keyset
+	 * starting at the given parameter index, and returns the index of the next
+	 * parameter. The position holds a value per keyset field, any of which but
+	 * <code>id</code> may be <code>null</code>.
+	 */
+	public int bindSeek(PreparedStatement stmnt, int index, List<SortField> keyset, List<?> position) throws SQLException {
+		if (position.size() != keyset.size()) {
+			throw new IllegalArgumentException("Continuation token does not match the sort order");
+		}
+		for (int i = 0; i < keyset.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				stmnt.setObject(index++, position.get(j), getKeysetType(keyset.get(j)));
+			}
+			SortField field = keyset.get(i);
+			stmnt.setObject(index++, position.get(i), getKeysetType(field));
+			if (!"id".equals(field.getColumnName())) {
+				stmnt.setObject(index++, position.get(i), getKeysetType(field));
+			}
+		}
+		return index;
+	}
+
+	private String genKeysetOrderByString(List<SortField> keyset) {
+		StringBuilder result = new StringBuilder();
+
+		String prefix = " ORDER BY `";
+		for (SortField field : keyset) {
+			result.append(prefix).append(field.getColumnName()).append(field.isDescending() ? "` DESC" : "`");
+			prefix = ",`";
+		}
+
+		return result.toString();
+	}
+
+	/*
+	 * Appends the conditions on the deactivated flag, the keys and the filter
+	 * of the query, and returns the prefix of a further condition.
+	 */
+	private String appendWhereClause(StringBuilder sql, SelectQuery query) {
+		Set<FilterCondition> filter = query.getFilter();
 
 		String filterPrefix = " WHERE ";
 		if (deactivatedFlag) {
-			selectSql.append(filterPrefix).append("`deactivated`=0");
+			sql.append(filterPrefix).append("`deactivated`=0");
+			filterPrefix = " AND ";
+		}
+		if (!query.isAllRows() && query.getKeyCount() > 1) {
+			appendPlaceholderList(sql.append(filterPrefix).append("`id` IN "), query.getKeyCount());
+			filterPrefix = " AND ";
+		} else if (!query.isAllRows()) {
+			sql.append(filterPrefix).append("`id`=?");
 			filterPrefix = " AND ";
 		}
-		if (!allRows) {
-			selectSql.append(filterPrefix).append("`id`=?");
+		if (filter != null && !filter.isEmpty()) {
+			sql.append(filterPrefix).append(genFilterString(filter));
 			filterPrefix = " AND ";
 		}
-		if (filter != null) {
-			selectSql.append(filterPrefix).append(genFilterString(filter));
+		return filterPrefix;
+	}
+
+	/**
+	 * Generates a <code>SELECT COUNT(*)</code> statement counting the rows
+	 * matching the filter. Filter parameters are bound as for
+	 * {@link #genSelectSql(SelectQuery)}.
+	 */
+	public String genCountSql(Set<FilterCondition> filter) {
+		SelectQuery query = new SelectQuery(true, filter, null);
+		ShapeKey key = new ShapeKey(COUNT, null, query.shape());
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template.getSql();
+		}
+
+		StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM ").append(tableName);
+		appendWhereClause(countSql, query);
+
+		return cache(key, new SqlTemplate(countSql.toString(), NO_COLUMNS, NO_TYPES)).getSql();
+	}
+
+	private boolean isColumn(String column) {
+		return "id".equals(column) || columnOrdinals.containsKey(column);
+	}
+
+	/**
+	 * Generates a statement selecting the group-by columns followed by the
+	 * aggregates of every group of rows matching the filter, optionally sorted
+	 * by group-by columns or aggregate aliases. Without group-by columns all
+	 * matching rows form a single group. Filter parameters are bound as for
+	 * {@link #genSelectSql(SelectQuery)}.
+	 */
+	public String genAggregateSql(List<String> groupBy, List<Aggregate> aggregates, Set<FilterCondition> filter, List<SortField> order) {
+		if (aggregates.isEmpty()) {
+			throw new IllegalArgumentException("At least one aggregate is required");
+		}
+
+		SelectQuery query = new SelectQuery(true, filter, null);
+		List<Object> shape = new ArrayList<Object>(groupBy);
+		shape.add(null);
+		for (Aggregate aggregate : aggregates) {
+			shape.add(aggregate.getFunction());
+			shape.add(aggregate.getColumnName());
+			shape.add(aggregate.getAlias());
+		}
+		shape.add(null);
+		if (order != null) {
+			for (SortField field : order) {
+				shape.add(field.getColumnName());
+				shape.add(field.isDescending());
+			}
+		}
+		shape.add(query.shape());
+
+		ShapeKey key = new ShapeKey(AGGREGATE, null, shape);
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template.getSql();
+		}
+
+		List<String> names = new ArrayList<String>(groupBy);
+		StringBuilder aggregateSql = new StringBuilder("SELECT ");
+		String prefix = "";
+		for (String column : groupBy) {
+			if (!isColumn(column)) {
+				throw new IllegalArgumentException("Cannot group by field " + column);
+			}
+			aggregateSql.append(prefix).append("`").append(column).append("`");
+			prefix = ",";
 		}
-		if (allRows && sortFields != null) {
+		for (Aggregate aggregate : aggregates) {
+			if (aggregate.getColumnName() != null && !isColumn(aggregate.getColumnName())) {
+				throw new IllegalArgumentException("Cannot aggregate field " + aggregate.getColumnName());
+			} else if (names.contains(aggregate.getAlias())) {
+				throw new IllegalArgumentException("Duplicate aggregate alias " + aggregate.getAlias());
+			}
+			names.add(aggregate.getAlias());
+
+			aggregateSql.append(prefix).append(aggregate.getFunction()).append("(");
+			aggregateSql.append((aggregate.getColumnName() == null) ? "*" : "`" + aggregate.getColumnName() + "`");
+			aggregateSql.append(") AS `").append(aggregate.getAlias()).append("`");
+			prefix = ",";
+		}
+
+		aggregateSql.append(" FROM ").append(tableName);
+		appendWhereClause(aggregateSql, query);
+
+		prefix = " GROUP BY `";
+		for (String column : groupBy) {
+			aggregateSql.append(prefix).append(column).append("`");
+			prefix = ",`";
+		}
+
+		if (order != null) {
+			prefix = " ORDER BY `";
+			for (SortField field : order) {
+				if (!names.contains(field.getColumnName())) {
+					throw new IllegalArgumentException("Cannot sort aggregates by field " + field.getColumnName());
+				}
+				aggregateSql.append(prefix).append(field.getColumnName()).append(field.isDescending() ? "` DESC" : "`");
+				prefix = ",`";
+			}
+		}
+
+		return cache(key, new SqlTemplate(aggregateSql.toString(), NO_COLUMNS, NO_TYPES)).getSql();
+	}
+
+	/**
+	 * Returns the statement selecting <code>1</code> if a row with the key
+	 * exists.
+	 */
+	public String genExistsSql() {
+		return existsSql;
+	}
+
+	/**
+	 * Generates the SELECT statement. Filter parameters must be bound in the
+	 * iteration order of <code>filter</code>, see
+	 * {@link FilterCondition#bind(java.sql.PreparedStatement, int)}.
+	 */
+	public String genSelectSql(boolean allRows, Set<FilterCondition> filter, List<String> sortFields) {
+		return selectTemplate(new SelectQuery(allRows, filter, sortFields), null).getSql();
+	}
+
+	/**
+	 * Generates the SELECT statement for the given query shape. See
+	 * {@link SelectQuery} for the order of its parameters. Throws
+	 * InvalidFieldException if a selected field is not a column of the table.
+	 */
+	public String genSelectSql(SelectQuery query) throws InvalidFieldException {
+		return selectTemplate(query).getSql();
+	}
+
+	/*
+	 * Mask of the selected columns, or null if all columns are selected.
+	 */
+	private long[] projectionMask(Set<String> fields) throws InvalidFieldException {
+		if (fields == null) {
+			return null;
+		}
+
+		long[] mask = new long[maskWords];
+		for (String field : fields) {
+			if ("id".equals(field)) {
+				continue;
+			}
+			Integer ordinal = columnOrdinals.get(field);
+			if (ordinal == null) {
+				throw new InvalidFieldException("Table `" + tableName + "` does not contain field `" + field + "`");
+			}
+			mask[ordinal >>> 6] |= 1L << ordinal;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the SELECT statement for the given query shape. The columns of
+	 * the returned template are the selected columns following
+	 * <code>id</code>, in select-list order.
+	 */
+	public SqlTemplate selectTemplate(SelectQuery query) throws InvalidFieldException {
+		return selectTemplate(query, projectionMask(query.getFields()));
+	}
+
+	private SqlTemplate selectTemplate(SelectQuery query, long[] mask) {
+		ShapeKey key = new ShapeKey(query.isAllRows() ? SELECT_ALL : SELECT_ONE, mask, query.shape());
+		SqlTemplate template = cached(key);
+		if (template != null) {
+			return template;
+		}
+
+		boolean allRows = query.isAllRows();
+		List<String> sortFields = query.getSortFields();
+		List<SortField> keyset = query.isKeysetOrder() ? keysetFields(sortFields) : null;
+
+		StringBuilder selectSql = new StringBuilder("SELECT `id`");
+
+		for (int i = 0; i < columnNames.length; i++) {
+			if (key.mask == null || isSet(key.mask, i)) {
+				selectSql.append(",`").append(columnNames[i]).append("`");
+			}
+		}
+
+		selectSql.append(" FROM ").append(tableName);
+
+		String filterPrefix = appendWhereClause(selectSql, query);
+		if (allRows && keyset != null) {
+			if (query.isSeek()) {
+				selectSql.append(filterPrefix).append(genSeekString(keyset));
+			}
+			selectSql.append(genKeysetOrderByString(keyset));
+		} else if (allRows && sortFields != null) {
 			selectSql.append(genOrderByString(sortFields));
 		}
-		// TODO Add paging here
+		if (allRows && query.isLimited()) {
+			selectSql.append(" LIMIT ?");
+			if (query.isOffset()) {
+				selectSql.append(" OFFSET ?");
+			}
+		}
+
+		if (key.mask == null) {
+			return cache(key, new SqlTemplate(selectSql.toString(), columnNames, columnTypes));
+		} else {
+			return cache(key, newTemplate(selectSql.toString(), key.mask));
+		}
+	}
+
+	private static final class ShapeKey {
+		private final int kind;
+		private final long[] mask;
+		private final Object shape;
+		private final int hash;
 
-		return selectSql.toString();
+		private ShapeKey(int kind, long[] mask, Object shape) {
+			this.kind = kind;
+			this.mask = mask;
+			this.shape = shape;
+			this.hash = 31 * (31 * kind + Arrays.hashCode(mask)) + (shape == null ? 0 : shape.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof ShapeKey)) {
+				return false;
+			}
+			ShapeKey other = (ShapeKey) obj;
+			return kind == other.kind && hash == other.hash && Arrays.equals(mask, other.mask) && (shape == null ? other.shape == null : shape.equals(other.shape));
+		}
 	}
 
 }
@@ -13,7 +13,7 @@ import java.util.Map;
 
 import com.lemondo.commons.db.exception.DataProcessingException;
 
-public class BasicDataProcessor implements DataProcessor<Map<String, Object>, List<Map<String, Object>>> {
+public class BasicDataProcessor implements SchemaDataProcessor<Map<String, Object>, List<Map<String, Object>>> {
 
 	@Override
 	public Map<String, Object> bodyAsMap(Map<String, Object> body) {
@@ -31,20 +31,42 @@ public class BasicDataProcessor implements DataProcessor<Map<String, Object>, Li
 
 	@Override
 	public List<Map<String, Object>> readAll(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException {
+		return readAll(rs, new RowSchema(rsmd, numColumns));
+	}
+
+	@Override
+	public Map<String, Object> readRow(ResultSet rs, RowSchema schema) throws SQLException {
+		int numColumns = schema.getColumnCount();
+		Map<String, Object> result = new HashMap<String, Object>(schema.getMapCapacity());
+		for (int i = 1; i <= numColumns; i++) {
+			result.put(schema.getColumnLabel(i), schema.getObject(rs, i));
+		}
+		return result;
+	}
+
+	@Override
+	public List<Map<String, Object>> readAll(ResultSet rs, RowSchema schema) throws SQLException {
 		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
 		while (rs.next()) {
-			result.add(readRow(rs, rsmd, numColumns));
+			result.add(readRow(rs, schema));
 		}
 		return result;
 	}
 
 	@Override
 	public void writeRows(OutputStream out, ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		writeRows(out, rs, new RowSchema(rsmd, numColumns));
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
 		try {
 			ObjectOutputStream oOut = new ObjectOutputStream(out);
 			while (rs.next()) {
-				oOut.writeObject(readRow(rs, rsmd, numColumns));
+				oOut.writeObject(readRow(rs, schema));
 				oOut.flush();
+				// Forget the written rows, so they can be garbage collected
+				oOut.reset();
 			}
 		} catch (IOException e) {
 			throw new DataProcessingException("Cannot write into the OutputStream", e);
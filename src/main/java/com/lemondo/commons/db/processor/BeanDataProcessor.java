@@ -0,0 +1,525 @@
+package com.lemondo.commons.db.processor;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * Reads rows directly into instances of a record or a JavaBean class, without
+ * reading them into maps first.
+ * <p>
+ * Records are constructed with their canonical constructor. Beans are
+ * constructed with their no-argument constructor and filled through their
+ * setters and public fields. Columns are bound to the record components or
+ * bean properties of the same name, compared regardless of case and
+ * underscores, so that a <code>login_name</code> column is bound to a
+ * <code>loginName</code> property. Classes with two properties of the same
+ * name in this sense are rejected. Other columns are ignored, and components
+ * without a column are left <code>null</code>, or 0 or <code>false</code> if
+ * they are primitive.
+ * <p>
+ * The binding of columns is resolved once per result set, and rows are built
+ * through method handles looked up when the processor is created.
+ * <p>
+ * <code>bodyAsMap</code> reads the same components or properties back through
+ * their accessors, leaving out <code>null</code> values, under the names of
+ * the columns given to the processor, like the <code>columnDef</code> of a
+ * table, or else under their own names. Primitive properties are never
+ * <code>null</code>, so they are always written: a bean whose
+ * <code>int</code> property was never set updates its column to 0. Properties
+ * that may be left out of a write should have wrapper types.
+ */
+public class BeanDataProcessor<T> implements SchemaDataProcessor<T, List<T>> {
+
+	private static final MethodType CONSTRUCT = MethodType.methodType(Object.class, Object[].class);
+	private static final MethodType SET = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType GET = MethodType.methodType(Object.class, Object.class);
+
+	private final Class<T> type;
+	private final boolean record;
+	private final MethodHandle constructor;
+	private final Map<String, Property> properties = new LinkedHashMap<String, Property>();
+
+	private final Map<List<String>, Binding> bindings = new ConcurrentHashMap<List<String>, Binding>();
+	private volatile Binding lastBinding;
+
+	public BeanDataProcessor(Class<T> type) {
+		this(type, null);
+	}
+
+	/**
+	 * @param columns
+	 *            the names of the columns properties are written to by
+	 *            <code>bodyAsMap</code>, or <code>null</code> to write them
+	 *            under the property names
+	 */
+	public BeanDataProcessor(Class<T> type, Collection<String> columns) {
+		this.type = type;
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			Object[] components = recordComponents(type);
+			this.record = (components != null);
+			if (record) {
+				Class<?>[] componentTypes = new Class<?>[components.length];
+				for (int i = 0; i < components.length; i++) {
+					Class<?> componentClass = components[i].getClass();
+					String name = (String) componentClass.getMethod("getName").invoke(components[i]);
+					componentTypes[i] = (Class<?>) componentClass.getMethod("getType").invoke(components[i]);
+					Method accessor = (Method) componentClass.getMethod("getAccessor").invoke(components[i]);
+					addProperty(new Property(name, componentTypes[i], i, null, lookup.unreflect(accessible(accessor))));
+				}
+				Constructor<T> canonical = type.getDeclaredConstructor(componentTypes);
+				this.constructor = lookup.unreflectConstructor(accessible(canonical)).asType(MethodType.methodType(Object.class, componentTypes))
+						.asSpreader(Object[].class, componentTypes.length).asType(CONSTRUCT);
+			} else {
+				Constructor<T> noArgs = type.getDeclaredConstructor();
+				this.constructor = MethodHandles.dropArguments(lookup.unreflectConstructor(accessible(noArgs)).asType(MethodType.methodType(Object.class)),
+						0, Object[].class);
+
+				BeanInfo info = Introspector.getBeanInfo(type, Object.class);
+				for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+					Method setter = descriptor.getWriteMethod();
+					Method getter = descriptor.getReadMethod();
+					if (setter != null) {
+						addProperty(new Property(descriptor.getName(), descriptor.getPropertyType(), -1, lookup.unreflect(accessible(setter)),
+								(getter == null) ? null : lookup.unreflect(accessible(getter))));
+					}
+				}
+				for (Field field : type.getFields()) {
+					int modifiers = field.getModifiers();
+					Property property = properties.get(normalize(field.getName()));
+					if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && (property == null || !property.name.equals(field.getName()))) {
+						addProperty(new Property(field.getName(), field.getType(), -1, lookup.unreflectSetter(field), lookup.unreflectGetter(field)));
+					}
+				}
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Class " + type.getName() + " has no suitable constructor", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Class " + type.getName() + " is not accessible", e);
+		} catch (IntrospectionException e) {
+			throw new IllegalArgumentException("Cannot introspect class " + type.getName(), e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot read the components of record " + type.getName(), e);
+		}
+
+		if (columns != null) {
+			for (String column : columns) {
+				Property property = properties.get(normalize(column));
+				if (property != null) {
+					if (property.column != null) {
+						throw new IllegalArgumentException("Columns " + property.column + " and " + column + " both match property " + property.name);
+					}
+					property.column = column;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Records are looked up reflectively, since they are not available on
+	 * every supported Java version. Returns null if the class is not a
+	 * record.
+	 */
+	private static Object[] recordComponents(Class<?> type) throws ReflectiveOperationException {
+		Method isRecord;
+		try {
+			isRecord = Class.class.getMethod("isRecord");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		if (!(Boolean) isRecord.invoke(type)) {
+			return null;
+		}
+		return (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+	}
+
+	private static <A extends AccessibleObject> A accessible(A member) {
+		try {
+			member.setAccessible(true);
+		} catch (RuntimeException e) {
+			// Left to the access checks of the lookup
+		}
+		return member;
+	}
+
+	private void addProperty(Property property) {
+		Property other = properties.put(normalize(property.name), property);
+		if (other != null) {
+			throw new IllegalArgumentException("Properties " + other.name + " and " + property.name + " of " + type.getName() + " match the same columns");
+		}
+	}
+
+	private static String normalize(String name) {
+		return name.replace("_", "").toLowerCase(Locale.ROOT);
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public Map<String, Object> bodyAsMap(T body) throws DataProcessingException {
+		Map<String, Object> result = new HashMap<String, Object>();
+		for (Property property : properties.values()) {
+			if (property.getter != null) {
+				Object value;
+				try {
+					value = property.getter.invokeExact((Object) body);
+				} catch (Throwable e) {
+					throw wrap("Cannot read property " + property.name + " of " + type.getName(), e);
+				}
+				if (value != null) {
+					result.put((property.column == null) ? property.name : property.column, value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the rows are records. Records are not copied by
+	 * {@link #copy(Object)}.
+	 */
+	public boolean isRecord() {
+		return record;
+	}
+
+	/**
+	 * Returns a copy of a row, for callers that keep rows while handing them
+	 * out, like a {@link com.lemondo.commons.db.RowCache}. Beans are copied
+	 * property by property, shallowly, and beans with a property that cannot
+	 * be read are rejected. Records are returned as they are.
+	 */
+	public T copy(T row) throws DataProcessingException {
+		if (record || row == null) {
+			return row;
+		}
+
+		try {
+			Object copy = (Object) constructor.invokeExact((Object[]) null);
+			for (Property property : properties.values()) {
+				if (property.getter == null) {
+					throw new DataProcessingException("Property " + property.name + " of " + type.getName() + " has no getter and cannot be copied");
+				}
+				property.setter.invokeExact(copy, (Object) property.getter.invokeExact((Object) row));
+			}
+			return type.cast(copy);
+		} catch (DataProcessingException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw wrap("Cannot copy " + type.getName(), e);
+		}
+	}
+
+	@Override
+	public T readRow(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		return readRow(rs, new RowSchema(rsmd, numColumns));
+	}
+
+	@Override
+	public List<T> readAll(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		return readAll(rs, new RowSchema(rsmd, numColumns));
+	}
+
+	@Override
+	public T readRow(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		Binding binding = bind(schema);
+		Property[] bound = binding.properties;
+
+		try {
+			if (record) {
+				Object[] args = binding.defaults.clone();
+				for (int i = 1; i < bound.length; i++) {
+					if (bound[i] != null) {
+						Object value = schema.getObject(rs, i);
+						if (value != null) {
+							args[bound[i].index] = bound[i].convert(value);
+						}
+					}
+				}
+				return type.cast((Object) constructor.invokeExact(args));
+			}
+
+			Object row = (Object) constructor.invokeExact((Object[]) null);
+			for (int i = 1; i < bound.length; i++) {
+				if (bound[i] != null) {
+					Object value = schema.getObject(rs, i);
+					bound[i].setter.invokeExact(row, (value == null) ? bound[i].defaultValue : bound[i].convert(value));
+				}
+			}
+			return type.cast(row);
+		} catch (SQLException e) {
+			throw e;
+		} catch (DataProcessingException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw wrap("Cannot construct " + type.getName() + " from the row", e);
+		}
+	}
+
+	@Override
+	public List<T> readAll(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		List<T> result = new ArrayList<T>();
+		while (rs.next()) {
+			result.add(readRow(rs, schema));
+		}
+		return result;
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		writeRows(out, rs, new RowSchema(rsmd, numColumns));
+	}
+
+	/**
+	 * Writes the rows as serialized objects, like {@link BasicDataProcessor}.
+	 * The class must be serializable.
+	 */
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		try {
+			ObjectOutputStream oOut = new ObjectOutputStream(out);
+			while (rs.next()) {
+				oOut.writeObject(readRow(rs, schema));
+				oOut.flush();
+				// Forget the written rows, so they can be garbage collected
+				oOut.reset();
+			}
+		} catch (IOException e) {
+			throw new DataProcessingException("Cannot write into the OutputStream", e);
+		}
+	}
+
+	private Binding bind(RowSchema schema) {
+		Binding binding = lastBinding;
+		if (binding != null && binding.schema == schema) {
+			return binding;
+		}
+
+		int numColumns = schema.getColumnCount();
+		String[] labels = new String[numColumns];
+		for (int i = 1; i <= numColumns; i++) {
+			labels[i - 1] = schema.getColumnLabel(i);
+		}
+		List<String> key = Arrays.asList(labels);
+
+		binding = bindings.get(key);
+		if (binding == null) {
+			Property[] bound = new Property[numColumns + 1];
+			for (int i = 1; i <= numColumns; i++) {
+				bound[i] = properties.get(normalize(labels[i - 1]));
+			}
+			binding = new Binding(null, bound, defaults());
+			bindings.put(key, binding);
+		}
+
+		binding = new Binding(schema, binding.properties, binding.defaults);
+		lastBinding = binding;
+		return binding;
+	}
+
+	private Object[] defaults() {
+		Object[] result = new Object[record ? properties.size() : 0];
+		for (Property property : properties.values()) {
+			if (property.index >= 0) {
+				result[property.index] = property.defaultValue;
+			}
+		}
+		return result;
+	}
+
+	private static DataProcessingException wrap(String message, Throwable e) {
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new DataProcessingException(message, e);
+	}
+
+	/*
+	 * The columns of a result set bound to properties, by column index.
+	 */
+	private static final class Binding {
+		private final RowSchema schema;
+		private final Property[] properties;
+		private final Object[] defaults;
+
+		private Binding(RowSchema schema, Property[] properties, Object[] defaults) {
+			this.schema = schema;
+			this.properties = properties;
+			this.defaults = defaults;
+		}
+	}
+
+	private static final class Property {
+		private final String name;
+		private final Class<?> type;
+		private final Class<?> boxedType;
+		private final Object defaultValue;
+		private final int index;
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+		private String column;
+
+		/**
+		 * @param index
+		 *            the index of the record component, or -1 for bean
+		 *            properties
+		 */
+		private Property(String name, Class<?> type, int index, MethodHandle setter, MethodHandle getter) {
+			this.name = name;
+			this.type = type;
+			this.boxedType = box(type);
+			this.defaultValue = defaultValue(type);
+			this.index = index;
+			this.setter = (setter == null) ? null : setter.asType(SET);
+			this.getter = (getter == null) ? null : getter.asType(GET);
+		}
+
+		/*
+		 * Converts a non-null column value to the type of the property.
+		 */
+		private Object convert(Object value) throws DataProcessingException {
+			if (boxedType.isInstance(value)) {
+				return value;
+			} else if (value instanceof Number) {
+				Object result;
+				try {
+					result = convertNumber((Number) value);
+				} catch (ArithmeticException e) {
+					throw new DataProcessingException("Cannot convert " + value + " to " + type.getName() + " of property " + name + " without loss", e);
+				}
+				if (result != null) {
+					return result;
+				}
+			} else if (boxedType == Character.class && value instanceof String && ((String) value).length() == 1) {
+				return ((String) value).charAt(0);
+			} else if (boxedType.isEnum() && value instanceof String) {
+				return toEnum(boxedType, (String) value);
+			} else if (boxedType == java.time.LocalDate.class && value instanceof java.sql.Date) {
+				return ((java.sql.Date) value).toLocalDate();
+			} else if (boxedType == java.time.LocalDateTime.class && value instanceof Timestamp) {
+				return ((Timestamp) value).toLocalDateTime();
+			} else if (boxedType == java.time.Instant.class && value instanceof Timestamp) {
+				return ((Timestamp) value).toInstant();
+			}
+
+			if (boxedType == String.class) {
+				return value.toString();
+			}
+			throw new DataProcessingException("Cannot convert " + value.getClass().getName() + " to " + type.getName() + " of property " + name);
+		}
+
+		/*
+		 * Converts a number to a numeric or boolean property, or returns null
+		 * if the property is neither. Integral properties must hold the exact
+		 * value. Floating point properties round decimals, but must not
+		 * overflow or round integers. Throws ArithmeticException otherwise.
+		 */
+		private Object convertNumber(Number number) {
+			boolean integral = (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte);
+			if (boxedType == Double.class || boxedType == Float.class) {
+				double result = (boxedType == Float.class) ? number.floatValue() : number.doubleValue();
+				if (Double.isInfinite(result) && !((number instanceof Double || number instanceof Float) && Double.isInfinite(number.doubleValue()))) {
+					throw new ArithmeticException("Overflow");
+				} else if ((integral || number instanceof BigInteger) && new BigDecimal(result).compareTo(new BigDecimal(number.toString())) != 0) {
+					throw new ArithmeticException("Rounding necessary");
+				}
+				return (boxedType == Float.class) ? (Object) (float) result : (Object) result;
+			} else if (boxedType != Integer.class && boxedType != Long.class && boxedType != Short.class && boxedType != Byte.class
+					&& boxedType != Boolean.class && boxedType != BigDecimal.class && boxedType != BigInteger.class) {
+				return null;
+			}
+
+			BigDecimal exact;
+			if (integral) {
+				exact = BigDecimal.valueOf(number.longValue());
+			} else {
+				try {
+					exact = new BigDecimal(number.toString());
+				} catch (NumberFormatException e) {
+					// NaN and infinities
+					throw new ArithmeticException("Not a finite number");
+				}
+			}
+
+			if (boxedType == Integer.class) {
+				return exact.intValueExact();
+			} else if (boxedType == Long.class) {
+				return exact.longValueExact();
+			} else if (boxedType == Short.class) {
+				return exact.shortValueExact();
+			} else if (boxedType == Byte.class) {
+				return exact.byteValueExact();
+			} else if (boxedType == Boolean.class) {
+				return exact.signum() != 0;
+			} else if (boxedType == BigDecimal.class) {
+				return exact;
+			}
+			return exact.toBigIntegerExact();
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private static Object toEnum(Class<?> enumType, String value) {
+			return Enum.valueOf((Class) enumType, value);
+		}
+
+		private static Class<?> box(Class<?> type) {
+			if (!type.isPrimitive()) {
+				return type;
+			}
+			return MethodType.methodType(type).wrap().returnType();
+		}
+
+		private static Object defaultValue(Class<?> type) {
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == char.class) {
+				return Character.valueOf((char) 0);
+			} else if (type == int.class) {
+				return 0;
+			} else if (type == long.class) {
+				return 0L;
+			} else if (type == double.class) {
+				return 0d;
+			} else if (type == float.class) {
+				return 0f;
+			} else if (type == short.class) {
+				return (short) 0;
+			} else if (type == byte.class) {
+				return (byte) 0;
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * Reads rows as maps like {@link BasicDataProcessor}, but writes them in a
+ * compact binary stream instead of serializing every row: the column labels
+ * and SQL types are written once, followed by the tagged values of every row.
+ * The stream is read by {@link BinaryRowReader}; see {@link BinaryRowFormat}
+ * for the layout.
+ */
+public class BinaryDataProcessor extends BasicDataProcessor {
+
+	public static final int DEFAULT_FLUSH_THRESHOLD = 8192;
+
+	private final int flushThreshold;
+
+	public BinaryDataProcessor() {
+		this(DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/**
+	 * @param flushThreshold
+	 *            the number of bytes written rows are buffered up to before
+	 *            the stream is flushed
+	 */
+	public BinaryDataProcessor(int flushThreshold) {
+		if (flushThreshold < 1) {
+			throw new IllegalArgumentException("Flush threshold must be positive");
+		}
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Writes the rows, reading their values with the getters of the schema
+	 * like {@link #readRow(ResultSet, RowSchema)} does.
+	 */
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		int numColumns = schema.getColumnCount();
+		try {
+			DataOutputStream dOut = new DataOutputStream(new BufferedOutputStream(out, flushThreshold));
+			dOut.writeInt(BinaryRowFormat.MAGIC);
+			dOut.writeByte(BinaryRowFormat.VERSION);
+			dOut.writeInt(numColumns);
+			for (int i = 1; i <= numColumns; i++) {
+				writeString(dOut, schema.getColumnLabel(i));
+				dOut.writeInt(schema.getColumnType(i));
+			}
+
+			while (rs.next()) {
+				dOut.writeByte(BinaryRowFormat.ROW);
+				for (int i = 1; i <= numColumns; i++) {
+					writeValue(dOut, schema.getObject(rs, i));
+				}
+			}
+			dOut.writeByte(BinaryRowFormat.END);
+			dOut.flush();
+		} catch (IOException e) {
+			throw new DataProcessingException("Cannot write into the OutputStream", e);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(BinaryRowFormat.NULL);
+		} else if (value instanceof String) {
+			out.writeByte(BinaryRowFormat.STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(BinaryRowFormat.INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Short) {
+			out.writeByte(BinaryRowFormat.SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BinaryRowFormat.BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Long) {
+			out.writeByte(BinaryRowFormat.LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(BinaryRowFormat.DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(BinaryRowFormat.FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(BinaryRowFormat.DECIMAL);
+			writeString(out, value.toString());
+		} else if (value instanceof BigInteger) {
+			out.writeByte(BinaryRowFormat.BIG_INTEGER);
+			writeBytes(out, ((BigInteger) value).toByteArray());
+		} else if (value instanceof Boolean) {
+			out.writeByte(((Boolean) value) ? BinaryRowFormat.TRUE : BinaryRowFormat.FALSE);
+		} else if (value instanceof byte[]) {
+			out.writeByte(BinaryRowFormat.BYTES);
+			writeBytes(out, (byte[]) value);
+		} else if (value instanceof Timestamp) {
+			out.writeByte(BinaryRowFormat.TIMESTAMP);
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof java.sql.Date) {
+			out.writeByte(BinaryRowFormat.DATE);
+			out.writeLong(((java.sql.Date) value).getTime());
+		} else if (value instanceof Time) {
+			out.writeByte(BinaryRowFormat.TIME);
+			out.writeLong(((Time) value).getTime());
+		} else {
+			out.writeByte(BinaryRowFormat.SERIALIZED);
+			writeBytes(out, serialize(value));
+		}
+	}
+
+	private static byte[] serialize(Object value) throws IOException {
+		if (!BinaryRowFormat.isSerializable(value.getClass().getName())) {
+			throw new InvalidClassException(value.getClass().getName(), "Not a column value type");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oOut = new ObjectOutputStream(bytes);
+		oOut.writeObject(value);
+		oOut.close();
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		writeBytes(out, value.getBytes(BinaryRowFormat.UTF8));
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+}
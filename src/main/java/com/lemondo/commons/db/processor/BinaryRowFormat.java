@@ -0,0 +1,68 @@
+package com.lemondo.commons.db.processor;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Constants of the binary row stream written by {@link BinaryDataProcessor}
+ * and read by {@link BinaryRowReader}.
+ * <p>
+ * A stream starts with {@link #MAGIC}, the {@link #VERSION} and a header with
+ * the number of columns followed by the label and SQL type of every column.
+ * Each row is introduced by {@link #ROW} and holds a value per column, a tag
+ * byte followed by the value. Every tag stands for a single Java type, so
+ * values are read back with the classes the driver returned. Strings,
+ * decimals, byte arrays and serialized objects are prefixed by their length
+ * in bytes. The stream ends with {@link #END}. Integers are written
+ * big-endian, as by {@link java.io.DataOutputStream}.
+ * <p>
+ * Only the value types of JDBC drivers without a tag of their own are
+ * serialized, as listed by {@link #isSerializable(String)}. The reader rejects
+ * any other class, so that a stream cannot make it instantiate arbitrary
+ * classes.
+ */
+final class BinaryRowFormat {
+
+	static final int MAGIC = 0x43344A52;
+	static final int VERSION = 1;
+
+	static final int END = 0;
+	static final int ROW = 1;
+
+	static final int NULL = 0;
+	static final int FALSE = 1;
+	static final int TRUE = 2;
+	static final int INT = 3;
+	static final int LONG = 4;
+	static final int FLOAT = 5;
+	static final int DOUBLE = 6;
+	static final int DECIMAL = 7;
+	static final int BIG_INTEGER = 8;
+	static final int STRING = 9;
+	static final int BYTES = 10;
+	static final int DATE = 11;
+	static final int TIME = 12;
+	static final int TIMESTAMP = 13;
+	static final int SERIALIZED = 14;
+	static final int SHORT = 15;
+	static final int BYTE = 16;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Set<String> SERIALIZABLE_CLASSES = new HashSet<String>(Arrays.asList("java.lang.Character", "java.util.Date",
+			"java.util.UUID"));
+
+	/*
+	 * Returns whether values of the named class may be serialized into the
+	 * stream. The java.time classes are serialized through java.time.Ser.
+	 */
+	static boolean isSerializable(String className) {
+		return className.startsWith("java.time.") || SERIALIZABLE_CLASSES.contains(className);
+	}
+
+	private BinaryRowFormat() {
+	}
+
+}
@@ -0,0 +1,263 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the binary row stream written by {@link BinaryDataProcessor}. The
+ * header is read when the reader is created; rows are then read one at a
+ * time with {@link #next()}, like a result set, and their values are
+ * returned as a map by {@link #readRow()} or by the typed accessors, which
+ * take 1-based column indexes.
+ */
+public class BinaryRowReader implements Closeable {
+
+	private final DataInputStream in;
+	private final String[] labels;
+	private final int[] types;
+	private final Object[] values;
+	private boolean done;
+
+	public BinaryRowReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+
+		if (this.in.readInt() != BinaryRowFormat.MAGIC) {
+			throw new StreamCorruptedException("Not a binary row stream");
+		}
+		int version = this.in.readUnsignedByte();
+		if (version != BinaryRowFormat.VERSION) {
+			throw new StreamCorruptedException("Unsupported binary row stream version " + version);
+		}
+
+		int numColumns = this.in.readInt();
+		if (numColumns < 0) {
+			throw new StreamCorruptedException("Invalid number of columns " + numColumns);
+		}
+		labels = new String[numColumns];
+		types = new int[numColumns];
+		for (int i = 0; i < numColumns; i++) {
+			labels[i] = new String(readBytes(), BinaryRowFormat.UTF8);
+			types[i] = this.in.readInt();
+		}
+		values = new Object[numColumns];
+	}
+
+	public int getColumnCount() {
+		return labels.length;
+	}
+
+	public String getColumnLabel(int column) {
+		return labels[column - 1];
+	}
+
+	/**
+	 * Returns the SQL type of the column, as defined by {@link java.sql.Types}.
+	 */
+	public int getColumnType(int column) {
+		return types[column - 1];
+	}
+
+	/**
+	 * Moves to the next row. Returns <code>false</code> at the end of the
+	 * stream.
+	 */
+	public boolean next() throws IOException {
+		if (done) {
+			return false;
+		}
+
+		int marker = in.readUnsignedByte();
+		if (marker == BinaryRowFormat.END) {
+			done = true;
+			return false;
+		} else if (marker != BinaryRowFormat.ROW) {
+			throw new StreamCorruptedException("Invalid row marker " + marker);
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readValue();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current row as a map from column labels to values, as read
+	 * by {@link BasicDataProcessor}.
+	 */
+	public Map<String, Object> readRow() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		for (int i = 0; i < values.length; i++) {
+			result.put(labels[i], values[i]);
+		}
+		return result;
+	}
+
+	public Object getObject(int column) {
+		return values[column - 1];
+	}
+
+	public boolean isNull(int column) {
+		return values[column - 1] == null;
+	}
+
+	public String getString(int column) {
+		Object value = values[column - 1];
+		return (value == null) ? null : value.toString();
+	}
+
+	/**
+	 * Returns the numeric value of the column, or 0 if it is
+	 * <code>null</code>.
+	 */
+	public int getInt(int column) {
+		Object value = values[column - 1];
+		return (value == null) ? 0 : ((Number) value).intValue();
+	}
+
+	/**
+	 * Returns the numeric value of the column, or 0 if it is
+	 * <code>null</code>.
+	 */
+	public long getLong(int column) {
+		Object value = values[column - 1];
+		return (value == null) ? 0 : ((Number) value).longValue();
+	}
+
+	/**
+	 * Returns the numeric value of the column, or 0 if it is
+	 * <code>null</code>.
+	 */
+	public double getDouble(int column) {
+		Object value = values[column - 1];
+		return (value == null) ? 0 : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Returns the boolean value of the column, or <code>false</code> if it is
+	 * <code>null</code>. Numbers are <code>true</code> unless they are 0.
+	 */
+	public boolean getBoolean(int column) {
+		Object value = values[column - 1];
+		if (value instanceof Number) {
+			return ((Number) value).intValue() != 0;
+		}
+		return (value != null) && (Boolean) value;
+	}
+
+	public BigDecimal getBigDecimal(int column) {
+		Object value = values[column - 1];
+		if (value == null || value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		} else if (value instanceof BigInteger) {
+			return new BigDecimal((BigInteger) value);
+		} else {
+			return new BigDecimal(value.toString());
+		}
+	}
+
+	public byte[] getBytes(int column) {
+		return (byte[]) values[column - 1];
+	}
+
+	public Timestamp getTimestamp(int column) {
+		Object value = values[column - 1];
+		if (value == null || value instanceof Timestamp) {
+			return (Timestamp) value;
+		}
+		return new Timestamp(((java.util.Date) value).getTime());
+	}
+
+	private Object readValue() throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case BinaryRowFormat.NULL:
+			return null;
+		case BinaryRowFormat.FALSE:
+			return Boolean.FALSE;
+		case BinaryRowFormat.TRUE:
+			return Boolean.TRUE;
+		case BinaryRowFormat.INT:
+			return in.readInt();
+		case BinaryRowFormat.SHORT:
+			return in.readShort();
+		case BinaryRowFormat.BYTE:
+			return in.readByte();
+		case BinaryRowFormat.LONG:
+			return in.readLong();
+		case BinaryRowFormat.FLOAT:
+			return in.readFloat();
+		case BinaryRowFormat.DOUBLE:
+			return in.readDouble();
+		case BinaryRowFormat.DECIMAL:
+			return new BigDecimal(new String(readBytes(), BinaryRowFormat.UTF8));
+		case BinaryRowFormat.BIG_INTEGER:
+			return new BigInteger(readBytes());
+		case BinaryRowFormat.STRING:
+			return new String(readBytes(), BinaryRowFormat.UTF8);
+		case BinaryRowFormat.BYTES:
+			return readBytes();
+		case BinaryRowFormat.DATE:
+			return new java.sql.Date(in.readLong());
+		case BinaryRowFormat.TIME:
+			return new Time(in.readLong());
+		case BinaryRowFormat.TIMESTAMP:
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case BinaryRowFormat.SERIALIZED:
+			ObjectInputStream oIn = new ObjectInputStream(new ByteArrayInputStream(readBytes())) {
+				@Override
+				protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+					if (!BinaryRowFormat.isSerializable(desc.getName())) {
+						throw new InvalidClassException(desc.getName(), "Not a column value type");
+					}
+					return super.resolveClass(desc);
+				}
+
+				@Override
+				protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+					throw new InvalidClassException("Proxies are not column value types");
+				}
+			};
+			try {
+				return oIn.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Cannot deserialize column value", e);
+			} finally {
+				oIn.close();
+			}
+		default:
+			throw new StreamCorruptedException("Invalid value tag " + tag);
+		}
+	}
+
+	private byte[] readBytes() throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new StreamCorruptedException("Invalid length " + length);
+		}
+		byte[] result = new byte[length];
+		in.readFully(result);
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
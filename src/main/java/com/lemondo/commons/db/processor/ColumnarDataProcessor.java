@@ -0,0 +1,83 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * Reads lists of rows into a {@link ColumnarResult}, storing numeric columns
+ * in primitive arrays and string columns as dictionary codes instead of
+ * boxing every value into a map per row. Single rows are read as maps, and
+ * rows are written like {@link BinaryDataProcessor} writes them.
+ * <p>
+ * Columns are stored by their SQL type in the result set, or by their type in
+ * the column definitions given to the processor, like the
+ * <code>columnDef</code> of a table, if the column that type selects can hold
+ * the values of the result set without loss. Signedness always comes from the
+ * result set.
+ */
+public class ColumnarDataProcessor implements SchemaDataProcessor<Map<String, Object>, ColumnarResult> {
+
+	private final Map<String, Integer> columnDef;
+	private final BinaryDataProcessor rowProcessor = new BinaryDataProcessor();
+
+	public ColumnarDataProcessor() {
+		this(null);
+	}
+
+	/**
+	 * @param columnDef
+	 *            the SQL types of columns by label, as defined by
+	 *            {@link java.sql.Types}, or <code>null</code> to use the types
+	 *            of the result set
+	 */
+	public ColumnarDataProcessor(Map<String, Integer> columnDef) {
+		this.columnDef = (columnDef == null) ? null : new HashMap<String, Integer>(columnDef);
+	}
+
+	@Override
+	public Map<String, Object> bodyAsMap(Map<String, Object> body) {
+		return rowProcessor.bodyAsMap(body);
+	}
+
+	@Override
+	public Map<String, Object> readRow(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException {
+		return rowProcessor.readRow(rs, rsmd, numColumns);
+	}
+
+	@Override
+	public ColumnarResult readAll(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException {
+		return readAll(rs, new RowSchema(rsmd, numColumns));
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		rowProcessor.writeRows(out, rs, rsmd, numColumns);
+	}
+
+	@Override
+	public Map<String, Object> readRow(ResultSet rs, RowSchema schema) throws SQLException {
+		return rowProcessor.readRow(rs, schema);
+	}
+
+	@Override
+	public ColumnarResult readAll(ResultSet rs, RowSchema schema) throws SQLException {
+		ColumnarResult result = new ColumnarResult(schema, columnDef);
+		while (rs.next()) {
+			result.append(rs, schema);
+		}
+		result.finish();
+		return result;
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		rowProcessor.writeRows(out, rs, schema);
+	}
+
+}
@@ -0,0 +1,436 @@
+package com.lemondo.commons.db.processor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows read by a {@link ColumnarDataProcessor}, stored column by column.
+ * Integer and floating point columns are stored in <code>int[]</code>,
+ * <code>long[]</code> and <code>double[]</code> arrays, string columns as
+ * codes into a dictionary of their distinct values, and other columns as
+ * objects. Null values are marked in a bitmap per column, with 0 stored in
+ * primitive columns.
+ * <p>
+ * The arrays returned by the columns are not copied, and must not be
+ * modified. Rows and columns are indexed from 0.
+ */
+public class ColumnarResult {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Column[] columns;
+	private final Map<String, Integer> indexes;
+	private int rowCount;
+
+	/**
+	 * @param columnDef
+	 *            the SQL types of columns by label, overriding the types of
+	 *            the result set where the column they select can hold its
+	 *            values without loss, or <code>null</code>
+	 */
+	ColumnarResult(RowSchema schema, Map<String, Integer> columnDef) {
+		int numColumns = schema.getColumnCount();
+		this.columns = new Column[numColumns];
+		this.indexes = new HashMap<String, Integer>(schema.getMapCapacity());
+		for (int i = 0; i < numColumns; i++) {
+			String label = schema.getColumnLabel(i + 1);
+			int sqlType = schema.getColumnType(i + 1);
+			boolean signed = isSigned(schema, i + 1);
+			Integer defType = (columnDef == null) ? null : columnDef.get(label);
+			Column column = (defType == null) ? null : Column.of(label, defType, signed);
+			if (column == null || !column.holds(sqlType, signed)) {
+				column = Column.of(label, sqlType, signed);
+			}
+			columns[i] = column;
+			indexes.put(label, i);
+		}
+	}
+
+	private static boolean isSigned(RowSchema schema, int column) {
+		try {
+			return schema.getMetaData().isSigned(column);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	void append(ResultSet rs, RowSchema schema) throws SQLException {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].append(rs, schema, i + 1, rowCount);
+		}
+		rowCount++;
+	}
+
+	/*
+	 * Trims the columns to the number of rows once all rows are read.
+	 */
+	void finish() {
+		for (Column column : columns) {
+			column.trim(rowCount);
+		}
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public Column getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Returns the column with the label, or <code>null</code> if there is no
+	 * such column.
+	 */
+	public Column getColumn(String label) {
+		Integer index = indexes.get(label);
+		return (index == null) ? null : columns[index];
+	}
+
+	public Object getObject(int row, int column) {
+		return columns[column].getObject(row);
+	}
+
+	/**
+	 * Returns the row as a map from column labels to values.
+	 */
+	public Map<String, Object> getRow(int row) {
+		Map<String, Object> result = new HashMap<String, Object>(indexes.size() * 4 / 3 + 1);
+		for (Column column : columns) {
+			result.put(column.label, column.getObject(row));
+		}
+		return result;
+	}
+
+	public abstract static class Column {
+		private final String label;
+		private final int sqlType;
+		private long[] nulls = new long[1];
+
+		private Column(String label, int sqlType) {
+			this.label = label;
+			this.sqlType = sqlType;
+		}
+
+		/*
+		 * Signed integer columns are stored as ints, unsigned ones and
+		 * BIGINTs as longs, except unsigned BIGINTs, which may overflow a
+		 * long. TINYINT is left out since it may be read as a Boolean.
+		 */
+		private static Column of(String label, int sqlType, boolean signed) {
+			switch (sqlType) {
+			case Types.SMALLINT:
+				return new IntColumn(label, sqlType);
+			case Types.INTEGER:
+				return signed ? new IntColumn(label, sqlType) : new LongColumn(label, sqlType);
+			case Types.BIGINT:
+				return signed ? new LongColumn(label, sqlType) : new ObjectColumn(label, sqlType);
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return new DoubleColumn(label, sqlType);
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return new StringColumn(label, sqlType);
+			default:
+				return new ObjectColumn(label, sqlType);
+			}
+		}
+
+		/*
+		 * Whether the column stores every value of a result set column of
+		 * the SQL type, as read by its getter, without loss. A DECIMAL read
+		 * with getInt would be truncated, an unsigned INTEGER overflow.
+		 */
+		private boolean holds(int sqlType, boolean signed) {
+			if (this instanceof ObjectColumn) {
+				return true;
+			}
+			switch (sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+				return !(this instanceof StringColumn);
+			case Types.INTEGER:
+				return (this instanceof IntColumn) ? signed : !(this instanceof StringColumn);
+			case Types.BIGINT:
+				return (this instanceof LongColumn) && signed;
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return this instanceof DoubleColumn;
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return this instanceof StringColumn;
+			default:
+				return false;
+			}
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * Returns the SQL type of the column, as defined by
+		 * {@link java.sql.Types}.
+		 */
+		public int getSqlType() {
+			return sqlType;
+		}
+
+		public boolean isNull(int row) {
+			int word = row >>> 6;
+			return word < nulls.length && (nulls[word] & (1L << row)) != 0;
+		}
+
+		/**
+		 * Returns the value of the row, boxed, or <code>null</code>.
+		 */
+		public abstract Object getObject(int row);
+
+		abstract void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException;
+
+		abstract void trim(int rowCount);
+
+		void setNull(int row) {
+			if (row >>> 6 >= nulls.length) {
+				nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (row >>> 6) + 1));
+			}
+			nulls[row >>> 6] |= 1L << row;
+		}
+
+		static int grow(int length) {
+			return Math.max(length * 2, INITIAL_CAPACITY);
+		}
+	}
+
+	public static final class IntColumn extends Column {
+		private int[] values = new int[0];
+
+		private IntColumn(String label, int sqlType) {
+			super(label, sqlType);
+		}
+
+		public int getInt(int row) {
+			return values[row];
+		}
+
+		public int[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : Integer.valueOf(values[row]);
+		}
+
+		@Override
+		void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = rs.getInt(column);
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		void trim(int rowCount) {
+			values = Arrays.copyOf(values, rowCount);
+		}
+	}
+
+	public static final class LongColumn extends Column {
+		private long[] values = new long[0];
+
+		private LongColumn(String label, int sqlType) {
+			super(label, sqlType);
+		}
+
+		public long getLong(int row) {
+			return values[row];
+		}
+
+		public long[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : Long.valueOf(values[row]);
+		}
+
+		@Override
+		void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = rs.getLong(column);
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		void trim(int rowCount) {
+			values = Arrays.copyOf(values, rowCount);
+		}
+	}
+
+	public static final class DoubleColumn extends Column {
+		private double[] values = new double[0];
+
+		private DoubleColumn(String label, int sqlType) {
+			super(label, sqlType);
+		}
+
+		public double getDouble(int row) {
+			return values[row];
+		}
+
+		public double[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return isNull(row) ? null : Double.valueOf(values[row]);
+		}
+
+		@Override
+		void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = rs.getDouble(column);
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		void trim(int rowCount) {
+			values = Arrays.copyOf(values, rowCount);
+		}
+	}
+
+	/**
+	 * A string column stored as codes into the dictionary of its distinct
+	 * values, in the order they were first read. Null values have the code
+	 * -1.
+	 */
+	public static final class StringColumn extends Column {
+		private int[] codes = new int[0];
+		private final ArrayList<String> dictionary = new ArrayList<String>();
+		// Only needed while rows are appended
+		private Map<String, Integer> dictionaryCodes = new HashMap<String, Integer>();
+
+		private StringColumn(String label, int sqlType) {
+			super(label, sqlType);
+		}
+
+		public String getString(int row) {
+			int code = codes[row];
+			return (code < 0) ? null : dictionary.get(code);
+		}
+
+		public int getCode(int row) {
+			return codes[row];
+		}
+
+		public int[] getCodes() {
+			return codes;
+		}
+
+		public List<String> getDictionary() {
+			return Collections.unmodifiableList(dictionary);
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return getString(row);
+		}
+
+		@Override
+		void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException {
+			if (row == codes.length) {
+				codes = Arrays.copyOf(codes, grow(codes.length));
+			}
+			String value = rs.getString(column);
+			if (value == null) {
+				codes[row] = -1;
+				setNull(row);
+				return;
+			}
+
+			Integer code = dictionaryCodes.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				dictionaryCodes.put(value, code);
+			}
+			codes[row] = code;
+		}
+
+		@Override
+		void trim(int rowCount) {
+			codes = Arrays.copyOf(codes, rowCount);
+			dictionary.trimToSize();
+			dictionaryCodes = null;
+		}
+	}
+
+	public static final class ObjectColumn extends Column {
+		private Object[] values = new Object[0];
+
+		private ObjectColumn(String label, int sqlType) {
+			super(label, sqlType);
+		}
+
+		public Object[] getValues() {
+			return values;
+		}
+
+		@Override
+		public Object getObject(int row) {
+			return values[row];
+		}
+
+		@Override
+		void append(ResultSet rs, RowSchema schema, int column, int row) throws SQLException {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = schema.getObject(rs, column);
+			if (values[row] == null) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		void trim(int rowCount) {
+			values = Arrays.copyOf(values, rowCount);
+		}
+	}
+
+}
@@ -2,7 +2,6 @@ package com.lemondo.commons.db.processor;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -13,11 +12,28 @@ import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONWriter;
 
 import com.lemondo.commons.db.exception.DataProcessingException;
 
-public class JsonDataProcessor implements DataProcessor<JSONObject, JSONArray> {
+public class JsonDataProcessor implements SchemaDataProcessor<JSONObject, JSONArray> {
+
+	private final int flushThreshold;
+
+	public JsonDataProcessor() {
+		this(JsonRowWriter.DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/**
+	 * @param flushThreshold
+	 *            the number of bytes written rows are buffered up to before
+	 *            the stream is flushed
+	 */
+	public JsonDataProcessor(int flushThreshold) {
+		if (flushThreshold < 1) {
+			throw new IllegalArgumentException("Flush threshold must be positive");
+		}
+		this.flushThreshold = flushThreshold;
+	}
 
 	@Override
 	public Map<String, Object> bodyAsMap(JSONObject body) throws DataProcessingException {
@@ -57,36 +73,51 @@ public class JsonDataProcessor implements DataProcessor<JSONObject, JSONArray> {
 
 	@Override
 	public JSONArray readAll(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		return readAll(rs, new RowSchema(rsmd, numColumns));
+	}
+
+	/**
+	 * Reads the row into a map sized for the columns, leaving out null values
+	 * like {@link JSONObject#put(String, Object)} does.
+	 */
+	@Override
+	public JSONObject readRow(ResultSet rs, RowSchema schema) throws SQLException {
+		int numColumns = schema.getColumnCount();
+		Map<String, Object> result = new HashMap<String, Object>(schema.getMapCapacity());
+		for (int i = 1; i <= numColumns; i++) {
+			Object value = schema.getObject(rs, i);
+			if (value != null) {
+				result.put(schema.getColumnLabel(i), value);
+			}
+		}
+		return new JSONObject(result);
+	}
+
+	@Override
+	public JSONArray readAll(ResultSet rs, RowSchema schema) throws SQLException {
 		JSONArray result = new JSONArray();
 		while (rs.next()) {
-			result.put(readRow(rs, rsmd, numColumns));
+			result.put(readRow(rs, schema));
 		}
 		return result;
 	}
 
+	/**
+	 * Writes the rows with a {@link JsonRowWriter}, in UTF-8, flushing the
+	 * stream whenever the flush threshold is reached.
+	 */
 	@Override
 	public void writeRows(OutputStream out, ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
-		OutputStreamWriter ow = new OutputStreamWriter(out);
-		JSONWriter jw = new JSONWriter(ow);
-
 		try {
-			jw.array();
-			while (rs.next()) {
-				jw.object();
-				for (int i = 1; i <= numColumns; i++) {
-					jw.key(rsmd.getColumnLabel(i)).value(rs.getObject(i));
-				}
-				jw.endObject();
-				ow.flush();
-			}
-			jw.endArray();
-			ow.flush();
-			ow.close();
-		} catch (JSONException e) {
-			throw new DataProcessingException("Cannot write into the JSONWriter", e);
+			new JsonRowWriter(out, rsmd, numColumns, flushThreshold).writeRows(rs);
 		} catch (IOException e) {
 			throw new DataProcessingException("Cannot flush the OutputStream", e);
 		}
 	}
 
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		writeRows(out, rs, schema.getMetaData(), schema.getColumnCount());
+	}
+
 }
@@ -0,0 +1,403 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONArray;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * Writes the rows of a result set as a JSON array of objects in UTF-8, the
+ * way {@link org.json.JSONWriter} writes them, straight into a byte buffer.
+ * Column labels are quoted and encoded once, integer and string columns are
+ * read without boxing where possible, and the buffer is written and flushed
+ * when it reaches the flush threshold rather than after every row.
+ * <p>
+ * Strings are escaped like {@link org.json.JSONObject#quote(String)} and
+ * numbers are formatted like <code>JSONObject.numberToString</code>. Values
+ * of other types are formatted by <code>org.json</code> itself.
+ */
+public class JsonRowWriter {
+
+	public static final int DEFAULT_FLUSH_THRESHOLD = 8192;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	/*
+	 * The longest encoding of a single char, a \\u escape.
+	 */
+	private static final int MAX_CHAR_BYTES = 6;
+
+	private static final int OBJECT = 0;
+	private static final int STRING = 1;
+	private static final int INTEGER = 2;
+
+	private final OutputStream out;
+	private final int numColumns;
+	private final byte[][] labels;
+	private final int[] kinds;
+	private final byte[] buffer;
+	private int count;
+
+	public JsonRowWriter(OutputStream out, ResultSetMetaData rsmd, int numColumns, int flushThreshold) throws SQLException, DataProcessingException {
+		if (flushThreshold < 1) {
+			throw new IllegalArgumentException("Flush threshold must be positive");
+		}
+		this.out = out;
+		this.numColumns = numColumns;
+		this.labels = new byte[numColumns + 1][];
+		this.kinds = new int[numColumns + 1];
+		this.buffer = new byte[Math.max(flushThreshold, 64)];
+
+		Set<String> seen = new HashSet<String>();
+		for (int i = 1; i <= numColumns; i++) {
+			String label = rsmd.getColumnLabel(i);
+			if (!seen.add(label)) {
+				throw new DataProcessingException("Duplicate key \"" + label + "\"");
+			}
+
+			/*
+			 * The label with the comma or brace before it and the colon after
+			 * it, as written by the JSONWriter.
+			 */
+			StringBuilder key = new StringBuilder();
+			key.append((i == 1) ? '{' : ',');
+			key.append(quote(label)).append(':');
+			labels[i] = key.toString().getBytes(UTF8);
+			kinds[i] = kindOf(rsmd, i);
+		}
+	}
+
+	public JsonRowWriter(OutputStream out, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		this(out, rsmd, numColumns, DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/*
+	 * Columns whose values the JDBC driver returns as Strings or as Integers
+	 * and Longs, so reading them with getString or getLong gives the same
+	 * JSON as getObject. TINYINT is left out since it may be returned as a
+	 * Boolean, unsigned BIGINT since it may overflow a long.
+	 */
+	private static int kindOf(ResultSetMetaData rsmd, int column) throws SQLException {
+		switch (rsmd.getColumnType(column)) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return STRING;
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			return INTEGER;
+		case Types.BIGINT:
+			return rsmd.isSigned(column) ? INTEGER : OBJECT;
+		default:
+			return OBJECT;
+		}
+	}
+
+	/**
+	 * Writes all remaining rows of the result set as a JSON array, then
+	 * flushes and closes the stream.
+	 */
+	public void writeRows(ResultSet rs) throws SQLException, IOException, DataProcessingException {
+		write('[');
+		boolean first = true;
+		while (rs.next()) {
+			if (!first) {
+				write(',');
+			}
+			writeRow(rs);
+			first = false;
+		}
+		write(']');
+
+		drain();
+		out.close();
+	}
+
+	private void writeRow(ResultSet rs) throws SQLException, IOException, DataProcessingException {
+		if (numColumns == 0) {
+			write('{');
+		}
+		for (int i = 1; i <= numColumns; i++) {
+			write(labels[i]);
+			switch (kinds[i]) {
+			case STRING:
+				String string = rs.getString(i);
+				if (string == null) {
+					write(NULL);
+				} else {
+					writeString(string);
+				}
+				break;
+			case INTEGER:
+				long number = rs.getLong(i);
+				if (rs.wasNull()) {
+					write(NULL);
+				} else {
+					writeLong(number);
+				}
+				break;
+			default:
+				writeValue(rs.getObject(i));
+			}
+		}
+		write('}');
+	}
+
+	private void writeValue(Object value) throws IOException, DataProcessingException {
+		if (value == null) {
+			write(NULL);
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			writeLong(((Number) value).longValue());
+		} else if (value instanceof Number) {
+			writeAscii(numberToString((Number) value));
+		} else if (value instanceof Boolean) {
+			write(((Boolean) value) ? TRUE : FALSE);
+		} else if (value instanceof java.util.Date) {
+			writeString(value.toString());
+		} else {
+			/*
+			 * Let org.json format anything else, as the value of a single
+			 * element array.
+			 */
+			String array = new JSONArray().put(value).toString();
+			write(array.substring(1, array.length() - 1).getBytes(UTF8));
+		}
+	}
+
+	/*
+	 * The same as JSONObject.numberToString: trailing zeros of decimals are
+	 * removed, and non-finite numbers are rejected.
+	 */
+	private static String numberToString(Number number) throws DataProcessingException {
+		if ((number instanceof Double && (((Double) number).isInfinite() || ((Double) number).isNaN()))
+				|| (number instanceof Float && (((Float) number).isInfinite() || ((Float) number).isNaN()))) {
+			throw new DataProcessingException("JSON does not allow non-finite numbers.");
+		}
+
+		String string = number.toString();
+		if (string.indexOf('.') > 0 && string.indexOf('e') < 0 && string.indexOf('E') < 0) {
+			int end = string.length();
+			while (string.charAt(end - 1) == '0') {
+				end--;
+			}
+			if (string.charAt(end - 1) == '.') {
+				end--;
+			}
+			string = string.substring(0, end);
+		}
+		return string;
+	}
+
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeAscii(Long.toString(value));
+			return;
+		}
+
+		ensure(20);
+		if (value < 0) {
+			buffer[count++] = '-';
+			value = -value;
+		}
+		int start = count;
+		do {
+			buffer[count++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+
+		for (int i = start, j = count - 1; i < j; i++, j--) {
+			byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+	}
+
+	/*
+	 * Quotes the string like JSONObject.quote and encodes it in UTF-8 like an
+	 * OutputStreamWriter, replacing unpaired surrogates with '?'.
+	 */
+	private void writeString(String string) throws IOException {
+		write('"');
+		char c = 0;
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			if (count + MAX_CHAR_BYTES > buffer.length) {
+				drain();
+			}
+
+			char b = c;
+			c = string.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				buffer[count++] = '\\';
+				buffer[count++] = (byte) c;
+				break;
+			case '/':
+				if (b == '<') {
+					buffer[count++] = '\\';
+				}
+				buffer[count++] = '/';
+				break;
+			case '\b':
+				writeEscape('b');
+				break;
+			case '\t':
+				writeEscape('t');
+				break;
+			case '\n':
+				writeEscape('n');
+				break;
+			case '\f':
+				writeEscape('f');
+				break;
+			case '\r':
+				writeEscape('r');
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					buffer[count++] = '\\';
+					buffer[count++] = 'u';
+					buffer[count++] = HEX[(c >> 12) & 0xF];
+					buffer[count++] = HEX[(c >> 8) & 0xF];
+					buffer[count++] = HEX[(c >> 4) & 0xF];
+					buffer[count++] = HEX[c & 0xF];
+				} else if (c < 0x80) {
+					buffer[count++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[count++] = (byte) (0xC0 | (c >> 6));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, string.charAt(++i));
+					c = string.charAt(i);
+					buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					buffer[count++] = '?';
+				} else {
+					buffer[count++] = (byte) (0xE0 | (c >> 12));
+					buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+		write('"');
+	}
+
+	private void writeEscape(char c) {
+		buffer[count++] = '\\';
+		buffer[count++] = (byte) c;
+	}
+
+	private static String quote(String string) {
+		if (string == null || string.length() == 0) {
+			return "\"\"";
+		}
+
+		StringBuilder result = new StringBuilder(string.length() + 4);
+		result.append('"');
+		char c = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char b = c;
+			c = string.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				result.append('\\').append(c);
+				break;
+			case '/':
+				if (b == '<') {
+					result.append('\\');
+				}
+				result.append(c);
+				break;
+			case '\b':
+				result.append("\\b");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\f':
+				result.append("\\f");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					String hex = "000" + Integer.toHexString(c);
+					result.append("\\u").append(hex.substring(hex.length() - 4));
+				} else {
+					result.append(c);
+				}
+			}
+		}
+		return result.append('"').toString();
+	}
+
+	private void writeAscii(String string) throws IOException {
+		ensure(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			buffer[count++] = (byte) string.charAt(i);
+		}
+	}
+
+	private void write(int b) throws IOException {
+		ensure(1);
+		buffer[count++] = (byte) b;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length) {
+			drain();
+			out.write(bytes);
+			return;
+		}
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, count, bytes.length);
+		count += bytes.length;
+	}
+
+	private void ensure(int length) throws IOException {
+		if (count + length > buffer.length) {
+			drain();
+		}
+	}
+
+	/*
+	 * Writes the buffered bytes and flushes the stream, so that readers
+	 * receive rows in chunks of about the flush threshold.
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+		out.flush();
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.lemondo.commons.db.processor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * The columns of a result set, resolved once before its rows are read by a
+ * {@link SchemaDataProcessor}: the interned column labels, their SQL types
+ * and how each column is read. String and integer columns are read
+ * with <code>getString</code>, <code>getInt</code> or <code>getLong</code>,
+ * which give the same values as <code>getObject</code> for these types, other
+ * columns with <code>getObject</code>. Column indexes are 1-based, as in JDBC.
+ */
+public final class RowSchema {
+
+	private static final int OBJECT = 0;
+	private static final int STRING = 1;
+	private static final int INT = 2;
+	private static final int LONG = 3;
+
+	private final ResultSetMetaData metaData;
+	private final String[] labels;
+	private final int[] types;
+	private final int[] kinds;
+
+	public RowSchema(ResultSetMetaData rsmd, int numColumns) throws SQLException {
+		this.metaData = rsmd;
+		this.labels = new String[numColumns + 1];
+		this.types = new int[numColumns + 1];
+		this.kinds = new int[numColumns + 1];
+		for (int i = 1; i <= numColumns; i++) {
+			labels[i] = rsmd.getColumnLabel(i).intern();
+			types[i] = rsmd.getColumnType(i);
+			kinds[i] = kindOf(rsmd, i, types[i]);
+		}
+	}
+
+	/*
+	 * Unsigned integers are read as longs, since the driver returns them as
+	 * Longs, unsigned BIGINTs with getObject since they may overflow a long.
+	 * TINYINT is left out since it may be returned as a Boolean.
+	 */
+	private static int kindOf(ResultSetMetaData rsmd, int column, int type) throws SQLException {
+		switch (type) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return STRING;
+		case Types.SMALLINT:
+			return INT;
+		case Types.INTEGER:
+			return rsmd.isSigned(column) ? INT : LONG;
+		case Types.BIGINT:
+			return rsmd.isSigned(column) ? LONG : OBJECT;
+		default:
+			return OBJECT;
+		}
+	}
+
+	public ResultSetMetaData getMetaData() {
+		return metaData;
+	}
+
+	public int getColumnCount() {
+		return labels.length - 1;
+	}
+
+	public String getColumnLabel(int column) {
+		return labels[column];
+	}
+
+	public int getColumnType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * Returns the value of the column in the current row of the result set,
+	 * or <code>null</code> if it is SQL NULL.
+	 */
+	public Object getObject(ResultSet rs, int column) throws SQLException {
+		/*
+		 * A switch rather than a getter object per column, whose call site
+		 * would see every kind of getter in a wide row and not be inlined.
+		 */
+		switch (kinds[column]) {
+		case STRING:
+			return rs.getString(column);
+		case INT:
+			int intValue = rs.getInt(column);
+			return rs.wasNull() ? null : Integer.valueOf(intValue);
+		case LONG:
+			long longValue = rs.getLong(column);
+			return rs.wasNull() ? null : Long.valueOf(longValue);
+		default:
+			return rs.getObject(column);
+		}
+	}
+
+	/**
+	 * Returns the initial capacity of a hash map holding a row without being
+	 * resized.
+	 */
+	public int getMapCapacity() {
+		return (int) (getColumnCount() / 0.75f) + 1;
+	}
+
+}
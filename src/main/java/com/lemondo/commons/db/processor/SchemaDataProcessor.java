@@ -0,0 +1,22 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * A {@link DataProcessor} reading rows with a {@link RowSchema} resolved once
+ * per result set, instead of looking up the result set metadata for every
+ * row. Other processors are adapted by {@link SchemaProcessorAdapter}.
+ */
+public interface SchemaDataProcessor<T, L> extends DataProcessor<T, L> {
+
+	public T readRow(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException;
+
+	public L readAll(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException;
+
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException;
+
+}
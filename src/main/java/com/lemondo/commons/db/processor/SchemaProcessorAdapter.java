@@ -0,0 +1,69 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+/**
+ * Adapts a {@link DataProcessor} that does not use a {@link RowSchema}, by
+ * passing the metadata of the schema to it.
+ */
+public class SchemaProcessorAdapter<T, L> implements SchemaDataProcessor<T, L> {
+
+	private final DataProcessor<T, L> processor;
+
+	public SchemaProcessorAdapter(DataProcessor<T, L> processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * Returns the processor itself if it already accepts a schema, otherwise
+	 * an adapter of it.
+	 */
+	public static <T, L> SchemaDataProcessor<T, L> adapt(DataProcessor<T, L> processor) {
+		if (processor instanceof SchemaDataProcessor) {
+			return (SchemaDataProcessor<T, L>) processor;
+		}
+		return new SchemaProcessorAdapter<T, L>(processor);
+	}
+
+	@Override
+	public Map<String, Object> bodyAsMap(T body) throws DataProcessingException {
+		return processor.bodyAsMap(body);
+	}
+
+	@Override
+	public T readRow(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		return processor.readRow(rs, rsmd, numColumns);
+	}
+
+	@Override
+	public L readAll(ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		return processor.readAll(rs, rsmd, numColumns);
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, ResultSetMetaData rsmd, int numColumns) throws SQLException, DataProcessingException {
+		processor.writeRows(out, rs, rsmd, numColumns);
+	}
+
+	@Override
+	public T readRow(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		return processor.readRow(rs, schema.getMetaData(), schema.getColumnCount());
+	}
+
+	@Override
+	public L readAll(ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		return processor.readAll(rs, schema.getMetaData(), schema.getColumnCount());
+	}
+
+	@Override
+	public void writeRows(OutputStream out, ResultSet rs, RowSchema schema) throws SQLException, DataProcessingException {
+		processor.writeRows(out, rs, schema.getMetaData(), schema.getColumnCount());
+	}
+
+}
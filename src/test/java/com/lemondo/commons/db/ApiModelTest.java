@@ -0,0 +1,138 @@
+package com.lemondo.commons.db;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.exception.UniqueKeyViolation;
+import com.lemondo.commons.db.meta.ProcMetaData;
+import com.lemondo.commons.db.meta.ProcParam;
+
+public class ApiModelTest extends TestCase {
+
+	/*
+	 * Stands in for the insert and update procedures: the record always
+	 * exists, and updates affect as many rows as the queued counts say.
+	 */
+	private static class ExistingRecordModel extends BasicApiModel {
+		private final int[] updateCounts;
+		private int updates;
+
+		private ExistingRecordModel(int... updateCounts) {
+			super(null);
+			this.updateCounts = updateCounts;
+			setInsertApi(new ProcMetaData("ins_test", new ArrayList<ProcParam>()));
+			setUpdateApi(new ProcMetaData("upd_test", new ArrayList<ProcParam>()));
+		}
+
+		@Override
+		public void create(Object key, Map<String, Object> body) throws UniqueKeyViolation {
+			throw new UniqueKeyViolation("Record with given key already exists");
+		}
+
+		@Override
+		public int update(Object key, Map<String, Object> body) {
+			return updateCounts[updates++];
+		}
+	}
+
+	public ApiModelTest(String name) {
+		super(name);
+	}
+
+	public void testUpsertOfConcurrentlyCreatedRecord() throws Exception {
+		Map<String, Object> body = new HashMap<String, Object>();
+		body.put("loginname", "user");
+
+		ExistingRecordModel model = new ExistingRecordModel(0, 1);
+		assertEquals(UpsertResult.UPDATED, model.upsert("E001", body));
+		assertEquals(2, model.updates);
+
+		// The second update changes nothing, but the record exists
+		model = new ExistingRecordModel(0, 0);
+		assertEquals(UpsertResult.UNKNOWN, model.upsert("E001", body));
+		assertEquals(2, model.updates);
+	}
+
+	public void testBulkOperationsPrepareTheCallOnce() throws Exception {
+		FakeJdbc jdbc = new FakeJdbc();
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		helper.setStatementCacheSize(0);
+		try {
+			List<ProcParam> params = new ArrayList<ProcParam>();
+			params.add(new ProcParam("key", Types.VARCHAR));
+			params.add(new ProcParam("loginname", Types.VARCHAR));
+			BasicApiModel model = new BasicApiModel(helper);
+			model.setInsertApi(new ProcMetaData("ins_test", params));
+			model.setDeleteApi(new ProcMetaData("del_test", params, Types.INTEGER));
+
+			Map<String, Map<String, Object>> bodies = new LinkedHashMap<String, Map<String, Object>>();
+			for (int i = 0; i < 3; i++) {
+				Map<String, Object> body = new HashMap<String, Object>();
+				body.put("loginname", "user" + i);
+				bodies.put("E00" + i, body);
+			}
+
+			// A procedure without a return value is sent as one batch
+			model.createAll(bodies);
+			assertEquals(1, jdbc.getStatementCount());
+			assertEquals(1, jdbc.getExecutionCount());
+
+			model.deleteAll(Arrays.asList("E000", "E001", "E002"));
+			assertEquals(2, jdbc.getStatementCount());
+			assertEquals(4, jdbc.getExecutionCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testReadManyPreparesTheCallOnce() throws Exception {
+		FakeJdbc jdbc = new FakeJdbc();
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		helper.setStatementCacheSize(0);
+		try {
+			List<ProcParam> params = new ArrayList<ProcParam>();
+			params.add(new ProcParam("key", Types.VARCHAR));
+			BasicApiModel model = new BasicApiModel(helper);
+			model.setReadApi(new ProcMetaData("read_test", params));
+
+			Map<Object, Map<String, Object>> rows = model.readMany(Arrays.asList("E001", "E002", "E001"));
+			assertEquals(2, rows.size());
+			assertEquals("E002", rows.get("E002").get("value"));
+			assertEquals(1, jdbc.getStatementCount());
+			assertEquals(2, jdbc.getExecutionCount());
+			assertEquals(0, jdbc.getOpenResultSetCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testListProcedureCountsThroughCountFunction() throws Exception {
+		BasicApiModel model = new BasicApiModel(null);
+		model.setListApi(new ProcMetaData("list_test", new ArrayList<ProcParam>()));
+		try {
+			model.count(null);
+			fail("Counted the rows of a list procedure without a count function");
+		} catch (IllegalStateException e) {
+		}
+
+		FakeJdbc jdbc = new FakeJdbc();
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			model = new BasicApiModel(helper);
+			model.setListApi(new ProcMetaData("list_test", new ArrayList<ProcParam>()));
+			model.setCountApi(new ProcMetaData("count_test", new ArrayList<ProcParam>(), Types.BIGINT));
+			assertEquals(0, model.count(null));
+			assertEquals(1, jdbc.getExecutionCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.lemondo.commons.db;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.meta.TableMetaData;
+
+public class AsyncModelTest extends TestCase {
+
+	private FakeJdbc jdbc;
+	private TableMetaData metaData;
+	private ExecutorService executor;
+
+	public AsyncModelTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+
+		Map<String, Integer> columnDef = new HashMap<String, Integer>();
+		columnDef.put("loginname", Types.VARCHAR);
+		metaData = new TableMetaData("test_table", columnDef, PrimarykeyType.VARCHAR, false);
+
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+
+		super.tearDown();
+	}
+
+	/*
+	 * Reads concurrently; every read returns its own key, see FakeJdbc.
+	 */
+	private static void readConcurrently(AsyncModel<Map<String, Object>, List<Map<String, Object>>> async) throws Exception {
+		List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+		for (int i = 0; i < 32; i++) {
+			futures.add(async.read("E" + i));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals("E" + i, futures.get(i).get().get("value"));
+		}
+	}
+
+	public void testSingleConnectionTasksRunOneAtATime() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			readConcurrently(new AsyncModel<Map<String, Object>, List<Map<String, Object>>>(new BasicTableModel(metaData, helper), executor));
+			assertEquals(1, jdbc.getMaxRunningQueryCount());
+			// Only the statement kept by the cache is open
+			assertEquals(1, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testTasksOfModelsSharingAConnectionAreQueued() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		Executor counting = new Executor() {
+			@Override
+			public void execute(final Runnable task) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+						try {
+							task.run();
+						} finally {
+							running.decrementAndGet();
+						}
+					}
+				});
+			}
+		};
+
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+			for (int i = 0; i < 2; i++) {
+				AsyncModel<Map<String, Object>, List<Map<String, Object>>> async = new AsyncModel<Map<String, Object>, List<Map<String, Object>>>(
+						new BasicTableModel(metaData, helper), counting);
+				for (int j = 0; j < 16; j++) {
+					futures.add(async.read("E" + j));
+				}
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				assertEquals("E" + (i % 16), futures.get(i).get().get("value"));
+			}
+
+			// Waiting tasks did not occupy the executor; only a completing task
+			// and the next one it hands over to may overlap
+			assertTrue(maxRunning.get() <= 2);
+			assertEquals(1, jdbc.getMaxRunningQueryCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testPooledTasksLeaseTheirOwnConnections() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(0, 4));
+		try {
+			readConcurrently(new AsyncModel<Map<String, Object>, List<Map<String, Object>>>(new BasicTableModel(metaData, helper), executor));
+			assertTrue(jdbc.getMaxRunningQueryCount() <= 4);
+			assertTrue(jdbc.getConnectionCount() <= 4);
+			assertEquals(0, helper.getConnectionPool().getActiveCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testFailureCompletesExceptionally() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			AsyncModel<Map<String, Object>, List<Map<String, Object>>> async = new AsyncModel<Map<String, Object>, List<Map<String, Object>>>(
+					new BasicTableModel(metaData, helper), executor);
+			Map<String, Object> options = new HashMap<String, Object>();
+			options.put("stream", "yes");
+			try {
+				async.list(options).get();
+				fail("Invalid options were accepted");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+
+			// The failed task released the connection for the next one
+			assertEquals(1, async.list(null).get().size());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+}
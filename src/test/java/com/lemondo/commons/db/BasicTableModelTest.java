@@ -1,12 +1,16 @@
 package com.lemondo.commons.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.DriverManager;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -20,6 +24,11 @@ import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.xml.FlatXmlDataSet;
 
 import com.lemondo.commons.db.meta.TableMetaData;
+import com.lemondo.commons.db.processor.BeanDataProcessor;
+import com.lemondo.commons.db.processor.BinaryDataProcessor;
+import com.lemondo.commons.db.processor.BinaryRowReader;
+import com.lemondo.commons.db.processor.ColumnarDataProcessor;
+import com.lemondo.commons.db.processor.ColumnarResult;
 
 public class BasicTableModelTest extends DatabaseTestCase {
 	private static final String LOGIN_PROPERTIES_FILE = "src/test/login.properties";
@@ -109,6 +118,66 @@ public class BasicTableModelTest extends DatabaseTestCase {
 		Assertion.assertEquals(expected, actual);
 	}
 
+	public void testCreateAllWithAutoKey() throws Exception {
+		BasicTableModel m = new BasicTableModel(test2MetaData, helper);
+		m.setBatchSize(2);
+
+		List<Map<String, Object>> bodies = new ArrayList<Map<String, Object>>();
+		for (String data : new String[] { "foo", "bar", "baz" }) {
+			Map<String, Object> body = new HashMap<String, Object>();
+			body.put("data", data);
+			bodies.add(body);
+		}
+
+		List<Object> ids = m.createAll(bodies);
+
+		assertEquals(3, ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(bodies.get(i).get("data"), m.read(ids.get(i)).get("data"));
+		}
+	}
+
+	public void testCreateAllWithMultiRowInsert() throws Exception {
+		BasicTableModel m = new BasicTableModel(test2MetaData, helper);
+		m.setMultiRowInsert(true);
+		m.setMaxPacketSize(200);
+
+		List<Map<String, Object>> bodies = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < 7; i++) {
+			Map<String, Object> body = new HashMap<String, Object>();
+			body.put("data", "row" + i);
+			bodies.add(body);
+		}
+
+		List<Object> ids = m.createAll(bodies);
+
+		assertEquals(7, ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals("row" + i, m.read(ids.get(i)).get("data"));
+		}
+	}
+
+	public void testCreateAll() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Map<String, Object>> bodies = new LinkedHashMap<String, Map<String, Object>>();
+		HashMap<String, Object> body = new HashMap<String, Object>();
+		body.put("empcode", 11);
+		body.put("loginname", "obi_wan_kenobi");
+		body.put("password", "supersecretpassword");
+		body.put("loginenabled", "y");
+		bodies.put("E011", body);
+		body = new HashMap<String, Object>();
+		body.put("loginname", "yoda");
+		bodies.put("E012", body);
+
+		m.createAll(bodies);
+
+		assertEquals("obi_wan_kenobi", m.read("E011").get("loginname"));
+		assertEquals("yoda", m.read("E012").get("loginname"));
+		assertNull(m.read("E012").get("empcode"));
+	}
+
 	public void testUpdate() throws Exception {
 		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
 
@@ -125,6 +194,23 @@ public class BasicTableModelTest extends DatabaseTestCase {
 		assertEquals(0, m.update("E011", body));
 	}
 
+	public void testUpsert() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Object> body = new HashMap<String, Object>();
+		body.put("loginname", "upserted");
+
+		assertEquals(UpsertResult.UPDATED, m.upsert("E001", body));
+		assertEquals("upserted", m.read("E001").get("loginname"));
+
+		body.put("empcode", 11);
+		body.put("password", "pass");
+		body.put("loginenabled", "y");
+		// Connections reporting found rows count an insert like an unchanged row
+		assertEquals(helper.isUseAffectedRows() ? UpsertResult.INSERTED : UpsertResult.UNKNOWN, m.upsert("E011", body));
+		assertEquals("upserted", m.read("E011").get("loginname"));
+	}
+
 	public void testDeleteWithDeactivatedFlag() throws Exception {
 		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
 
@@ -147,6 +233,42 @@ public class BasicTableModelTest extends DatabaseTestCase {
 		Assertion.assertEquals(expected, actual);
 	}
 
+	public void testDeleteAllWithDeactivatedFlag() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+		m.setMaxInListSize(1);
+
+		List<String> keys = new ArrayList<String>();
+		keys.add("E999");
+		keys.add("D001");
+		keys.add("E011");
+
+		assertEquals(1, m.deleteAll(keys));
+
+		IDataSet actual = getConnection().createDataSet(new String[] { "test_table" });
+		IDataSet expected = new FlatXmlDataSet(new FileInputStream("src/test/data/out-testDeleteWithDeactivatedFlag.xml"));
+		Assertion.assertEquals(expected, actual);
+	}
+
+	public void testUpdateAll() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Map<String, Object>> bodies = new LinkedHashMap<String, Map<String, Object>>();
+		HashMap<String, Object> body = new HashMap<String, Object>();
+		body.put("loginname", "obi_wan_kenobi");
+		body.put("password", "supersecretpassword");
+		bodies.put("E001", body);
+		bodies.put("E011", body);
+
+		Map<Object, Integer> counts = m.updateAll(bodies);
+
+		assertEquals(new Integer(1), counts.get("E001"));
+		assertEquals(new Integer(0), counts.get("E011"));
+
+		IDataSet actual = getConnection().createDataSet(new String[] { "test_table" });
+		IDataSet expected = new FlatXmlDataSet(new FileInputStream("src/test/data/out-testUpdate.xml"));
+		Assertion.assertEquals(expected, actual);
+	}
+
 	public void testRead() throws Exception {
 		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
 
@@ -171,6 +293,35 @@ public class BasicTableModelTest extends DatabaseTestCase {
 		}
 	}
 
+	public void testReadMany() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		List<String> keys = new ArrayList<String>();
+		keys.add("E999");
+		keys.add("D001");
+		keys.add("E001");
+		keys.add("E011");
+
+		Map<Object, Map<String, Object>> result = m.readMany(keys);
+
+		assertEquals(keys, new ArrayList<Object>(result.keySet()));
+		assertEquals("E999", result.get("E999").get("id"));
+		assertEquals("foo", result.get("E001").get("loginname"));
+		assertNull(result.get("D001"));
+		assertNull(result.get("E011"));
+	}
+
+	public void testCountAndExists() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		assertEquals(m.list(options).size(), m.count(options));
+
+		assertTrue(m.exists("E001"));
+		assertFalse(m.exists("D001"));
+		assertFalse(m.exists("E011"));
+	}
+
 	public void testListAsListOfMap() throws Exception {
 		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
 
@@ -212,6 +363,211 @@ public class BasicTableModelTest extends DatabaseTestCase {
 		assertEquals("n", row.get("loginenabled"));
 	}
 
+	public void testListPage() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+		options.put("order", sortFields);
+		options.put("limit", 1);
+
+		Page<List<Map<String, Object>>> page = m.listPage(options);
+		assertEquals(1, page.getItems().size());
+		assertEquals("E999", page.getItems().get(0).get("id"));
+		assertTrue(page.hasNext());
+
+		options.put("after", page.getNext());
+		page = m.listPage(options);
+		assertEquals(1, page.getItems().size());
+		assertEquals("E001", page.getItems().get(0).get("id"));
+
+		options.put("after", page.getNext());
+		page = m.listPage(options);
+		assertEquals(0, page.getItems().size());
+		assertFalse(page.hasNext());
+
+		options.remove("after");
+		options.put("offset", 1);
+		List<Map<String, Object>> result = m.list(options);
+		assertEquals(1, result.size());
+		assertEquals("E001", result.get(0).get("id"));
+	}
+
+	public void testListPageWithDuplicateAndNullSortValues() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		HashMap<String, Object> body = new HashMap<String, Object>();
+		body.put("loginenabled", "n");
+		m.create("E500", body);
+		body.put("loginenabled", "y");
+		m.create("E700", body);
+		body.remove("loginenabled");
+		body.put("loginname", "han");
+		m.create("E300", body);
+
+		for (String order : new String[] { "loginenabled", "loginenabled DESC" }) {
+			Map<String, Object> options = new HashMap<String, Object>();
+			List<String> sortFields = new ArrayList<String>();
+			sortFields.add(order);
+			options.put("order", sortFields);
+			options.put("limit", 1);
+
+			List<Object> ids = new ArrayList<Object>();
+			Page<List<Map<String, Object>>> page = m.listPage(options);
+			while (!page.getItems().isEmpty()) {
+				ids.add(page.getItems().get(0).get("id"));
+				options.put("after", page.getNext());
+				page = m.listPage(options);
+			}
+
+			if (order.endsWith("DESC")) {
+				assertEquals(Arrays.<Object> asList("E001", "E700", "E500", "E999", "E300"), ids);
+			} else {
+				assertEquals(Arrays.<Object> asList("E300", "E500", "E999", "E001", "E700"), ids);
+			}
+		}
+	}
+
+	public void testStream() throws Exception {
+		BasicTableModel m = new BasicTableModel(testTable01MetaData, helper);
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+		options.put("order", sortFields);
+
+		RowStream<Map<String, Object>> rows = m.stream(options);
+		try {
+			assertTrue(rows.hasNext());
+			assertEquals("E999", rows.next().get("id"));
+			assertEquals("E001", rows.next().get("id"));
+			assertFalse(rows.hasNext());
+		} finally {
+			rows.close();
+		}
+
+		rows = m.stream(options);
+		rows.next();
+		rows.close();
+		assertFalse(rows.hasNext());
+		assertEquals("foo", m.read("E001").get("loginname"));
+	}
+
+	public void testListInBinaryStream() throws Exception {
+		TableModel<Map<String, Object>, List<Map<String, Object>>> m = new TableModel<Map<String, Object>, List<Map<String, Object>>>(
+				testTable01MetaData, helper, new BinaryDataProcessor());
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+		options.put("order", sortFields);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m.list(out, options);
+
+		BinaryRowReader reader = new BinaryRowReader(new ByteArrayInputStream(out.toByteArray()));
+		try {
+			assertEquals("id", reader.getColumnLabel(1));
+
+			assertTrue(reader.next());
+			assertEquals("E999", reader.getString(1));
+			Map<String, Object> row = reader.readRow();
+			assertEquals(new Integer(999999), (Integer) row.get("empcode"));
+			assertEquals("baz", row.get("loginname"));
+
+			assertTrue(reader.next());
+			assertEquals("E001", reader.getString(1));
+			assertFalse(reader.next());
+		} finally {
+			reader.close();
+		}
+	}
+
+	public static class Employee {
+		private String id;
+		private int empcode;
+		private String loginname;
+		private String loginenabled;
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public int getEmpcode() {
+			return empcode;
+		}
+
+		public void setEmpcode(int empcode) {
+			this.empcode = empcode;
+		}
+
+		public String getLoginname() {
+			return loginname;
+		}
+
+		public void setLoginname(String loginname) {
+			this.loginname = loginname;
+		}
+
+		public String getLoginenabled() {
+			return loginenabled;
+		}
+
+		public void setLoginenabled(String loginenabled) {
+			this.loginenabled = loginenabled;
+		}
+	}
+
+	public void testListAsBeans() throws Exception {
+		TableModel<Employee, List<Employee>> m = new TableModel<Employee, List<Employee>>(testTable01MetaData, helper,
+				new BeanDataProcessor<Employee>(Employee.class));
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+		options.put("order", sortFields);
+
+		List<Employee> result = m.list(options);
+		assertEquals(2, result.size());
+		assertEquals("E999", result.get(0).getId());
+		assertEquals(999999, result.get(0).getEmpcode());
+		assertEquals("baz", result.get(0).getLoginname());
+		assertEquals("E001", result.get(1).getId());
+		assertEquals("y", result.get(1).getLoginenabled());
+
+		Map<String, Object> body = new BeanDataProcessor<Employee>(Employee.class).bodyAsMap(m.read("E001"));
+		assertEquals("foo", body.get("loginname"));
+		assertEquals(1, body.get("empcode"));
+	}
+
+	public void testListAsColumns() throws Exception {
+		TableModel<Map<String, Object>, ColumnarResult> m = new TableModel<Map<String, Object>, ColumnarResult>(testTable01MetaData, helper,
+				new ColumnarDataProcessor());
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+		options.put("order", sortFields);
+
+		ColumnarResult result = m.list(options);
+		assertEquals(2, result.getRowCount());
+
+		ColumnarResult.IntColumn empcode = (ColumnarResult.IntColumn) result.getColumn("empcode");
+		assertEquals(999999, empcode.getInt(0));
+		assertEquals(1, empcode.getInt(1));
+		assertFalse(empcode.isNull(0));
+
+		ColumnarResult.StringColumn loginname = (ColumnarResult.StringColumn) result.getColumn("loginname");
+		assertEquals("baz", loginname.getString(0));
+		assertEquals("foo", loginname.getString(1));
+		assertEquals("E001", result.getRow(1).get("id"));
+	}
+
 	// TODO: implement testListInOutputStream
 	// public void testListInOutputStream() throws Exception {
 	// fail("Not yet implemented");
@@ -0,0 +1,164 @@
+package com.lemondo.commons.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+public class ConnectionPoolTest extends TestCase {
+
+	private FakeJdbc jdbc;
+	private PoolConfig config;
+
+	public ConnectionPoolTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+		config = new PoolConfig(0, 2);
+		config.setMaxWaitMillis(5000);
+		config.setIdleTimeoutMillis(0);
+	}
+
+	public void testConnectionsAreReused() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		try {
+			for (int i = 0; i < 5; i++) {
+				helper.openSession().close();
+			}
+			ConnectionPool pool = helper.getConnectionPool();
+			assertEquals(1, jdbc.getConnectionCount());
+			assertEquals(5, pool.getLeaseCount());
+			assertEquals(1, pool.getIdleCount());
+			assertEquals(0, pool.getActiveCount());
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getOpenConnectionCount());
+	}
+
+	public void testLeaseTimesOutWhenExhausted() throws Exception {
+		config.setMaxWaitMillis(50);
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		try {
+			Session first = helper.openSession();
+			Session second = helper.openSession();
+			try {
+				helper.openSession();
+				fail("Leased more connections than the maximum pool size");
+			} catch (SQLException e) {
+			}
+			assertEquals(1, helper.getConnectionPool().getTimeoutCount());
+			assertEquals(2, helper.getConnectionPool().getTotalCount());
+			first.close();
+			second.close();
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testWaitingLeaseGetsReleasedConnection() throws Exception {
+		config.setMaxSize(1);
+		final Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Session held = helper.openSession();
+			Future<Boolean> waiting = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					Session session = helper.openSession();
+					session.close();
+					return true;
+				}
+			});
+			Thread.sleep(50);
+			assertFalse(waiting.isDone());
+
+			held.close();
+			assertTrue(waiting.get());
+			assertEquals(1, jdbc.getConnectionCount());
+			assertTrue(helper.getConnectionPool().getMaxWaitMillis() > 0);
+		} finally {
+			executor.shutdown();
+			helper.cleanup();
+		}
+	}
+
+	public void testClosedConnectionIsReplaced() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		try {
+			Session session = helper.openSession();
+			session.getConnection().close();
+			session.close();
+
+			ConnectionPool pool = helper.getConnectionPool();
+			assertEquals(1, pool.getDestroyedCount());
+			assertEquals(0, pool.getTotalCount());
+
+			session = helper.openSession();
+			assertFalse(session.getConnection().isClosed());
+			session.close();
+			assertEquals(2, pool.getCreatedCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testIdleConnectionsAreEvictedDownToMinimum() throws Exception {
+		config.setMinSize(1);
+		config.setIdleTimeoutMillis(1);
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		try {
+			Session first = helper.openSession();
+			Session second = helper.openSession();
+			first.close();
+			second.close();
+			Thread.sleep(10);
+
+			ConnectionPool pool = helper.getConnectionPool();
+			pool.evictIdleConnections();
+			assertEquals(1, pool.getTotalCount());
+			assertEquals(1, jdbc.getOpenConnectionCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testFirstLeaseFillsToMinimum() throws Exception {
+		config.setMinSize(2);
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		try {
+			ConnectionPool pool = helper.getConnectionPool();
+			assertEquals(0, pool.getTotalCount());
+
+			Session session = helper.openSession();
+			assertEquals(2, pool.getTotalCount());
+			assertEquals(1, pool.getIdleCount());
+			session.close();
+			helper.openSession().close();
+			assertEquals(2, jdbc.getConnectionCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testCleanupClosesThePool() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), config);
+		helper.openSession().close();
+		helper.cleanup();
+
+		assertEquals(0, jdbc.getOpenConnectionCount());
+		try {
+			helper.openSession();
+			fail("Leased a connection from a closed pool");
+		} catch (SQLException e) {
+		}
+	}
+
+}
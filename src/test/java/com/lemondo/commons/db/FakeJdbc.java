@@ -0,0 +1,374 @@
+package com.lemondo.commons.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * In-memory stand-ins for JDBC objects, for tests that do not need a
+ * database. Result sets are built from rows of values. The connections of
+ * {@link #getDataSource()} prepare statements whose queries return the rows
+ * set by {@link #setRows(String[], int[], Object[][])}, or else a single row
+ * with a single column, <code>value</code>, holding the first parameter bound
+ * to the statement.
+ */
+public class FakeJdbc {
+
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final AtomicInteger statements = new AtomicInteger();
+	private final AtomicInteger openStatements = new AtomicInteger();
+	private final AtomicInteger executions = new AtomicInteger();
+	private final AtomicInteger openResultSets = new AtomicInteger();
+	private final AtomicInteger runningQueries = new AtomicInteger();
+	private final AtomicInteger maxRunningQueries = new AtomicInteger();
+	private final AtomicInteger cancellations = new AtomicInteger();
+	private volatile int fetchSize;
+	private volatile String productName = "Fake";
+	private volatile Rows rows;
+
+	private static class Rows {
+		private final String[] labels;
+		private final int[] types;
+		private final Object[][] values;
+
+		private Rows(String[] labels, int[] types, Object[][] values) {
+			this.labels = labels;
+			this.types = types;
+			this.values = values;
+		}
+	}
+
+	public DataSource getDataSource() {
+		return proxy(DataSource.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getConnection")) {
+					return newConnection();
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	public int getOpenConnectionCount() {
+		return openConnections.get();
+	}
+
+	public int getStatementCount() {
+		return statements.get();
+	}
+
+	public int getOpenStatementCount() {
+		return openStatements.get();
+	}
+
+	/**
+	 * Returns the number of statement executions, counting a batch as one.
+	 */
+	public int getExecutionCount() {
+		return executions.get();
+	}
+
+	public int getOpenResultSetCount() {
+		return openResultSets.get();
+	}
+
+	/**
+	 * Returns the largest number of queries that ran at the same time.
+	 */
+	public int getMaxRunningQueryCount() {
+		return maxRunningQueries.get();
+	}
+
+	/**
+	 * Returns the number of times a statement was cancelled.
+	 */
+	public int getCancelCount() {
+		return cancellations.get();
+	}
+
+	/**
+	 * Sets the database product name reported by the connections, e.g.
+	 * <code>MySQL</code>.
+	 */
+	public void setProductName(String productName) {
+		this.productName = productName;
+	}
+
+	/**
+	 * Sets the rows every query returns.
+	 */
+	public void setRows(String[] labels, int[] types, Object[][] rows) {
+		this.rows = new Rows(labels, types, rows);
+	}
+
+	/**
+	 * Returns the fetch size last set on a statement.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	private Connection newConnection() {
+		connections.incrementAndGet();
+		openConnections.incrementAndGet();
+		return proxy(Connection.class, new InvocationHandler() {
+			private boolean closed;
+
+			@Override
+			public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("prepareStatement") || name.equals("prepareCall")) {
+					checkOpen(closed);
+					return newStatement(method.getReturnType());
+				} else if (name.equals("getMetaData")) {
+					return proxy(DatabaseMetaData.class, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							return method.getName().equals("getDatabaseProductName") ? productName : defaultValue(proxy, method, args);
+						}
+					});
+				} else if (name.equals("getAutoCommit") || name.equals("isValid")) {
+					return true;
+				} else if (name.equals("close")) {
+					if (!closed) {
+						closed = true;
+						openConnections.decrementAndGet();
+					}
+					return null;
+				} else if (name.equals("isClosed")) {
+					return closed;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	private Object newStatement(Class<?> type) {
+		statements.incrementAndGet();
+		openStatements.incrementAndGet();
+		return proxy(type, new InvocationHandler() {
+			private final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+			private boolean closed;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.startsWith("execute")) {
+					executions.incrementAndGet();
+				}
+				if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+					checkOpen(closed);
+					synchronized (parameters) {
+						parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+					}
+					return null;
+				} else if (name.equals("setFetchSize")) {
+					fetchSize = (Integer) args[0];
+					return null;
+				} else if (name.equals("clearParameters")) {
+					synchronized (parameters) {
+						parameters.clear();
+					}
+					return null;
+				} else if (name.equals("executeQuery")) {
+					checkOpen(closed);
+					int running = runningQueries.incrementAndGet();
+					int max;
+					while (running > (max = maxRunningQueries.get()) && !maxRunningQueries.compareAndSet(max, running)) {
+					}
+					try {
+						// Leaves room for another thread to rebind a shared statement
+						Thread.sleep(1);
+					} finally {
+						runningQueries.decrementAndGet();
+					}
+					Rows result = rows;
+					openResultSets.incrementAndGet();
+					if (result != null) {
+						return newResultSet(result.labels, result.types, result.values, openResultSets, (Statement) proxy);
+					}
+					Object value;
+					synchronized (parameters) {
+						value = parameters.get(1);
+					}
+					return newResultSet(new String[] { "value" }, new int[] { Types.JAVA_OBJECT }, new Object[][] { { value } }, openResultSets, (Statement) proxy);
+				} else if (name.equals("cancel")) {
+					cancellations.incrementAndGet();
+					return null;
+				} else if (name.equals("close")) {
+					if (!closed) {
+						closed = true;
+						openStatements.decrementAndGet();
+					}
+					return null;
+				} else if (name.equals("isClosed")) {
+					return closed;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * Returns a forward-only result set over the rows, counted as open by
+	 * {@link #getOpenResultSetCount()} until closed.
+	 */
+	public ResultSet resultSet(String[] labels, int[] types, Object[][] rows) {
+		openResultSets.incrementAndGet();
+		return newResultSet(labels, types, rows, openResultSets, null);
+	}
+
+	/**
+	 * Returns a forward-only result set over the rows. Integer columns are
+	 * reported as signed.
+	 */
+	public static ResultSet newResultSet(String[] labels, int[] types, Object[][] rows) {
+		return newResultSet(labels, types, rows, null, null);
+	}
+
+	private static ResultSet newResultSet(final String[] labels, int[] types, final Object[][] rows, final AtomicInteger open, final Statement statement) {
+		final ResultSetMetaData rsmd = newMetaData(labels, types);
+		return proxy(ResultSet.class, new InvocationHandler() {
+			private int row = -1;
+			private boolean wasNull;
+			private boolean closed;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("next")) {
+					checkOpen(closed);
+					return ++row < rows.length;
+				} else if (name.equals("getMetaData")) {
+					return rsmd;
+				} else if (name.equals("getStatement")) {
+					return statement;
+				} else if (name.equals("wasNull")) {
+					return wasNull;
+				} else if (name.equals("close")) {
+					if (!closed && open != null) {
+						open.decrementAndGet();
+					}
+					closed = true;
+					return null;
+				} else if (name.equals("isClosed")) {
+					return closed;
+				} else if (name.equals("findColumn")) {
+					return indexOf(labels, (String) args[0]);
+				} else if (name.startsWith("get") && args != null && args.length == 1) {
+					checkOpen(closed);
+					int column = (args[0] instanceof Integer) ? (Integer) args[0] : indexOf(labels, (String) args[0]);
+					Object value = rows[row][column - 1];
+					wasNull = (value == null);
+					return convert(value, method.getReturnType());
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	public static ResultSetMetaData newMetaData(final String[] labels, final int[] types) {
+		return proxy(ResultSetMetaData.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("getColumnCount")) {
+					return labels.length;
+				} else if (name.equals("getColumnLabel") || name.equals("getColumnName")) {
+					return labels[(Integer) args[0] - 1];
+				} else if (name.equals("getColumnType")) {
+					return types[(Integer) args[0] - 1];
+				} else if (name.equals("isSigned")) {
+					return true;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	private static int indexOf(String[] labels, String label) throws SQLException {
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i].equalsIgnoreCase(label)) {
+				return i + 1;
+			}
+		}
+		throw new SQLException("Unknown column " + label);
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if (type == Object.class) {
+			return value;
+		} else if (type == String.class) {
+			return (value == null) ? null : value.toString();
+		} else if (type == int.class) {
+			return (value == null) ? 0 : ((Number) value).intValue();
+		} else if (type == long.class) {
+			return (value == null) ? 0L : ((Number) value).longValue();
+		} else if (type == double.class) {
+			return (value == null) ? 0.0 : ((Number) value).doubleValue();
+		} else if (type == boolean.class) {
+			return (value == null) ? false : (Boolean) value;
+		}
+		return value;
+	}
+
+	private static void checkOpen(boolean closed) throws SQLException {
+		if (closed) {
+			throw new SQLException("Already closed");
+		}
+	}
+
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals")) {
+			return proxy == args[0];
+		} else if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (name.equals("toString")) {
+			return "Fake" + method.getDeclaringClass().getSimpleName();
+		}
+
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0.0;
+		} else if (type == float.class) {
+			return 0.0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+}
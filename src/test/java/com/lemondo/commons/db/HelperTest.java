@@ -0,0 +1,180 @@
+package com.lemondo.commons.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+public class HelperTest extends TestCase {
+
+	private static final String SQL = "SELECT ?";
+
+	private FakeJdbc jdbc;
+
+	public HelperTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+	}
+
+	private static Object query(Helper helper, Object value) throws Exception {
+		Session session = helper.openSession();
+		try {
+			PreparedStatement stmnt = session.prepareStatement(SQL);
+			stmnt.setObject(1, value);
+			ResultSet rs = session.executeQuery(stmnt);
+			assertTrue(rs.next());
+			return rs.getObject(1);
+		} finally {
+			session.close();
+		}
+	}
+
+	/*
+	 * Runs the same statement from several threads, each binding its own
+	 * value, and checks that every thread reads back its own value.
+	 */
+	private static void queryConcurrently(final Helper helper) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 8; i++) {
+				final int thread = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int j = 0; j < 25; j++) {
+							String value = thread + ":" + j;
+							assertEquals(value, query(helper, value));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testSingleConnectionSessionsCacheStatements() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			Session session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(SQL);
+
+			// A nested session does not share the statements of its enclosing one
+			Session nested = helper.openSession();
+			assertSame(session.getConnection(), nested.getConnection());
+			assertNotSame(stmnt, nested.prepareStatement(SQL));
+			nested.close();
+			session.close();
+
+			session = helper.openSession();
+			assertSame(stmnt, session.prepareStatement(SQL));
+			session.close();
+
+			assertEquals(1, helper.getStatementCacheHits());
+			assertEquals(1, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getOpenStatementCount());
+	}
+
+	public void testSingleConnectionSessionsRunOneAtATime() throws Exception {
+		final Helper helper = Helper.getInstance(jdbc.getDataSource());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Session session = helper.openSession();
+			Future<Object> other = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return query(helper, "other");
+				}
+			});
+
+			Thread.sleep(50);
+			assertFalse(other.isDone());
+			session.close();
+			assertEquals("other", other.get());
+		} finally {
+			executor.shutdown();
+			helper.cleanup();
+		}
+	}
+
+	public void testSingleConnectionConcurrentQueries() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			queryConcurrently(helper);
+			assertEquals(1, jdbc.getConnectionCount());
+			assertEquals(1, jdbc.getMaxRunningQueryCount());
+			assertEquals(1, jdbc.getOpenStatementCount());
+			assertEquals(199, helper.getStatementCacheHits());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testHelperStatementsAreCachedWithABound() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		helper.setStatementCacheSize(2);
+		try {
+			PreparedStatement stmnt = helper.prepareStatement(SQL);
+			assertSame(stmnt, helper.prepareStatement(SQL));
+			helper.prepareStatement("SELECT ?, 1");
+			helper.prepareCall("{call p(?)}");
+			assertTrue(stmnt.isClosed());
+			assertEquals(1, helper.getStatementCacheEvictions());
+			assertEquals(2, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getOpenStatementCount());
+	}
+
+	public void testPooledConnectionsCacheStatements() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(1, 1));
+		try {
+			Session session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement(SQL);
+			session.close();
+
+			session = helper.openSession();
+			assertSame(stmnt, session.prepareStatement(SQL));
+			session.close();
+
+			assertEquals(1, helper.getStatementCacheHits());
+			assertEquals(1, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getOpenStatementCount());
+		assertEquals(0, jdbc.getOpenConnectionCount());
+	}
+
+	public void testPooledConcurrentQueries() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(1, 4));
+		try {
+			queryConcurrently(helper);
+			assertTrue(jdbc.getConnectionCount() <= 4);
+			assertTrue(helper.getStatementCacheHits() > 0);
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.lemondo.commons.db;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ListCacheTest extends TestCase {
+
+	private ListCache<List<Map<String, Object>>> cache;
+
+	public ListCacheTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		cache = new ListCache<List<Map<String, Object>>>(10000);
+	}
+
+	private static Map<String, Object> options(String firstField, String secondField) {
+		Map<String, Object> filter = new LinkedHashMap<String, Object>();
+		filter.put(firstField, "y");
+		filter.put(secondField, "y");
+
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("filter", filter);
+		return options;
+	}
+
+	public void testOptionsAreNormalized() {
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		list.add(new HashMap<String, Object>());
+		cache.put(options("loginenabled", "password"), list, cache.beginLoad());
+
+		Map<String, Object> options = options("password", "loginenabled");
+		options.put("stream", true);
+		assertEquals(1, cache.get(options).size());
+
+		options.put("limit", 1);
+		assertNull(cache.get(options));
+	}
+
+	public void testReplaysWrittenBytes() throws Exception {
+		Map<String, Object> options = options("loginenabled", "password");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertFalse(cache.replay(options, out));
+
+		ListCache.Recording recording = cache.record(out);
+		recording.write("[{\"id\":\"E001\"}]".getBytes("UTF-8"));
+		cache.put(options, recording, cache.beginLoad());
+
+		ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+		assertTrue(cache.replay(options, replayed));
+		assertEquals(out.toString("UTF-8"), replayed.toString("UTF-8"));
+
+		cache.invalidateAll();
+		assertFalse(cache.replay(options, replayed));
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.lemondo.commons.db;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.exception.NoDataFoundException;
+import com.lemondo.commons.db.exception.UniqueKeyViolation;
+
+public class ModelTest extends TestCase {
+
+	/*
+	 * A model implementing only the single-record operations and lists.
+	 * Updates report no affected row when nothing changes, as MySQL does
+	 * with useAffectedRows=true.
+	 */
+	private static class MapModel implements Model<String, List<String>> {
+		private final Map<Object, String> rows = new LinkedHashMap<Object, String>();
+		private int nextKey = 1;
+
+		@Override
+		public void create(Object key, String body) throws UniqueKeyViolation {
+			if (rows.containsKey(key)) {
+				throw new UniqueKeyViolation("Duplicate key " + key);
+			}
+			rows.put(key, body);
+		}
+
+		@Override
+		public Object create(String body) {
+			Object key = nextKey++;
+			rows.put(key, body);
+			return key;
+		}
+
+		@Override
+		public int update(Object key, String body) {
+			if (!rows.containsKey(key) || rows.get(key).equals(body)) {
+				return 0;
+			}
+			rows.put(key, body);
+			return 1;
+		}
+
+		@Override
+		public int delete(Object key) {
+			return (rows.remove(key) == null) ? 0 : 1;
+		}
+
+		@Override
+		public String read(Object key) throws NoDataFoundException {
+			String row = rows.get(key);
+			if (row == null) {
+				throw new NoDataFoundException("No row with key " + key);
+			}
+			return row;
+		}
+
+		@Override
+		public List<String> list(Map<String, Object> options) {
+			return new ArrayList<String>(rows.values());
+		}
+
+		@Override
+		public void list(OutputStream out, Map<String, Object> options) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private MapModel model;
+
+	public ModelTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		model = new MapModel();
+	}
+
+	public void testBulkOperationsRepeatSingleRecordOperations() throws Exception {
+		assertEquals(Arrays.<Object> asList(1, 2), model.createAll(Arrays.asList("a", "b")));
+
+		Map<Object, String> bodies = new LinkedHashMap<Object, String>();
+		bodies.put("x", "c");
+		model.createAll(bodies);
+		assertEquals(Arrays.asList("a", "b", "c"), model.list(null));
+
+		bodies.put(1, "A");
+		bodies.put(3, "d");
+		Map<Object, Integer> updated = model.updateAll(bodies);
+		assertEquals(Arrays.<Object> asList("x", 1, 3), new ArrayList<Object>(updated.keySet()));
+		assertEquals(Arrays.asList(0, 1, 0), new ArrayList<Integer>(updated.values()));
+
+		assertEquals(2, model.deleteAll(Arrays.asList(1, 2, 3)));
+		assertEquals(Arrays.asList("c"), model.list(null));
+	}
+
+	public void testReadManyAndExists() throws Exception {
+		model.create("x", "a");
+
+		Map<Object, String> rows = model.readMany(Arrays.asList("y", "x"));
+		assertEquals(Arrays.<Object> asList("y", "x"), new ArrayList<Object>(rows.keySet()));
+		assertNull(rows.get("y"));
+		assertEquals("a", rows.get("x"));
+
+		assertTrue(model.exists("x"));
+		assertFalse(model.exists("y"));
+	}
+
+	public void testUpsert() throws Exception {
+		assertEquals(UpsertResult.INSERTED, model.upsert("x", "a"));
+		assertEquals(UpsertResult.UPDATED, model.upsert("x", "b"));
+		// The update affects no row and the create finds the row
+		assertEquals(UpsertResult.UNKNOWN, model.upsert("x", "b"));
+
+		Map<Object, String> bodies = new HashMap<Object, String>();
+		bodies.put("x", "c");
+		assertEquals(UpsertResult.UPDATED, model.upsertAll(bodies).get("x"));
+	}
+
+}
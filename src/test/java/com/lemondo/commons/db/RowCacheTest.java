@@ -0,0 +1,90 @@
+package com.lemondo.commons.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.processor.BasicDataProcessor;
+import com.lemondo.commons.db.processor.BeanDataProcessor;
+import com.lemondo.commons.db.processor.BeanDataProcessorTest.Employee;
+
+public class RowCacheTest extends TestCase {
+
+	private RowCache<Map<String, Object>> cache;
+
+	public RowCacheTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		cache = new RowCache<Map<String, Object>>(1000);
+	}
+
+	private static Map<String, Object> row(String id, String loginname) {
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("id", id);
+		row.put("loginname", loginname);
+		return row;
+	}
+
+	public void testGetReturnsCopies() {
+		Map<String, Object> row = row("E001", "foo");
+		cache.put("E001", row, cache.beginLoad());
+		row.put("loginname", "changed");
+
+		Map<String, Object> cached = cache.get("E001");
+		assertEquals("foo", cached.get("loginname"));
+		cached.put("loginname", "changed");
+		assertEquals("foo", cache.get("E001").get("loginname"));
+
+		assertNull(cache.get("E002"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testInvalidateDropsConcurrentLoads() {
+		long stamp = cache.beginLoad();
+		cache.invalidate("E001");
+		cache.put("E001", row("E001", "stale"), stamp);
+
+		assertNull(cache.get("E001"));
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		for (int i = 0; i < 20; i++) {
+			cache.put("E" + i, row("E" + i, "foo"), cache.beginLoad());
+			cache.get("E0");
+		}
+
+		assertTrue(cache.getEvictionCount() > 0);
+		assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		assertNotNull(cache.get("E0"));
+		assertNull(cache.get("E1"));
+	}
+
+	public void testBeanRowsNeedACopyingCache() throws Exception {
+		BeanDataProcessor<Employee> processor = new BeanDataProcessor<Employee>(Employee.class);
+		try {
+			RowCache.checkRows(new RowCache<Employee>(1000), processor);
+			fail("Accepted a cache that hands out cached beans");
+		} catch (IllegalArgumentException e) {
+		}
+		RowCache.checkRows(cache, new BasicDataProcessor());
+
+		RowCache<Employee> beans = RowCache.forBeans(processor, 1000, 0);
+		RowCache.checkRows(beans, processor);
+		Employee employee = new Employee();
+		employee.setLoginName("foo");
+		beans.put("E001", employee, beans.beginLoad());
+		employee.setLoginName("changed");
+
+		Employee cached = beans.get("E001");
+		assertEquals("foo", cached.getLoginName());
+		cached.setLoginName("changed");
+		assertEquals("foo", beans.get("E001").getLoginName());
+	}
+
+}
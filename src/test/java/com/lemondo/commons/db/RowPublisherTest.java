@@ -0,0 +1,167 @@
+package com.lemondo.commons.db;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.meta.TableMetaData;
+
+public class RowPublisherTest extends TestCase {
+
+	/*
+	 * Runs the publisher's work on the calling thread, so that every signal
+	 * has been delivered when request() or cancel() returns.
+	 */
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static class Recorder implements RowPublisher.Subscriber<Map<String, Object>> {
+		private final List<Object> ids = new ArrayList<Object>();
+		private RowPublisher.Subscription subscription;
+		private Throwable error;
+		private boolean complete;
+
+		@Override
+		public void onSubscribe(RowPublisher.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(Map<String, Object> item) {
+			ids.add(item.get("id"));
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			complete = true;
+		}
+	}
+
+	private FakeJdbc jdbc;
+	private Helper helper;
+	private BasicTableModel model;
+
+	public RowPublisherTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+		Object[][] rows = new Object[5][];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Object[] { "E00" + i, "user" + i };
+		}
+		jdbc.setRows(new String[] { "id", "loginname" }, new int[] { Types.VARCHAR, Types.VARCHAR }, rows);
+		helper = Helper.getInstance(jdbc.getDataSource());
+
+		Map<String, Integer> columnDef = new HashMap<String, Integer>();
+		columnDef.put("loginname", Types.VARCHAR);
+		model = new BasicTableModel(new TableMetaData("test_table", columnDef, PrimarykeyType.VARCHAR, false), helper);
+	}
+
+	protected void tearDown() throws Exception {
+		helper.cleanup();
+
+		super.tearDown();
+	}
+
+	public void testRowsAreEmittedOnDemand() throws Exception {
+		Recorder recorder = new Recorder();
+		new RowPublisher<Map<String, Object>>(model, null, DIRECT, 2).subscribe(recorder);
+		assertEquals(0, jdbc.getStatementCount());
+
+		recorder.subscription.request(3);
+		assertEquals(3, recorder.ids.size());
+		assertFalse(recorder.complete);
+		assertEquals(1, jdbc.getOpenResultSetCount());
+
+		recorder.subscription.request(10);
+		assertEquals(5, recorder.ids.size());
+		assertEquals("E004", recorder.ids.get(4));
+		assertTrue(recorder.complete);
+		assertNull(recorder.error);
+		assertEquals(0, jdbc.getOpenResultSetCount());
+		// Only the statement kept by the cache is open
+		assertEquals(1, jdbc.getOpenStatementCount());
+	}
+
+	public void testCancelReleasesTheStream() throws Exception {
+		Recorder recorder = new Recorder();
+		new RowPublisher<Map<String, Object>>(model, null, DIRECT).subscribe(recorder);
+
+		recorder.subscription.request(1);
+		recorder.subscription.cancel();
+		recorder.subscription.request(1);
+
+		assertEquals(1, recorder.ids.size());
+		assertFalse(recorder.complete);
+		assertNull(recorder.error);
+		assertEquals(0, jdbc.getOpenResultSetCount());
+		// Only the statement kept by the cache is open
+		assertEquals(1, jdbc.getOpenStatementCount());
+	}
+
+	public void testCancelAbortsTheStatementOnTheExecutor() throws Exception {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor queued = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+		Recorder recorder = new Recorder();
+		new RowPublisher<Map<String, Object>>(model, null, queued).subscribe(recorder);
+
+		recorder.subscription.request(1);
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+		assertEquals(1, recorder.ids.size());
+
+		recorder.subscription.cancel();
+		assertEquals(0, jdbc.getCancelCount());
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+		assertEquals(1, jdbc.getCancelCount());
+		assertEquals(0, jdbc.getOpenResultSetCount());
+	}
+
+	public void testNonPositiveRequestIsAnError() throws Exception {
+		Recorder recorder = new Recorder();
+		new RowPublisher<Map<String, Object>>(model, null, DIRECT).subscribe(recorder);
+
+		recorder.subscription.request(0);
+		assertTrue(recorder.error instanceof IllegalArgumentException);
+		assertTrue(recorder.ids.isEmpty());
+	}
+
+	public void testStreamFailureIsAnError() throws Exception {
+		Recorder recorder = new Recorder();
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("stream", "yes");
+		new RowPublisher<Map<String, Object>>(model, options, DIRECT).subscribe(recorder);
+
+		recorder.subscription.request(1);
+		assertTrue(recorder.error instanceof IllegalArgumentException);
+		assertFalse(recorder.complete);
+		assertEquals(0, jdbc.getOpenStatementCount());
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.lemondo.commons.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+public class SessionTest extends TestCase {
+
+	private FakeJdbc jdbc;
+
+	public SessionTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+	}
+
+	public void testCloseReleasesStatementsAndResultSets() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		helper.setStatementCacheSize(0);
+		try {
+			Session session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement("SELECT ?");
+			ResultSet rs = session.executeQuery(stmnt);
+			ResultSet registered = session.register(jdbc.resultSet(new String[] { "id" }, new int[] { Types.INTEGER }, new Object[0][]));
+			assertEquals(1, jdbc.getOpenStatementCount());
+			assertEquals(2, jdbc.getOpenResultSetCount());
+
+			session.close();
+			assertTrue(session.isClosed());
+			assertTrue(stmnt.isClosed());
+			assertTrue(rs.isClosed());
+			assertTrue(registered.isClosed());
+			assertEquals(0, jdbc.getOpenStatementCount());
+			assertEquals(0, jdbc.getOpenResultSetCount());
+
+			// The connection outlives the session of a single-connection helper
+			assertEquals(1, jdbc.getOpenConnectionCount());
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getOpenConnectionCount());
+	}
+
+	public void testCloseIsIdempotent() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(0, 2));
+		try {
+			Session session = helper.openSession();
+			session.prepareStatement("SELECT ?");
+			assertEquals(1, helper.getConnectionPool().getActiveCount());
+
+			session.close();
+			session.close();
+			assertEquals(0, helper.getConnectionPool().getActiveCount());
+			assertEquals(1, helper.getConnectionPool().getIdleCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testUncachedStatementsOfPooledSessionsAreClosed() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(0, 1));
+		helper.setStatementCacheSize(0);
+		try {
+			Session session = helper.openSession();
+			PreparedStatement stmnt = session.prepareStatement("SELECT ?");
+			PreparedStatement streaming = session.prepareStreamingStatement("SELECT ?", Integer.MIN_VALUE);
+			session.close();
+
+			assertTrue(stmnt.isClosed());
+			assertTrue(streaming.isClosed());
+			assertEquals(0, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+}
@@ -2,16 +2,24 @@ package com.lemondo.commons.db;
 
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
 import junit.framework.TestCase;
 
 import com.lemondo.commons.db.exception.InvalidFieldException;
+import com.lemondo.commons.db.meta.Aggregate;
 import com.lemondo.commons.db.meta.FilterCondition;
+import com.lemondo.commons.db.meta.SelectQuery;
+import com.lemondo.commons.db.meta.SortField;
+import com.lemondo.commons.db.meta.SqlTemplate;
 import com.lemondo.commons.db.meta.TableMetaData;
 
 public class TableMetaDataTest extends TestCase {
@@ -76,6 +84,14 @@ public class TableMetaDataTest extends TestCase {
 		assertEquals(expected.toString(), actual);
 	}
 
+	public void testGenMultiRowInsertSql() throws InvalidFieldException {
+		Set<String> columns = new HashSet<String>();
+		columns.add("loginname");
+
+		assertEquals("INSERT INTO test_table (`id`,`loginname`) VALUES (?,?),(?,?),(?,?)", metaDataWithDeactivatedFlag.insertTemplate(columns, false, 3).getSql());
+		assertEquals("INSERT INTO test_table (`loginname`) VALUES (?),(?)", metaDataWithDeactivatedFlag.insertTemplate(columns, true, 2).getSql());
+	}
+
 	public void testGenUpdateSqlWithDeactivatedFlag() throws InvalidFieldException {
 		Set<String> columns = columnDef.keySet();
 
@@ -106,6 +122,18 @@ public class TableMetaDataTest extends TestCase {
 		assertEquals(expected.toString(), actual);
 	}
 
+	public void testGenUpsertSql() throws InvalidFieldException {
+		Set<String> columns = new HashSet<String>();
+		columns.add("loginname");
+
+		String expected = "INSERT INTO test_table (`id`,`loginname`) VALUES (?,?) ON DUPLICATE KEY UPDATE `loginname`=VALUES(`loginname`)";
+		assertEquals(expected, metaDataWithoutDeactivatedFlag.genUpsertSql(columns));
+		assertEquals(expected + ",`deactivated`=0", metaDataWithDeactivatedFlag.genUpsertSql(columns));
+
+		columns.clear();
+		assertEquals("INSERT INTO test_table (`id`) VALUES (?) ON DUPLICATE KEY UPDATE `id`=`id`", metaDataWithoutDeactivatedFlag.genUpsertSql(columns));
+	}
+
 	public void testGenDeleteSqlWithDeactivatedFlag() {
 		String expected = "UPDATE test_table SET `deactivated`=1 WHERE `deactivated`=0 AND `id`=?";
 		String actual = metaDataWithDeactivatedFlag.genDeleteSql();
@@ -120,6 +148,11 @@ public class TableMetaDataTest extends TestCase {
 		assertEquals(expected, actual);
 	}
 
+	public void testGenDeleteInListSql() {
+		assertEquals("UPDATE test_table SET `deactivated`=1 WHERE `deactivated`=0 AND `id` IN (?,?,?)", metaDataWithDeactivatedFlag.genDeleteSql(3));
+		assertEquals("DELETE FROM test_table WHERE `id` IN (?)", metaDataWithoutDeactivatedFlag.genDeleteSql(1));
+	}
+
 	public void testGenSelectOneSql() {
 		Set<String> columns = columnDef.keySet();
 
@@ -183,4 +216,248 @@ public class TableMetaDataTest extends TestCase {
 		assertEquals(expected.toString(), actual);
 	}
 
+	public void testSqlCacheReusesTemplates() throws InvalidFieldException {
+		Set<String> columns = new HashSet<String>();
+		columns.add("loginname");
+		columns.add("password");
+
+		List<String> reversed = new ArrayList<String>(columns);
+		Collections.reverse(reversed);
+		Set<String> sameColumns = new LinkedHashSet<String>(reversed);
+
+		String first = metaDataWithDeactivatedFlag.genInsertSql(columns, false);
+		String second = metaDataWithDeactivatedFlag.genInsertSql(sameColumns, false);
+
+		assertSame(first, second);
+		assertEquals(1, metaDataWithDeactivatedFlag.getSqlCacheMisses());
+		assertEquals(1, metaDataWithDeactivatedFlag.getSqlCacheHits());
+
+		assertNotSame(first, metaDataWithDeactivatedFlag.genInsertSql(columns, true));
+		assertEquals(2, metaDataWithDeactivatedFlag.getSqlCacheMisses());
+	}
+
+	public void testSqlCacheIsBounded() throws InvalidFieldException {
+		metaDataWithoutDeactivatedFlag.setSqlCacheSize(1);
+
+		Set<String> columns = new HashSet<String>();
+		columns.add("loginname");
+		metaDataWithoutDeactivatedFlag.genUpdateSql(columns);
+		columns.add("password");
+		metaDataWithoutDeactivatedFlag.genUpdateSql(columns);
+		columns.remove("password");
+		metaDataWithoutDeactivatedFlag.genUpdateSql(columns);
+
+		assertEquals(0, metaDataWithoutDeactivatedFlag.getSqlCacheHits());
+		assertEquals(3, metaDataWithoutDeactivatedFlag.getSqlCacheMisses());
+	}
+
+	public void testInsertTemplateBindOrder() throws InvalidFieldException {
+		Set<String> columns = new HashSet<String>();
+		columns.add("empcode");
+		columns.add("loginname");
+
+		SqlTemplate template = metaDataWithDeactivatedFlag.insertTemplate(columns, true);
+
+		assertEquals(2, template.getColumnCount());
+		StringBuilder expected = new StringBuilder("INSERT INTO test_table (`");
+		expected.append(template.getColumn(0)).append("`,`").append(template.getColumn(1)).append("`) VALUES (?,?)");
+		assertEquals(expected.toString(), template.getSql());
+		assertEquals((int) columnDef.get(template.getColumn(0)), template.getType(0));
+	}
+
+	public void testInvalidFieldIsRejected() {
+		Set<String> columns = new HashSet<String>();
+		columns.add("nosuchfield");
+
+		try {
+			metaDataWithDeactivatedFlag.genInsertSql(columns, false);
+			fail("Should throw an exception for unknown field");
+		} catch (InvalidFieldException e) {
+		}
+	}
+
+	public void testGenSelectPagedSql() throws InvalidFieldException {
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname DESC");
+
+		SelectQuery query = new SelectQuery(true, null, sortFields);
+		query.setSeek(true);
+		query.setLimited(true);
+
+		String actual = metaDataWithoutDeactivatedFlag.genSelectSql(query);
+
+		assertTrue(actual.endsWith(" FROM test_table WHERE (((`loginname`<? OR (? IS NOT NULL AND `loginname` IS NULL))) OR (`loginname`<=>? AND `id`>?))"
+				+ " ORDER BY `loginname` DESC,`id` LIMIT ?"));
+
+		query = new SelectQuery(true, null, sortFields);
+		query.setLimited(true);
+		query.setOffset(true);
+
+		actual = metaDataWithoutDeactivatedFlag.genSelectSql(query);
+
+		assertTrue(actual.endsWith(" FROM test_table ORDER BY loginname DESC LIMIT ? OFFSET ?"));
+	}
+
+	public void testGenSelectKeysetOrderedSql() throws InvalidFieldException {
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("loginname");
+
+		SelectQuery query = new SelectQuery(true, null, sortFields);
+		query.setKeysetOrder(true);
+		query.setLimited(true);
+
+		String actual = metaDataWithoutDeactivatedFlag.genSelectSql(query);
+
+		assertTrue(actual.endsWith(" FROM test_table ORDER BY `loginname`,`id` LIMIT ?"));
+
+		query = new SelectQuery(true, null, null);
+		query.setKeysetOrder(true);
+		query.setLimited(true);
+
+		actual = metaDataWithoutDeactivatedFlag.genSelectSql(query);
+
+		assertTrue(actual.endsWith(" FROM test_table ORDER BY `id` LIMIT ?"));
+	}
+
+	public void testGenSelectProjectedSql() throws InvalidFieldException {
+		Set<String> fields = new LinkedHashSet<String>();
+		fields.add("loginname");
+		fields.add("id");
+
+		SelectQuery query = new SelectQuery(false, null, null);
+		query.setFields(fields);
+
+		SqlTemplate template = metaDataWithDeactivatedFlag.selectTemplate(query);
+
+		assertEquals("SELECT `id`,`loginname` FROM test_table WHERE `deactivated`=0 AND `id`=?", template.getSql());
+		assertEquals(1, template.getColumnCount());
+		assertSame(template, metaDataWithDeactivatedFlag.selectTemplate(query));
+
+		fields.add("nosuchfield");
+		try {
+			metaDataWithDeactivatedFlag.selectTemplate(query);
+			fail("Should throw an exception for unknown field");
+		} catch (InvalidFieldException e) {
+		}
+	}
+
+	public void testGenSelectFilterOperatorsSql() throws InvalidFieldException {
+		Set<FilterCondition> filter = new LinkedHashSet<FilterCondition>();
+		filter.add(FilterCondition.between("empcode", 1, 9, Types.INTEGER));
+		filter.add(FilterCondition.in("loginname", Arrays.asList("a", "b", "c"), Types.VARCHAR));
+		filter.add(FilterCondition.startsWith("password", "50%_", Types.VARCHAR));
+
+		List<Set<FilterCondition>> alternatives = new ArrayList<Set<FilterCondition>>();
+		alternatives.add(Collections.singleton(FilterCondition.isNull("loginenabled")));
+		alternatives.add(Collections.singleton(new FilterCondition("loginenabled", "<>", "n", Types.VARCHAR)));
+		filter.add(FilterCondition.or(alternatives));
+
+		String actual = metaDataWithoutDeactivatedFlag.genSelectSql(true, filter, null);
+
+		assertTrue(actual.endsWith(" FROM test_table WHERE `empcode` BETWEEN ? AND ? AND `loginname` IN (?,?,?,?) AND `password` LIKE ? ESCAPE '!'"
+				+ " AND ((`loginenabled` IS NULL) OR (`loginenabled`<>?))"));
+		assertEquals(4, filter.toArray(new FilterCondition[0])[1].getParameterCount());
+
+		Set<FilterCondition> sameShape = new LinkedHashSet<FilterCondition>();
+		sameShape.add(FilterCondition.between("empcode", 2, 3, Types.INTEGER));
+		sameShape.add(FilterCondition.in("loginname", Arrays.asList("d", "e", "f", "g"), Types.VARCHAR));
+		sameShape.add(FilterCondition.startsWith("password", "x", Types.VARCHAR));
+		sameShape.add(FilterCondition.or(alternatives));
+		assertSame(actual, metaDataWithoutDeactivatedFlag.genSelectSql(true, sameShape, null));
+
+		try {
+			new FilterCondition("empcode", "; DROP TABLE", 1, Types.INTEGER);
+			fail("Should reject unknown operators");
+		} catch (IllegalArgumentException e) {
+		}
+
+		alternatives.add(Collections.<FilterCondition> emptySet());
+		try {
+			FilterCondition.or(alternatives);
+			fail("Should reject empty alternatives");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testGenSelectManySql() throws InvalidFieldException {
+		SelectQuery query = new SelectQuery(false, null, null);
+		query.setKeyCount(4);
+		query.setFields(Collections.<String> emptySet());
+
+		String actual = metaDataWithDeactivatedFlag.genSelectSql(query);
+
+		assertEquals("SELECT `id` FROM test_table WHERE `deactivated`=0 AND `id` IN (?,?,?,?)", actual);
+	}
+
+	public void testGenCountAndExistsSql() {
+		Set<FilterCondition> filter = new LinkedHashSet<FilterCondition>();
+		filter.add(new FilterCondition("loginenabled", "=", "y", Types.VARCHAR));
+
+		assertEquals("SELECT COUNT(*) FROM test_table WHERE `deactivated`=0 AND `loginenabled`=?", metaDataWithDeactivatedFlag.genCountSql(filter));
+		assertEquals("SELECT COUNT(*) FROM test_table", metaDataWithoutDeactivatedFlag.genCountSql(null));
+		assertEquals("SELECT 1 FROM test_table WHERE `deactivated`=0 AND `id`=? LIMIT 1", metaDataWithDeactivatedFlag.genExistsSql());
+	}
+
+	public void testGenAggregateSql() {
+		List<Aggregate> aggregates = new ArrayList<Aggregate>();
+		aggregates.add(Aggregate.parse("n", "COUNT(*)"));
+		aggregates.add(Aggregate.parse("first", "min(`loginname`)"));
+
+		assertEquals("SELECT `loginenabled`,COUNT(*) AS `n`,MIN(`loginname`) AS `first` FROM test_table WHERE `deactivated`=0 GROUP BY `loginenabled` ORDER BY `n` DESC",
+				metaDataWithDeactivatedFlag.genAggregateSql(Arrays.asList("loginenabled"), aggregates, null, Arrays.asList(SortField.parse("n DESC"))));
+
+		Set<FilterCondition> filter = new LinkedHashSet<FilterCondition>();
+		filter.add(new FilterCondition("loginenabled", "=", "y", Types.VARCHAR));
+		assertEquals("SELECT COUNT(*) AS `n`,MIN(`loginname`) AS `first` FROM test_table WHERE `loginenabled`=?",
+				metaDataWithoutDeactivatedFlag.genAggregateSql(new ArrayList<String>(), aggregates, filter, null));
+	}
+
+	public void testAggregateFunctionsIgnoreDefaultLocale() {
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			assertEquals("MIN", Aggregate.parse("first", "min(loginname)").getFunction());
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	public void testInvalidAggregatesAreRejected() {
+		try {
+			Aggregate.parse("n", "MEDIAN(loginname)");
+			fail("Unsupported function is accepted");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			Aggregate.parse("n", "SUM(*)");
+			fail("Sum of rows is accepted");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			metaDataWithDeactivatedFlag.genAggregateSql(new ArrayList<String>(), Arrays.asList(Aggregate.parse("n", "MAX(secret)")), null, null);
+			fail("Unknown field is accepted");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			metaDataWithDeactivatedFlag.genAggregateSql(new ArrayList<String>(), Arrays.asList(Aggregate.parse("n", "COUNT(*)")), null,
+					Arrays.asList(SortField.parse("loginname")));
+			fail("Sorting by ungrouped field is accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testKeysetFieldsRejectExpressions() {
+		List<String> sortFields = new ArrayList<String>();
+		sortFields.add("LENGTH(loginname)");
+
+		try {
+			metaDataWithoutDeactivatedFlag.keysetFields(sortFields);
+			fail("Should not page by an expression");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
 }
@@ -0,0 +1,194 @@
+package com.lemondo.commons.db;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.meta.TableMetaData;
+
+/**
+ * Tests of TableModel that run against in-memory connections, see
+ * {@link FakeJdbc}.
+ */
+public class TableModelTest extends TestCase {
+
+	private FakeJdbc jdbc;
+	private TableMetaData metaData;
+
+	public TableModelTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		jdbc = new FakeJdbc();
+
+		Map<String, Integer> columnDef = new HashMap<String, Integer>();
+		columnDef.put("loginname", Types.VARCHAR);
+		metaData = new TableMetaData("test_table", columnDef, PrimarykeyType.VARCHAR, false);
+	}
+
+	private static Map<String, Object> options(String option, Object value) {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put(option, value);
+		return options;
+	}
+
+	public void testFullPageCarriesTheKeysetOfItsLastRow() throws Exception {
+		jdbc.setRows(new String[] { "loginname", "id" }, new int[] { Types.VARCHAR, Types.VARCHAR },
+				new Object[][] { { "a", "E001" }, { "b", "E002" }, { null, "E003" } });
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			Map<String, Object> options = options("limit", 3);
+			options.put("order", Arrays.asList("loginname"));
+			Page<List<Map<String, Object>>> page = m.listPage(options);
+			assertEquals(3, page.getItems().size());
+			assertEquals(Arrays.asList(null, "E003"), Page.decodeToken(page.getNext()));
+
+			options.put("limit", 4);
+			assertFalse(m.listPage(options).hasNext());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testListsAreBufferedByDefault() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			List<Map<String, Object>> rows = m.list(null);
+			assertEquals(1, rows.size());
+			assertEquals(0, jdbc.getFetchSize());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testStreamOptionSetsFetchSize() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			m.list(options("stream", true));
+			assertEquals(TableModel.DEFAULT_STREAMING_FETCH_SIZE, jdbc.getFetchSize());
+
+			Map<String, Object> options = options("stream", true);
+			options.put("fetchSize", 50);
+			m.list(options);
+			assertEquals(50, jdbc.getFetchSize());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testMySqlStreamsRowByRow() throws Exception {
+		jdbc.setProductName("MySQL");
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			m.setStreaming(true);
+			m.list(null);
+			assertEquals(Integer.MIN_VALUE, jdbc.getFetchSize());
+
+			m.setFetchSize(200);
+			m.list(null);
+			assertEquals(200, jdbc.getFetchSize());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testStreamOptionOverridesModelSetting() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			m.setStreaming(true);
+			m.list(options("stream", false));
+			assertEquals(0, jdbc.getFetchSize());
+			// A buffered list uses a cached statement
+			assertEquals(1, jdbc.getOpenStatementCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testStreamsAreBufferedOnSingleConnection() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			RowStream<Map<String, Object>> stream = m.stream(null);
+			stream.close();
+			assertEquals(0, jdbc.getFetchSize());
+
+			stream = m.stream(options("stream", true));
+			stream.close();
+			assertEquals(TableModel.DEFAULT_STREAMING_FETCH_SIZE, jdbc.getFetchSize());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testStreamsAreStreamedOnPooledConnections() throws Exception {
+		jdbc.setProductName("MySQL");
+		Helper helper = Helper.getInstance(jdbc.getDataSource(), new PoolConfig(0, 2));
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			RowStream<Map<String, Object>> stream = m.stream(null);
+			assertEquals(Integer.MIN_VALUE, jdbc.getFetchSize());
+			assertEquals(1, helper.getConnectionPool().getActiveCount());
+
+			assertEquals(1, m.list(null).size());
+			stream.close();
+			assertEquals(0, helper.getConnectionPool().getActiveCount());
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testOrAlternativeWithoutKnownFieldsIsRejected() throws Exception {
+		Map<String, Object> alternative = new HashMap<String, Object>();
+		alternative.put("unknown", "x");
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			m.list(options("filter", options("$or", Arrays.asList(options("loginname", "foo"), alternative))));
+			fail("Accepted an alternative that matches every row");
+		} catch (IllegalArgumentException e) {
+		} finally {
+			helper.cleanup();
+		}
+		assertEquals(0, jdbc.getExecutionCount());
+	}
+
+	public void testUpsertCountsDependOnTheRowsReported() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			Map<String, Object> body = options("loginname", "foo");
+			// The fake statements report 0 rows
+			assertEquals(UpsertResult.UNKNOWN, m.upsert("E001", body));
+			helper.setUseAffectedRows(true);
+			assertEquals(UpsertResult.UNCHANGED, m.upsert("E001", body));
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+	public void testInvalidStreamOptionIsRejected() throws Exception {
+		Helper helper = Helper.getInstance(jdbc.getDataSource());
+		try {
+			BasicTableModel m = new BasicTableModel(metaData, helper);
+			m.list(options("stream", "yes"));
+			fail("Accepted a non-Boolean stream option");
+		} catch (IllegalArgumentException e) {
+		} finally {
+			helper.cleanup();
+		}
+	}
+
+}
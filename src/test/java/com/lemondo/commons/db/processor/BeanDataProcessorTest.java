@@ -0,0 +1,217 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.FakeJdbc;
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+public class BeanDataProcessorTest extends TestCase {
+
+	public static class Employee {
+		private String loginName;
+		private int empCode;
+		private Boolean loginEnabled;
+		public String note;
+
+		public String getLoginName() {
+			return loginName;
+		}
+
+		public void setLoginName(String loginName) {
+			this.loginName = loginName;
+		}
+
+		public int getEmpCode() {
+			return empCode;
+		}
+
+		public void setEmpCode(int empCode) {
+			this.empCode = empCode;
+		}
+
+		public Boolean getLoginEnabled() {
+			return loginEnabled;
+		}
+
+		public void setLoginEnabled(Boolean loginEnabled) {
+			this.loginEnabled = loginEnabled;
+		}
+	}
+
+	public static class Amounts {
+		public Integer count;
+		public byte flags;
+		public Long total;
+		public Double ratio;
+		public BigInteger big;
+	}
+
+	public static class Ambiguous {
+		public String loginName;
+		public String login_name;
+	}
+
+	private static final String[] LABELS = { "login_name", "EMP_CODE", "loginenabled", "note", "unbound" };
+	private static final int[] TYPES = { Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.VARCHAR };
+
+	public BeanDataProcessorTest(String name) {
+		super(name);
+	}
+
+	public void testColumnsAreBoundRegardlessOfCaseAndUnderscores() throws Exception {
+		ResultSet rs = FakeJdbc.newResultSet(LABELS, TYPES, new Object[][] { { "foo", 7, 1, "n", "x" }, { null, null, null, null, null } });
+		List<Employee> rows = new BeanDataProcessor<Employee>(Employee.class).readAll(rs, rs.getMetaData(), LABELS.length);
+
+		assertEquals(2, rows.size());
+		assertEquals("foo", rows.get(0).getLoginName());
+		assertEquals(7, rows.get(0).getEmpCode());
+		assertEquals(Boolean.TRUE, rows.get(0).getLoginEnabled());
+		assertEquals("n", rows.get(0).note);
+
+		assertNull(rows.get(1).getLoginName());
+		assertEquals(0, rows.get(1).getEmpCode());
+		assertNull(rows.get(1).getLoginEnabled());
+	}
+
+	public void testBodiesUseTheColumnNames() throws Exception {
+		Employee employee = new Employee();
+		employee.setLoginName("foo");
+
+		Map<String, Object> body = new BeanDataProcessor<Employee>(Employee.class, Arrays.asList("login_name", "emp_code", "loginenabled")).bodyAsMap(employee);
+		assertEquals("foo", body.get("login_name"));
+		// Primitive properties are always written
+		assertEquals(0, body.get("emp_code"));
+		assertFalse(body.containsKey("loginenabled"));
+		assertFalse(body.containsKey("note"));
+		assertEquals(2, body.size());
+
+		body = new BeanDataProcessor<Employee>(Employee.class).bodyAsMap(employee);
+		assertEquals("foo", body.get("loginName"));
+		assertEquals(0, body.get("empCode"));
+	}
+
+	private static Amounts readAmounts(Object... values) throws Exception {
+		String[] labels = { "count", "flags", "total", "ratio", "big" };
+		int[] types = { Types.BIGINT, Types.INTEGER, Types.DECIMAL, Types.BIGINT, Types.DECIMAL };
+		ResultSet rs = FakeJdbc.newResultSet(labels, types, new Object[][] { values });
+		return new BeanDataProcessor<Amounts>(Amounts.class).readAll(rs, rs.getMetaData(), labels.length).get(0);
+	}
+
+	public void testNumbersAreConvertedWithoutLoss() throws Exception {
+		Amounts amounts = readAmounts(7L, -128, new BigDecimal("12.000"), 1L << 53, new BigDecimal("1E+3"));
+		assertEquals(Integer.valueOf(7), amounts.count);
+		assertEquals(-128, amounts.flags);
+		assertEquals(Long.valueOf(12), amounts.total);
+		assertEquals(Double.valueOf(1L << 53), amounts.ratio);
+		assertEquals(BigInteger.valueOf(1000), amounts.big);
+
+		Object[][] lossy = { { 1L << 32, null, null, null, null }, { null, 128, null, null, null }, { null, null, new BigDecimal("1.5"), null, null },
+				{ null, null, null, (1L << 53) + 1, null }, { null, null, null, null, new BigDecimal("0.1") } };
+		for (Object[] values : lossy) {
+			try {
+				readAmounts(values);
+				fail("Converted " + Arrays.asList(values) + " with loss");
+			} catch (DataProcessingException e) {
+			}
+		}
+	}
+
+	public void testBeansAreCopied() throws Exception {
+		Employee employee = new Employee();
+		employee.setLoginName("foo");
+		employee.setEmpCode(7);
+		employee.note = "n";
+
+		BeanDataProcessor<Employee> processor = new BeanDataProcessor<Employee>(Employee.class);
+		assertFalse(processor.isRecord());
+		Employee copy = processor.copy(employee);
+		assertNotSame(employee, copy);
+		assertEquals("foo", copy.getLoginName());
+		assertEquals(7, copy.getEmpCode());
+		assertNull(copy.getLoginEnabled());
+		assertEquals("n", copy.note);
+	}
+
+	/*
+	 * Compiles a record, since records cannot be declared in the Java 8
+	 * sources of the tests. Returns null if the JDK does not support them.
+	 */
+	private static Class<?> compileRecord(String name, String source) throws IOException, ClassNotFoundException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try {
+			Class.class.getMethod("isRecord");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		if (compiler == null) {
+			return null;
+		}
+
+		File dir = File.createTempFile("records", "");
+		dir.delete();
+		dir.mkdir();
+		File file = new File(dir, name + ".java");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(source.getBytes(Charset.forName("UTF-8")));
+		} finally {
+			out.close();
+		}
+		assertEquals(0, compiler.run(null, null, null, "-d", dir.getPath(), file.getPath()));
+		return new URLClassLoader(new URL[] { dir.toURI().toURL() }).loadClass(name);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testRecordsAreConstructedFromTheirComponents() throws Exception {
+		Class<?> type = compileRecord("Login", "public record Login(String loginName, int empCode, Boolean loginEnabled) {}");
+		if (type == null) {
+			return;
+		}
+
+		ResultSet rs = FakeJdbc.newResultSet(LABELS, TYPES, new Object[][] { { "foo", 7, null, "n", "x" }, { null, null, 0, null, null } });
+		BeanDataProcessor processor = new BeanDataProcessor(type, Arrays.asList("login_name", "emp_code", "loginenabled"));
+		List<Object> rows = processor.readAll(rs, rs.getMetaData(), LABELS.length);
+
+		assertEquals(2, rows.size());
+		assertEquals(type.getConstructors()[0].newInstance("foo", 7, null), rows.get(0));
+		assertEquals(type.getConstructors()[0].newInstance(null, 0, false), rows.get(1));
+
+		Map<String, Object> body = processor.bodyAsMap(rows.get(0));
+		assertEquals("foo", body.get("login_name"));
+		assertEquals(7, body.get("emp_code"));
+		assertEquals(2, body.size());
+	}
+
+	public void testAmbiguousNamesAreRejected() throws Exception {
+		try {
+			new BeanDataProcessor<Ambiguous>(Ambiguous.class);
+			fail("Accepted two properties bound to the same columns");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			new BeanDataProcessor<Employee>(Employee.class, Arrays.asList("login_name", "LoginName"));
+			fail("Accepted two columns bound to the same property");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}
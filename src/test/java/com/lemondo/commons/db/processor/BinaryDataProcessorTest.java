@@ -0,0 +1,132 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.FakeJdbc;
+import com.lemondo.commons.db.exception.DataProcessingException;
+
+public class BinaryDataProcessorTest extends TestCase {
+
+	private static final String[] LABELS = { "id", "value" };
+	private static final int[] TYPES = { Types.INTEGER, Types.JAVA_OBJECT };
+
+	public BinaryDataProcessorTest(String name) {
+		super(name);
+	}
+
+	private static BinaryRowReader roundTrip(Object[][] rows, int flushThreshold) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ResultSet rs = FakeJdbc.newResultSet(LABELS, TYPES, rows);
+		new BinaryDataProcessor(flushThreshold).writeRows(out, rs, rs.getMetaData(), LABELS.length);
+		return new BinaryRowReader(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	public void testValuesKeepTheirTypes() throws Exception {
+		Timestamp timestamp = Timestamp.valueOf("2024-02-29 12:34:56.123456789");
+		Object[] values = { null, "caf\u00e9 \ud83d\ude00", "", 42, (short) -7, (byte) 127, Long.MIN_VALUE, 2.5f, -0.1, new BigDecimal("1.500"),
+				new BigInteger("-123456789012345678901234567890"), true, false, new byte[] { 1, -2 }, Date.valueOf("2024-02-29"), Time.valueOf("23:59:01"),
+				timestamp, UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), LocalDateTime.of(2024, 2, 29, 12, 34), 'x' };
+		Object[][] rows = new Object[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			rows[i] = new Object[] { i, values[i] };
+		}
+
+		BinaryRowReader reader = roundTrip(rows, 1);
+		assertEquals(2, reader.getColumnCount());
+		assertEquals("value", reader.getColumnLabel(2));
+		assertEquals(Types.JAVA_OBJECT, reader.getColumnType(2));
+		for (int i = 0; i < values.length; i++) {
+			assertTrue(reader.next());
+			assertEquals(i, reader.getInt(1));
+			Object value = reader.getObject(2);
+			if (values[i] instanceof byte[]) {
+				assertTrue(Arrays.equals((byte[]) values[i], (byte[]) value));
+			} else {
+				assertEquals(values[i], value);
+				assertEquals((values[i] == null) ? null : values[i].getClass(), (value == null) ? null : value.getClass());
+			}
+		}
+		assertFalse(reader.next());
+		assertFalse(reader.next());
+		reader.close();
+	}
+
+	public void testNullsAndNanos() throws Exception {
+		Timestamp timestamp = new Timestamp(-1L);
+		timestamp.setNanos(999999999);
+		BinaryRowReader reader = roundTrip(new Object[][] { { null, null }, { 1, timestamp } }, BinaryDataProcessor.DEFAULT_FLUSH_THRESHOLD);
+
+		assertTrue(reader.next());
+		assertTrue(reader.isNull(1));
+		assertTrue(reader.isNull(2));
+		assertEquals(0, reader.getLong(1));
+		assertNull(reader.getString(2));
+		assertNull(reader.getTimestamp(2));
+		assertTrue(reader.readRow().containsKey("value"));
+
+		assertTrue(reader.next());
+		assertEquals(timestamp, reader.getTimestamp(2));
+		assertEquals(999999999, reader.getTimestamp(2).getNanos());
+		assertFalse(reader.next());
+	}
+
+	public void testUnserializableValueIsRejected() throws Exception {
+		try {
+			roundTrip(new Object[][] { { 1, new Object() } }, 1);
+			fail("Wrote a value that cannot be serialized");
+		} catch (DataProcessingException e) {
+		}
+	}
+
+	public void testOnlyColumnValueTypesAreSerialized() throws Exception {
+		try {
+			roundTrip(new Object[][] { { 1, new ArrayList<Object>() } }, 1);
+			fail("Serialized a value that no driver returns");
+		} catch (DataProcessingException e) {
+		}
+
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream oOut = new ObjectOutputStream(serialized);
+		oOut.writeObject(new ArrayList<Object>());
+		oOut.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream dOut = new DataOutputStream(out);
+		dOut.writeInt(BinaryRowFormat.MAGIC);
+		dOut.writeByte(BinaryRowFormat.VERSION);
+		dOut.writeInt(1);
+		dOut.writeInt(5);
+		dOut.write("value".getBytes("UTF-8"));
+		dOut.writeInt(Types.JAVA_OBJECT);
+		dOut.writeByte(BinaryRowFormat.ROW);
+		dOut.writeByte(BinaryRowFormat.SERIALIZED);
+		dOut.writeInt(serialized.size());
+		dOut.write(serialized.toByteArray());
+		dOut.writeByte(BinaryRowFormat.END);
+
+		BinaryRowReader reader = new BinaryRowReader(new ByteArrayInputStream(out.toByteArray()));
+		try {
+			reader.next();
+			fail("Deserialized a class that is not a column value type");
+		} catch (InvalidClassException e) {
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.lemondo.commons.db.processor;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.lemondo.commons.db.FakeJdbc;
+
+public class ColumnarResultTest extends TestCase {
+
+	public ColumnarResultTest(String name) {
+		super(name);
+	}
+
+	private static ColumnarResult read(String[] labels, int[] types, Object[][] rows, Map<String, Integer> columnDef) throws Exception {
+		ResultSet rs = FakeJdbc.newResultSet(labels, types, rows);
+		return new ColumnarDataProcessor(columnDef).readAll(rs, rs.getMetaData(), labels.length);
+	}
+
+	public void testNullsPastTheFirstWord() throws Exception {
+		String[] labels = { "i", "l", "d", "s", "o" };
+		int[] types = { Types.INTEGER, Types.BIGINT, Types.DOUBLE, Types.VARCHAR, Types.DECIMAL };
+		boolean[] isNull = new boolean[200];
+		for (int row : new int[] { 0, 63, 64, 65, 127, 128, 199 }) {
+			isNull[row] = true;
+		}
+		Object[][] rows = new Object[isNull.length][];
+		for (int row = 0; row < rows.length; row++) {
+			rows[row] = isNull[row] ? new Object[5] : new Object[] { row, (long) row, row / 2.0, "s" + row, new BigDecimal(row) };
+		}
+
+		ColumnarResult result = read(labels, types, rows, null);
+		assertEquals(200, result.getRowCount());
+		for (int column = 0; column < labels.length; column++) {
+			for (int row = 0; row < rows.length; row++) {
+				assertEquals(labels[column] + row, isNull[row], result.getColumn(column).isNull(row));
+				assertEquals(rows[row][column], result.getObject(row, column));
+			}
+			assertFalse(result.getColumn(column).isNull(200));
+		}
+
+		ColumnarResult.IntColumn ints = (ColumnarResult.IntColumn) result.getColumn("i");
+		assertEquals(0, ints.getInt(64));
+		assertEquals(66, ints.getInt(66));
+		assertEquals(200, ints.getValues().length);
+		assertEquals(-1, ((ColumnarResult.StringColumn) result.getColumn("s")).getCode(128));
+	}
+
+	public void testDictionaryHoldsDistinctValues() throws Exception {
+		String[] values = { "y", "n", "y", null, "y", "n", "maybe", "y" };
+		Object[][] rows = new Object[values.length][];
+		for (int row = 0; row < rows.length; row++) {
+			rows[row] = new Object[] { values[row] };
+		}
+
+		ColumnarResult.StringColumn column = (ColumnarResult.StringColumn) read(new String[] { "enabled" }, new int[] { Types.VARCHAR }, rows, null).getColumn(0);
+		assertEquals(Arrays.asList("y", "n", "maybe"), column.getDictionary());
+		assertTrue(Arrays.equals(new int[] { 0, 1, 0, -1, 0, 1, 2, 0 }, column.getCodes()));
+		for (int row = 0; row < values.length; row++) {
+			assertEquals(values[row], column.getString(row));
+		}
+		// Equal values share the dictionary's instance
+		assertSame(column.getString(0), column.getString(7));
+	}
+
+	public void testColumnDefOverridesOnlyWithoutLoss() throws Exception {
+		String[] labels = { "amount", "total", "code", "ratio", "name" };
+		int[] types = { Types.DECIMAL, Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.VARCHAR };
+		Object[][] rows = { { new BigDecimal("1.50"), 1L << 40, 7, 0.5, "foo" } };
+
+		Map<String, Integer> columnDef = new HashMap<String, Integer>();
+		columnDef.put("amount", Types.INTEGER);
+		columnDef.put("total", Types.INTEGER);
+		columnDef.put("code", Types.BIGINT);
+		columnDef.put("ratio", Types.INTEGER);
+		columnDef.put("name", Types.DECIMAL);
+		ColumnarResult result = read(labels, types, rows, columnDef);
+
+		// Truncating overrides are ignored
+		assertTrue(result.getColumn("amount") instanceof ColumnarResult.ObjectColumn);
+		assertEquals(new BigDecimal("1.50"), result.getObject(0, 0));
+		assertTrue(result.getColumn("total") instanceof ColumnarResult.LongColumn);
+		assertEquals(1L << 40, result.getObject(0, 1));
+		assertTrue(result.getColumn("ratio") instanceof ColumnarResult.DoubleColumn);
+		assertEquals(Types.DOUBLE, result.getColumn("ratio").getSqlType());
+
+		// Widening and boxing overrides are honored
+		assertTrue(result.getColumn("code") instanceof ColumnarResult.LongColumn);
+		assertEquals(Types.BIGINT, result.getColumn("code").getSqlType());
+		assertTrue(result.getColumn("name") instanceof ColumnarResult.ObjectColumn);
+		assertEquals("foo", result.getObject(0, 4));
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.lemondo.commons.db.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+import org.json.JSONWriter;
+
+import com.lemondo.commons.db.FakeJdbc;
+
+/**
+ * Compares the output of {@link JsonRowWriter} with that of the
+ * {@link JSONWriter} it replaces, byte for byte.
+ */
+public class JsonRowWriterTest extends TestCase {
+
+	private static final String[] LABELS = { "s", "o" };
+
+	public JsonRowWriterTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * Writes the rows the way JsonDataProcessor did before JsonRowWriter, in
+	 * UTF-8.
+	 */
+	private static byte[] writeWithJsonWriter(String[] labels, int[] types, Object[][] rows) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStreamWriter ow = new OutputStreamWriter(out, "UTF-8");
+		JSONWriter jw = new JSONWriter(ow);
+		ResultSet rs = FakeJdbc.newResultSet(labels, types, rows);
+
+		jw.array();
+		while (rs.next()) {
+			jw.object();
+			for (int i = 1; i <= labels.length; i++) {
+				jw.key(labels[i - 1]).value(rs.getObject(i));
+			}
+			jw.endObject();
+		}
+		jw.endArray();
+		ow.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] writeWithRowWriter(String[] labels, int[] types, Object[][] rows, int flushThreshold) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonRowWriter(out, FakeJdbc.newMetaData(labels, types), labels.length, flushThreshold).writeRows(FakeJdbc.newResultSet(labels, types, rows));
+		return out.toByteArray();
+	}
+
+	/*
+	 * Asserts that both writers produce the same bytes, with the default flush
+	 * threshold and with one small enough to drain within every value.
+	 */
+	private static void assertSameJson(String[] labels, int[] types, Object[][] rows) throws Exception {
+		String expected = new String(writeWithJsonWriter(labels, types, rows), "UTF-8");
+		assertEquals(expected, new String(writeWithRowWriter(labels, types, rows, JsonRowWriter.DEFAULT_FLUSH_THRESHOLD), "UTF-8"));
+		assertEquals(expected, new String(writeWithRowWriter(labels, types, rows, 1), "UTF-8"));
+	}
+
+	/*
+	 * Puts every value in a row of its own, both in a column read with
+	 * getString or getLong and in one read with getObject.
+	 */
+	private static Object[][] rowsOf(Object... values) {
+		Object[][] rows = new Object[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			rows[i] = new Object[] { values[i], values[i] };
+		}
+		return rows;
+	}
+
+	public void testStrings() throws Exception {
+		StringBuilder controls = new StringBuilder();
+		for (char c = 0; c < ' '; c++) {
+			controls.append(c);
+		}
+		StringBuilder longString = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			longString.append("\u00e9\u20ac</");
+		}
+
+		Object[][] rows = rowsOf(controls.toString(), "quote\" backslash\\ slash/", "</script>", "a</b", "<", "line\u2028paragraph\u2029", "\u0080\u0085\u009f\u00a0",
+				"\u2000\u20ac\u20ff\u2100", "caf\u00e9 \u4e2d\u6587", "emoji \ud83d\ude00 \ud834\udd1e", "unpaired \ud800 and \udc00", "", null,
+				longString.toString());
+		assertSameJson(LABELS, new int[] { Types.VARCHAR, Types.JAVA_OBJECT }, rows);
+
+		// Labels are quoted once, the same way
+		assertSameJson(new String[] { "tab\tkey", "</k\u2028" }, new int[] { Types.VARCHAR, Types.JAVA_OBJECT }, rowsOf("v"));
+	}
+
+	public void testNumbers() throws Exception {
+		Object[][] rows = rowsOf(0L, -1L, 42L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE, null);
+		assertSameJson(LABELS, new int[] { Types.BIGINT, Types.JAVA_OBJECT }, rows);
+
+		rows = rowsOf(2.50, 3.0, -0.0, 1e-7, 1.0E20, 0.1 + 0.2, 2.5f, new BigDecimal("1.500"), new BigDecimal("100"), new BigDecimal("100.000"),
+				new BigDecimal("1E+3"), new BigDecimal("-0.00"), new BigInteger("123456789012345678901234567890"), (short) 7, (byte) -8, null);
+		assertSameJson(LABELS, new int[] { Types.JAVA_OBJECT, Types.JAVA_OBJECT }, rows);
+	}
+
+	public void testOtherTypes() throws Exception {
+		Object[][] rows = rowsOf(Date.valueOf("2024-02-29"), Time.valueOf("23:59:01"), Timestamp.valueOf("2024-02-29 12:34:56.789"), new java.util.Date(0L),
+				Boolean.TRUE, Boolean.FALSE, new byte[] { 1, -2, 127 }, new byte[0]);
+		assertSameJson(LABELS, new int[] { Types.JAVA_OBJECT, Types.JAVA_OBJECT }, rows);
+	}
+
+	public void testEmptyResults() throws Exception {
+		assertSameJson(LABELS, new int[] { Types.VARCHAR, Types.JAVA_OBJECT }, new Object[0][]);
+		assertSameJson(new String[0], new int[0], new Object[][] { {}, {} });
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.lemondo.commons.db.processor;
+
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Measures the per-row cost of {@link BasicDataProcessor#readRow} with the
+ * metadata against readRow with a {@link RowSchema}. It is not a test, so the
+ * build does not run it. Run it with the test classpath, passing the column
+ * counts to measure:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes com.lemondo.commons.db.processor.RowSchemaBenchmark 10 50 200
+ * </pre>
+ *
+ * The rows are buffered in a {@link CachedRowSet}, which answers metadata
+ * calls from arrays. Drivers do more work per metadata call, so the saving
+ * measured here is a lower bound.
+ */
+public class RowSchemaBenchmark {
+
+	private static final int ROWS = 20000;
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int ROUNDS = 30;
+
+	private static volatile Object sink;
+
+	/*
+	 * Fills a row set with 40% VARCHAR, 40% INTEGER and 20% DECIMAL columns,
+	 * with one value in ten null.
+	 */
+	private static CachedRowSet newRowSet(int numColumns) throws SQLException {
+		RowSetMetaDataImpl rsmd = new RowSetMetaDataImpl();
+		rsmd.setColumnCount(numColumns);
+		int[] types = new int[numColumns];
+		for (int i = 0; i < numColumns; i++) {
+			types[i] = (i % 5 < 2) ? Types.VARCHAR : (i % 5 < 4) ? Types.INTEGER : Types.DECIMAL;
+			rsmd.setColumnName(i + 1, "column_" + i);
+			rsmd.setColumnLabel(i + 1, "column_" + i);
+			rsmd.setColumnType(i + 1, types[i]);
+			rsmd.setNullable(i + 1, ResultSetMetaData.columnNullable);
+		}
+
+		CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+		rs.setMetaData(rsmd);
+		Random random = new Random(1);
+		rs.moveToInsertRow();
+		for (int row = 0; row < ROWS; row++) {
+			for (int i = 0; i < numColumns; i++) {
+				if (random.nextInt(10) == 0) {
+					rs.updateNull(i + 1);
+				} else if (types[i] == Types.VARCHAR) {
+					rs.updateString(i + 1, "value" + random.nextInt(1000));
+				} else if (types[i] == Types.INTEGER) {
+					rs.updateInt(i + 1, random.nextInt());
+				} else {
+					rs.updateBigDecimal(i + 1, new BigDecimal(random.nextInt(100000)).movePointLeft(2));
+				}
+			}
+			rs.insertRow();
+		}
+		rs.moveToCurrentRow();
+		return rs;
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	public static void main(String[] args) throws SQLException {
+		BasicDataProcessor processor = new BasicDataProcessor();
+		for (String arg : args) {
+			int numColumns = Integer.parseInt(arg);
+			CachedRowSet rs = newRowSet(numColumns);
+			ResultSetMetaData rsmd = rs.getMetaData();
+
+			double[] metaDataCosts = new double[ROUNDS];
+			double[] schemaCosts = new double[ROUNDS];
+			for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+				long start = System.nanoTime();
+				rs.beforeFirst();
+				while (rs.next()) {
+					sink = processor.readRow(rs, rsmd, numColumns);
+				}
+				long split = System.nanoTime();
+				rs.beforeFirst();
+				RowSchema schema = new RowSchema(rsmd, numColumns);
+				while (rs.next()) {
+					sink = processor.readRow(rs, schema);
+				}
+				long end = System.nanoTime();
+
+				if (round >= WARMUP_ROUNDS) {
+					metaDataCosts[round - WARMUP_ROUNDS] = (split - start) / (double) ROWS;
+					schemaCosts[round - WARMUP_ROUNDS] = (end - split) / (double) ROWS;
+				}
+			}
+
+			double metaData = median(metaDataCosts);
+			double schema = median(schemaCosts);
+			System.out.printf("%4d columns: metadata %6.0f ns/row, schema %6.0f ns/row (%+.0f%%)%n", numColumns, metaData, schema, 100 * (metaData - schema)
+					/ metaData);
+		}
+	}
+
+}